@@ -0,0 +1,99 @@
+package com.aerospike.newrelic.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.newrelic.connector.AerospikeAgent;
+import com.aerospike.newrelic.connector.AgentSettings;
+import com.aerospike.newrelic.connector.NodeSnapshot;
+import com.aerospike.newrelic.fake.FakeCluster;
+import com.newrelic.metrics.publish.configuration.ConfigurationException;
+
+/**
+ * Cluster-wide latency of one cycle: AerospikeAgent.reportNodesLatency
+ * decodes the latency of every node snapshot and sums the buckets
+ * (calculateClusterWideLatency) and merges the histograms for the
+ * percentiles. The snapshots are taken once from a fake cluster, metrics are
+ * counted instead of sent.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClusterLatencyBenchmark {
+
+	private static final int NAMESPACES = 32;
+
+	@Param({ "8", "32" })
+	public int nodes;
+
+	/** 3.12.1 sends latency:, 5.2.0 latencies: */
+	@Param({ "3.12.1", "5.2.0" })
+	public String build;
+
+	private FakeCluster cluster;
+	private CountingAgent agent;
+	private List<NodeSnapshot> snapshots;
+
+	/**
+	 * Agent counting the metrics instead of sending them.
+	 */
+	static final class CountingAgent extends AerospikeAgent {
+		long metrics;
+
+		CountingAgent(FakeCluster cluster) throws ConfigurationException {
+			super(cluster.getSeedList(), null, null, "bench", new AgentSettings());
+		}
+
+		@Override
+		public void reportMetric(String metricName, String units, Number value) {
+			metrics++;
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		String[] namespaces = new String[NAMESPACES];
+		for (int i = 0; i < NAMESPACES; i++)
+			namespaces[i] = String.format("ns%02d", i);
+		cluster = new FakeCluster(nodes, namespaces);
+		cluster.setBuild(build);
+		cluster.start();
+		agent = new CountingAgent(cluster);
+		long deadline = System.currentTimeMillis() + 30000;
+		do {
+			snapshots = agent.takeNodeSnapshots();
+			if (snapshots.size() < nodes)
+				Thread.sleep(100);
+		} while (snapshots.size() < nodes && System.currentTimeMillis() < deadline);
+		if (snapshots.size() < nodes)
+			throw new IllegalStateException("Client sees " + snapshots.size() + " of " + nodes + " nodes");
+	}
+
+	@TearDown
+	public void tearDown() {
+		cluster.stop();
+	}
+
+	@Benchmark
+	public long reportNodesLatency() {
+		agent.reportNodesLatency(snapshots);
+		return agent.metrics;
+	}
+}
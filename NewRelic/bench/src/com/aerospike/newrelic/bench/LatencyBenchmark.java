@@ -0,0 +1,54 @@
+package com.aerospike.newrelic.bench;
+
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_LATENCY_BUCKETS;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.newrelic.utils.LatencyHistogram;
+import com.aerospike.newrelic.utils.LatencyParser;
+
+/**
+ * Bucket decoding of latency responses, the parsing done by
+ * Base.getNodeLatency for latency: (3.9 - 5.0) and latencies: (5.1+) nodes.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyBenchmark {
+
+	private String latency;
+	private String latencies;
+
+	@Setup
+	public void setup() throws IOException {
+		latency = Payloads.load(Payloads.LATENCY);
+		latencies = Payloads.load(Payloads.LATENCIES);
+	}
+
+	@Benchmark
+	public List<LatencyHistogram> parseLegacy() {
+		return LatencyParser.parseLegacy(latency, true);
+	}
+
+	@Benchmark
+	public List<LatencyHistogram> parseLatencies() {
+		return LatencyParser.parseLatencies(latencies, DEFAULT_LATENCY_BUCKETS);
+	}
+}
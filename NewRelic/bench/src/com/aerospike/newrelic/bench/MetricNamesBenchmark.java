@@ -0,0 +1,76 @@
+package com.aerospike.newrelic.bench;
+
+import static com.aerospike.newrelic.utils.Constants.METRIC_BASE_NAME;
+import static com.aerospike.newrelic.utils.Constants.NODE_STATS;
+import static com.aerospike.newrelic.utils.Constants.SLASH;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.aerospike.newrelic.utils.InfoParser;
+import com.aerospike.newrelic.utils.MetricNames;
+import com.aerospike.newrelic.utils.MetricNames.Prefix;
+import com.aerospike.newrelic.utils.StatRegistry;
+import com.aerospike.newrelic.utils.StatTable;
+
+/**
+ * Metric names of the node statistics of a cycle: names cached by
+ * MetricNames against concatenating them for every metric.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricNamesBenchmark {
+
+	@Param({ "8", "32" })
+	public int nodes;
+
+	private String[] hosts;
+	private StatTable stats;
+	private MetricNames metricNames;
+
+	@Setup
+	public void setup() throws IOException {
+		hosts = new String[nodes];
+		for (int i = 0; i < nodes; i++)
+			hosts[i] = "10.0.0." + (i + 1);
+		stats = InfoParser.parseStatistics(Payloads.load(Payloads.STATISTICS), new StatTable());
+		metricNames = new MetricNames(METRIC_BASE_NAME);
+	}
+
+	@Benchmark
+	public void cachedNames(Blackhole blackhole) {
+		for (String host : hosts) {
+			Prefix prefix = metricNames.prefix(NODE_STATS, host);
+			for (int i = 0; i < stats.size(); i++)
+				blackhole.consume(prefix.name(stats.idAt(i)));
+		}
+	}
+
+	@Benchmark
+	public void concatenatedNames(Blackhole blackhole) {
+		StatRegistry registry = StatRegistry.getInstance();
+		for (String host : hosts) {
+			for (int i = 0; i < stats.size(); i++)
+				blackhole.consume(METRIC_BASE_NAME + SLASH + NODE_STATS + SLASH + host + SLASH
+						+ registry.getName(stats.idAt(i)));
+		}
+	}
+}
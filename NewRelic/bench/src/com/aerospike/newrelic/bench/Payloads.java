@@ -0,0 +1,42 @@
+package com.aerospike.newrelic.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * Info responses used by the benchmarks, read from bench/payloads (or the
+ * directory in the bench.payloads system property). The files have the size
+ * of a large node: about 2000 node statistics, 350 statistics per namespace
+ * and 32 namespaces.
+ *
+ */
+final class Payloads {
+
+	/** statistics response */
+	static final String STATISTICS = "statistics.txt";
+	/** namespace/<ns> response */
+	static final String NAMESPACE = "namespace.txt";
+	/** namespaces response */
+	static final String NAMESPACES = "namespaces.txt";
+	/** latency: response of a 3.9 - 5.0 server */
+	static final String LATENCY = "latency.txt";
+	/** latencies: response of a 5.1+ server */
+	static final String LATENCIES = "latencies.txt";
+
+	private Payloads() {
+	}
+
+	/**
+	 * Method to read a payload.
+	 *
+	 * @param name
+	 *            File name of the payload
+	 * @return String info response
+	 */
+	static String load(String name) throws IOException {
+		File file = new File(System.getProperty("bench.payloads", "bench/payloads"), name);
+		return new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")).trim();
+	}
+}
@@ -0,0 +1,160 @@
+package com.aerospike.newrelic.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.aerospike.newrelic.connector.AerospikeAgent;
+import com.aerospike.newrelic.fake.FakeCluster;
+import com.aerospike.newrelic.fake.FakeCollector;
+
+/**
+ * End-to-end cost of AerospikeAgent.pollCycle() against fake clusters of
+ * growing size. For every point (nodes, namespaces) the harness polls until
+ * the agent sees all nodes, then measures steady cycles and one cycle after
+ * every node changed its partition generation (namespaces read again).
+ *
+ * Reported per cycle: median latency, info requests and commands, bytes
+ * received, metrics emitted and heap allocated by the agent threads. The run
+ * fails when the info requests or commands of a cycle exceed
+ * O(nodes + nodes x namespaces).
+ *
+ * Usage: PollCycleBenchmark [nodes,...] [namespaces,...] [cycles]
+ *
+ */
+public final class PollCycleBenchmark {
+
+	/** requests per node in a cycle, pipelined snapshot plus namespace refresh */
+	private static final int MAX_REQUESTS_PER_NODE = 3;
+	/** commands per node and per namespace of a node in a cycle */
+	private static final int MAX_COMMANDS_PER_NODE = 4;
+	private static final int MAX_COMMANDS_PER_NAMESPACE = 2;
+
+	private static final long CONNECT_TIMEOUT_MS = 60000;
+
+	private PollCycleBenchmark() {
+	}
+
+	/**
+	 * Cost of the measured cycles of one point.
+	 */
+	private static final class Result {
+		double cycleMs;
+		long requests;
+		long commands;
+		long bytes;
+		long metrics;
+		long allocated;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] nodeCounts = args.length > 0 ? parseList(args[0]) : new int[] { 1, 8, 32, 128 };
+		int[] namespaceCounts = args.length > 1 ? parseList(args[1]) : new int[] { 1, 8, 32 };
+		int cycles = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		System.out.println(String.format(Locale.ROOT, "%6s %4s %10s %9s %9s %11s %8s %10s", "nodes", "ns", "cycle_ms",
+				"requests", "commands", "bytes", "metrics", "alloc_kb"));
+		boolean failed = false;
+		for (int nodes : nodeCounts) {
+			for (int namespaces : namespaceCounts) {
+				failed |= !run(nodes, namespaces, cycles);
+			}
+		}
+		if (failed) {
+			System.out.println("FAILED: info round trips grow faster than O(nodes + nodes x namespaces)");
+			System.exit(1);
+		}
+	}
+
+	private static boolean run(int nodes, int namespaces, int cycles) throws Exception {
+		String[] names = new String[namespaces];
+		for (int i = 0; i < namespaces; i++)
+			names[i] = String.format(Locale.ROOT, "ns%02d", i);
+		FakeCluster cluster = new FakeCluster(nodes, names);
+		cluster.start();
+		try {
+			AerospikeAgent agent = new AerospikeAgent(cluster.getSeedList(), null, null, "bench");
+			FakeCollector collector = new FakeCollector(agent);
+			long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+			do {
+				collector.reset();
+				agent.pollCycle();
+			} while (agent.getTopology().getNodes().size() < nodes && System.currentTimeMillis() < deadline);
+			if (agent.getTopology().getNodes().size() < nodes)
+				throw new IllegalStateException("Agent sees " + agent.getTopology().getNodes().size() + " of "
+						+ nodes + " nodes");
+
+			Result steady = measure(agent, collector, cluster, cycles);
+			print(nodes, namespaces, "", steady);
+
+			for (int i = 0; i < nodes; i++)
+				cluster.getNode(i).bumpPartitionGeneration();
+			Result rebalance = measure(agent, collector, cluster, 1);
+			print(nodes, namespaces, " (partition generation changed)", rebalance);
+
+			return withinBounds(steady, nodes, namespaces) && withinBounds(rebalance, nodes, namespaces);
+		} finally {
+			cluster.stop();
+		}
+	}
+
+	private static Result measure(AerospikeAgent agent, FakeCollector collector, FakeCluster cluster, int cycles) {
+		double[] cycleMs = new double[cycles];
+		Result result = new Result();
+		for (int i = 0; i < cycles; i++) {
+			collector.reset();
+			cluster.resetCounters();
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			agent.pollCycle();
+			cycleMs[i] = (System.nanoTime() - start) / 1e6;
+			result.allocated += allocatedBytes() - allocated;
+			result.requests += cluster.getRequests();
+			result.commands += cluster.getCommands();
+			result.bytes += cluster.getBytesSent();
+			result.metrics += collector.getMetrics();
+		}
+		Arrays.sort(cycleMs);
+		result.cycleMs = cycleMs[cycles / 2];
+		result.requests /= cycles;
+		result.commands /= cycles;
+		result.bytes /= cycles;
+		result.metrics /= cycles;
+		result.allocated /= cycles;
+		return result;
+	}
+
+	private static boolean withinBounds(Result result, int nodes, int namespaces) {
+		return result.requests <= (long) MAX_REQUESTS_PER_NODE * nodes
+				&& result.commands <= (long) MAX_COMMANDS_PER_NODE * nodes
+						+ (long) MAX_COMMANDS_PER_NAMESPACE * nodes * namespaces;
+	}
+
+	private static void print(int nodes, int namespaces, String note, Result result) {
+		System.out.println(String.format(Locale.ROOT, "%6d %4d %10.2f %9d %9d %11d %8d %10d%s", nodes, namespaces,
+				result.cycleMs, result.requests, result.commands, result.bytes, result.metrics,
+				result.allocated / 1024, note));
+	}
+
+	/**
+	 * Method to sum the bytes allocated by all threads but the fake nodes.
+	 */
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long allocated = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (!thread.getName().startsWith("fake-node-"))
+				allocated += Math.max(0, threads.getThreadAllocatedBytes(thread.getId()));
+		}
+		return allocated;
+	}
+
+	private static int[] parseList(String list) {
+		String[] values = list.split(",");
+		int[] result = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			result[i] = Integer.parseInt(values[i].trim());
+		return result;
+	}
+}
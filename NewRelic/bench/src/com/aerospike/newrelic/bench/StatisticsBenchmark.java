@@ -0,0 +1,51 @@
+package com.aerospike.newrelic.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.newrelic.utils.InfoParser;
+import com.aerospike.newrelic.utils.StatTable;
+
+/**
+ * Parsing of statistics responses, the work Base.getNodeStatistics and
+ * Base.getNamespaceStatistics do once the response arrived.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsBenchmark {
+
+	private String nodeStatistics;
+	private String namespaceStatistics;
+
+	@Setup
+	public void setup() throws IOException {
+		nodeStatistics = Payloads.load(Payloads.STATISTICS);
+		namespaceStatistics = Payloads.load(Payloads.NAMESPACE);
+	}
+
+	@Benchmark
+	public StatTable parseNodeStatistics() {
+		return InfoParser.parseStatistics(nodeStatistics, new StatTable());
+	}
+
+	@Benchmark
+	public StatTable parseNamespaceStatistics() {
+		return InfoParser.parseStatistics(namespaceStatistics, new StatTable());
+	}
+}
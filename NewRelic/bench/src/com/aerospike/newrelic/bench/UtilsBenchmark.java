@@ -0,0 +1,61 @@
+package com.aerospike.newrelic.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.newrelic.utils.Utils;
+
+/**
+ * Value checks of Utils over every value of a node statistics response
+ * (numbers, booleans and strings).
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+
+	private String[] values;
+
+	@Setup
+	public void setup() throws IOException {
+		String[] stats = Payloads.load(Payloads.STATISTICS).split(";");
+		values = new String[stats.length];
+		for (int i = 0; i < stats.length; i++)
+			values[i] = stats[i].substring(stats[i].indexOf('=') + 1);
+	}
+
+	@Benchmark
+	public int isValidNumber() {
+		int valid = 0;
+		for (String value : values) {
+			if (Utils.isValidNumber(value))
+				valid++;
+		}
+		return valid;
+	}
+
+	@Benchmark
+	public int validMetricValue() {
+		int valid = 0;
+		for (String value : values) {
+			if (Utils.validMetricValue(value))
+				valid++;
+		}
+		return valid;
+	}
+}
@@ -3,27 +3,62 @@ package com.aerospike.newrelic.connector;
 import static com.aerospike.newrelic.utils.Constants.CLUSTER_FALLBACK_NAME;
 import static com.aerospike.newrelic.utils.Constants.DEFAULT_PLUGIN_NAME;
 import static com.aerospike.newrelic.utils.Constants.LATENCY;
-import static com.aerospike.newrelic.utils.Constants.LATENCY_BUCKETS;
+import static com.aerospike.newrelic.utils.Constants.LATENCY_PERCENTILES;
+import static com.aerospike.newrelic.utils.Constants.LATENCY_QUANTILES;
 //import static com.aerospike.newrelic.utils.Constants.LATENCY_CATEGORY;
 import static com.aerospike.newrelic.utils.Constants.LATENCY_STATS;
 import static com.aerospike.newrelic.utils.Constants.METRIC_BASE_NAME;
 import static com.aerospike.newrelic.utils.Constants.NAMESPACE_STATS;
 import static com.aerospike.newrelic.utils.Constants.NODE_STATS;
+import static com.aerospike.newrelic.utils.Constants.PLUGIN_STATS;
 import static com.aerospike.newrelic.utils.Constants.READS;
 import static com.aerospike.newrelic.utils.Constants.SLASH;
 import static com.aerospike.newrelic.utils.Constants.SUMMARY;
 import static com.aerospike.newrelic.utils.Constants.THROUGHPUT_STATS;
 import static com.aerospike.newrelic.utils.Constants.WRITES;
+import static com.aerospike.newrelic.utils.StatIds.CLUSTER_SIZE;
+import static com.aerospike.newrelic.utils.StatIds.READ_REQS;
+import static com.aerospike.newrelic.utils.StatIds.READ_SUCCESS;
+import static com.aerospike.newrelic.utils.StatIds.USED_BYTES_DISK;
+import static com.aerospike.newrelic.utils.StatIds.USED_BYTES_MEMORY;
+import static com.aerospike.newrelic.utils.StatIds.WRITE_REQS;
+import static com.aerospike.newrelic.utils.StatIds.WRITE_SUCCESS;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.aerospike.client.Host;
 import com.aerospike.client.Log;
 import com.aerospike.client.AerospikeException;
 import com.aerospike.client.AerospikeException.Connection;
 import com.aerospike.client.cluster.Node;
+import com.aerospike.newrelic.connector.CollectionState.NodeState;
+import com.aerospike.newrelic.connector.PluginStats.NodeInfoStats;
+import com.aerospike.newrelic.utils.LatencyBuckets;
+import com.aerospike.newrelic.utils.LatencyHistogram;
+import com.aerospike.newrelic.utils.MergedHistogram;
+import com.aerospike.newrelic.utils.MetricNames;
+import com.aerospike.newrelic.utils.MetricNames.Prefix;
+import com.aerospike.newrelic.utils.StatTable;
 import com.aerospike.newrelic.utils.Utils;
 import com.newrelic.metrics.publish.Agent;
 import com.newrelic.metrics.publish.configuration.ConfigurationException;
@@ -40,17 +75,75 @@ public class AerospikeAgent extends Agent {
     private static final String GUID = "com.aerospike.newrelic.connector";
     private static final String VERSION = "2.0.1";
     
+    /* time the sampler and the pipeline are given to finish on close */
+    private static final long CLOSE_TIMEOUT_MS = 10000;
+    
     private String user;
     private String password;
     private ArrayList<Host> host_list;
     private String clusterName;
     private Base base;
     private String metricBaseName;
+    private ExecutorService collector;
+    private int collectorThreads;
+    private long cycleDeadlineNanos;
+    private CollectionState state;
+    private PluginStats pluginStats;
+    private MetricNames metricNames;
+    
+    private TopologyTracker topology;
+    
+    /* families polled on their own interval, with the metrics last reported for them */
+    private PollScheduler scheduler;
+    private Map<MetricFamily, MetricBuffer> familyMetrics = new EnumMap<MetricFamily, MetricBuffer>(MetricFamily.class);
+    private MetricBuffer recording;
+    
+    /* families sampled between cycles, with their aggregates since the last cycle */
+    private volatile ScheduledExecutorService sampler;
+    private Set<MetricFamily> sampledFamilies = EnumSet.noneOf(MetricFamily.class);
+    private Map<MetricFamily, MetricAggregates> familySamples = new EnumMap<MetricFamily, MetricAggregates>(MetricFamily.class);
+    private MetricAggregates aggregating;
+    
+    /* the sampler shares node state, rate history and aggregation maps with the cycle */
+    private final ReentrantLock cycleLock = new ReentrantLock();
+    
+    /*
+     * collect/publish pipeline: the pipeline thread collects cycles into
+     * staging, pollCycle() publishes the last complete one
+     */
+    private volatile ScheduledExecutorService pipeline;
+    private MetricBuffer staging;
+    private MetricBuffer collecting = new MetricBuffer();
+    private MetricBuffer complete = new MetricBuffer();
+    private boolean completeReady;
+    private final Object buffersLock = new Object();
+    
+    /* journal of the published cycles, to recover by hand those New Relic did not receive */
+    private CycleJournal journal;
+    
+    /* counter state saved every cycle, restored on start and saved again on close or shutdown */
+    private RateCheckpoint checkpoint;
+    private Thread checkpointHook;
+    
+    /* background connection to the cluster, cycles are skipped until it succeeds */
+    private ScheduledExecutorService connector;
+    private long connectRetryMs;
+    private long sampleIntervalMs;
+    private long collectIntervalMs;
+    private final CountDownLatch connected = new CountDownLatch(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+    
+    /* namespaces reported in the last cycle per host, to evict their metric names */
+    private Map<String, Set<String>> reportedNamespaces = new HashMap<String, Set<String>>();
+    
+    private static final String SUMMARY_LATENCY = SUMMARY + SLASH + LATENCY;
+    private static final String PLUGIN_NODE_STATS = PLUGIN_STATS + SLASH + "node";
     
     Map<String, Float> totalReadTps;
     Map<String, Float> totalWriteTps;
     Map<String, Map<String, Float>> clusterWideLatency;
     Map<String, Map<String, Float>> clusterWideNamespaceLatency;
+    Map<String, MergedHistogram> mergedLatency;
     
     private static final Logger logger = Logger.getLogger(AerospikeAgent.class);
     
@@ -65,12 +158,28 @@ public class AerospikeAgent extends Agent {
      */
     public AerospikeAgent(ArrayList<String> seed_list, String user, String password, String clusterName)
     throws ConfigurationException {
+        this(seed_list, user, password, clusterName, new AgentSettings());
+    }
+    
+    /**
+     * Constructor for Aerospike Agent
+     *
+     * @param Aerospike
+     *            node details (host, port, user, password, node name)
+     * @param settings
+     *            optional tuning parameters
+     * @throws ConfigurationException
+     *             if error reading configuration parameters.
+     */
+    public AerospikeAgent(ArrayList<String> seed_list, String user, String password, String clusterName,
+    		AgentSettings settings) throws ConfigurationException {
         super(GUID, VERSION);
         try {
             this.user = user;
             this.password = password;
             this.clusterName = clusterName;
             this.metricBaseName = METRIC_BASE_NAME;
+            this.metricNames = new MetricNames(metricBaseName);
             
             /* creating host list from seed list */
             this.host_list = new ArrayList<Host>();
@@ -87,17 +196,44 @@ public class AerospikeAgent extends Agent {
             /* creating map for cluster-wide latency */
             clusterWideLatency = new HashMap<String, Map<String, Float>>();
             clusterWideNamespaceLatency = new HashMap<String, Map<String, Float>>();
+            mergedLatency = new LinkedHashMap<String, MergedHistogram>();
             
-            /* Creating AerospikeClient */
-            this.base = new Base();
-            this.base.createAerospikeClient(this.host_list, this.user, this.password);
+            /* executor collecting nodes in parallel */
+            this.collector = CollectorExecutors.newExecutor("aerospike-collector-" + clusterName + "-",
+            		settings.getCollectorThreads(), settings.useVirtualThreads());
+            this.collectorThreads = settings.getCollectorThreads();
+            this.cycleDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(settings.getCycleDeadlineMs());
+            this.scheduler = new PollScheduler(settings.getPollIntervals());
+            if (settings.getSampleIntervalMs() > 0)
+                this.sampledFamilies.addAll(settings.getSampledFamilies());
+            for (MetricFamily family : MetricFamily.values()) {
+                if (sampledFamilies.contains(family))
+                    familySamples.put(family, new MetricAggregates());
+                else if (scheduler.getIntervalNanos(family) > 0)
+                    familyMetrics.put(family, new MetricBuffer());
+            }
             
-            /* Set default values to readTpsHistory and writeTpsHistory */
-            setDefaultsToTpsHistory();
+            this.state = new CollectionState(clusterName);
+            this.pluginStats = this.state.getPluginStats();
+            this.base = new Base(settings, this.state);
+            this.topology = newTopologyTracker();
+            if (settings.getCheckpointFile() != null)
+                this.checkpoint = new RateCheckpoint(new File(settings.getCheckpointFile()),
+                        TimeUnit.SECONDS.toMillis(settings.getCheckpointMaxAgeS()));
+            
+            this.sampleIntervalMs = settings.getSampleIntervalMs();
+            this.collectIntervalMs = settings.getCollectIntervalMs();
+            if (settings.getJournalFile() != null)
+                this.journal = new CycleJournal(new File(settings.getJournalFile()),
+                        settings.getJournalMaxMb() * 1048576L);
             
             //logger.info("Aerospike Agent initialized: ", formatAgentParams(host, port, user, password, clusterName));
             logger.info("Aerospike Agent initialized: ", formatAgentParams(seed_list, user, password, clusterName));
             
+            /* Creating AerospikeClient in the background, agents start without waiting for their cluster */
+            this.connectRetryMs = settings.getConnectRetryMs();
+            startConnect();
+            
             
         } catch (Exception exception) {
             logger.error("Error reading configuration parameters : ", exception);
@@ -128,30 +264,380 @@ public class AerospikeAgent extends Agent {
     }
     
     /**
-     * Method to set default values to readTpsHistory and writeTpsHistory
+     * Method to create the tracker keeping per node state in step with the
+     * cluster: state is created when a node joins and everything kept for it
+     * (history, capabilities, namespaces, breaker, plugin statistics, metric
+     * names) is dropped when it leaves.
      *
+     * @return TopologyTracker tracker of the cluster nodes
      */
-    public void setDefaultsToTpsHistory() {
-        Long timeStamp = System.currentTimeMillis() / 1000l;
-        Node[] nodes = base.getAerospikeNodes();
-        
-        for (Node node : nodes) {
-            Map<String, String> readTpsHistory = new HashMap<String, String>();
-            readTpsHistory.put("timeStamp", Long.toString(timeStamp));
-            readTpsHistory.put("totalTps", null);
-            readTpsHistory.put("successTps", null);
-            
-            Main.readTpsHistory.put(node.getHost().name, readTpsHistory);
-            
-            Map<String, String> writeTpsHistory = new HashMap<String, String>();
-            writeTpsHistory.put("timeStamp", Long.toString(timeStamp));
-            writeTpsHistory.put("totalTps", null);
-            writeTpsHistory.put("successTps", null);
+    private TopologyTracker newTopologyTracker() {
+        TopologyTracker tracker = new TopologyTracker();
+        tracker.addListener(new TopologyTracker.Listener() {
+            @Override
+            public void nodeJoined(Node node) {
+                NodeState nodeState = state.getNodeState(node);
+                if (checkpoint != null) {
+                    int restored = checkpoint.restore(nodeState);
+                    if (restored > 0)
+                        logger.info("Counters of node ", node, " restored from checkpoint: ", restored);
+                }
+            }
             
-            Main.readTpsHistory.put(node.getHost().name, writeTpsHistory);
+            @Override
+            public void nodeLeft(Node node) {
+                state.removeNodeState(node.getName());
+                base.evictNode(node.getName());
+                pluginStats.evictNode(node.getName());
+                metricNames.evictNode(node.getHost().name);
+                reportedNamespaces.remove(node.getHost().name);
+                for (MetricBuffer metrics : familyMetrics.values())
+                    metrics.removeContaining(SLASH + node.getHost().name + SLASH);
+                for (MetricAggregates samples : familySamples.values())
+                    samples.removeContaining(SLASH + node.getHost().name + SLASH);
+            }
+        });
+        return tracker;
+    }
+    
+    /**
+     * Method to start connecting to the cluster in the background.
+     */
+    private void startConnect() {
+        connector = CollectorExecutors.newScheduler("aerospike-connect-" + clusterName + "-");
+        connector.execute(new Runnable() {
+            @Override
+            public void run() {
+                connect(this);
+            }
+        });
+    }
+    
+    /**
+     * Method to connect to the cluster, run by the connector. A failure is
+     * retried after connect_retry_ms; once connected, the state of the nodes
+     * known to the client is created, the checkpoint restored and the sampler
+     * and pipeline started.
+     *
+     * @param task
+     *            Connection task, scheduled again on failure
+     */
+    private void connect(Runnable task) {
+        try {
+            base.createAerospikeClient(host_list, user, password);
+        } catch (RuntimeException exception) {
+            cycleLock.lock();
+            try {
+                pluginStats.recordError(exception);
+            } finally {
+                cycleLock.unlock();
+            }
+            logger.error("Cannot connect to cluster ", clusterName, ", retrying in ", connectRetryMs, " ms: ",
+                    exception.getMessage());
+            if (!closed.get())
+                connector.schedule(task, connectRetryMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        cycleLock.lock();
+        try {
+            if (closed.get()) {
+                /* closed while connecting */
+                base.closeClientConnections();
+                return;
+            }
+            if (checkpoint != null)
+                loadCheckpoint();
+            topology.update(base.getAerospikeNodes());
+            if (!sampledFamilies.isEmpty())
+                startSampler(sampleIntervalMs);
+            if (collectIntervalMs > 0)
+                startPipeline(collectIntervalMs);
+        } finally {
+            cycleLock.unlock();
+        }
+        if (closed.get()) {
+            /* closed while starting, close() may not have seen the background tasks */
+            shutdownNow(sampler);
+            shutdownNow(pipeline);
+            return;
+        }
+        connected.countDown();
+        connector.shutdown();
+        logger.info("Connected to cluster ", clusterName);
+    }
+    
+    /**
+     * @return boolean true once the agent is connected to its cluster
+     */
+    public boolean isConnected() {
+        return connected.getCount() == 0;
+    }
+    
+    /**
+     * Method to wait until the agent is connected to its cluster.
+     *
+     * @param timeoutMs
+     *            Maximum time to wait
+     * @return boolean true if the agent is connected
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean awaitConnected(long timeoutMs) throws InterruptedException {
+        return connected.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Method to load the checkpoint, restored node by node as they join, and
+     * to close the agent on shutdown so that it is saved again.
+     */
+    private void loadCheckpoint() {
+        logger.info("Nodes read from checkpoint: ", checkpoint.load());
+        checkpointHook = new Thread("aerospike-checkpoint-" + clusterName) {
+            @Override
+            public void run() {
+                close();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(checkpointHook);
+    }
+    
+    /**
+     * Method to stop the agent: connection, sampling and collection are
+     * stopped, the checkpoint is saved and its shutdown hook removed, and the
+     * client is released. Cycles polled afterwards are skipped. Calling it
+     * again has no effect.
+     *
+     * The checkpoint is saved with the cycle lock held, waiting at most
+     * CLOSE_TIMEOUT_MS for the cycle in progress; if it does not end in
+     * time, the checkpoint saved by the previous cycle is kept.
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true))
+            return;
+        if (connector != null)
+            connector.shutdownNow();
+        /* the background tasks finish the cycle or sample they are running */
+        awaitTermination(sampler);
+        awaitTermination(pipeline);
+        boolean locked = false;
+        try {
+            locked = cycleLock.tryLock(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (!locked) {
+            logger.warn("Cycle of cluster ", clusterName, " still running, closing without saving the checkpoint");
+            collector.shutdownNow();
+            return;
+        }
+        try {
+            if (checkpointHook != null) {
+                saveCheckpoint();
+                try {
+                    Runtime.getRuntime().removeShutdownHook(checkpointHook);
+                } catch (IllegalStateException exception) {
+                    /* the JVM is shutting down, this is the hook */
+                }
+                checkpointHook = null;
+            }
+            collector.shutdownNow();
+            base.closeClientConnections();
+        } finally {
+            cycleLock.unlock();
+        }
+        logger.info("Closed agent of cluster ", clusterName);
+    }
+    
+    private static void shutdownNow(ExecutorService executor) {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+    
+    private void awaitTermination(ExecutorService executor) {
+        if (executor == null)
+            return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                executor.shutdownNow();
+        } catch (InterruptedException exception) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Method to save the counter state, called with the cycle lock held.
+     * Failures are logged and counted.
+     */
+    private void saveCheckpoint() {
+        if (checkpoint == null)
+            return;
+        try {
+            checkpoint.save(state);
+        } catch (IOException exception) {
+            pluginStats.recordError(exception);
+            logger.error("Cannot save checkpoint: ", exception);
+        }
+    }
+    
+    /**
+     * Method to start sampling the sampled families between cycles.
+     *
+     * @param intervalMs
+     *            milliseconds between the end of a sample and the next one
+     */
+    private void startSampler(long intervalMs) {
+        sampler = CollectorExecutors.newScheduler("aerospike-sampler-" + clusterName + "-");
+        sampler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Sampling ", sampledFamilies, " every ", intervalMs, " ms");
+    }
+    
+    /**
+     * Method to start collecting cycles in the background at a fixed rate,
+     * pollCycle() then only publishes them.
+     *
+     * @param intervalMs
+     *            milliseconds between the start of two cycles
+     */
+    private void startPipeline(long intervalMs) {
+        pipeline = CollectorExecutors.newScheduler("aerospike-pipeline-" + clusterName + "-");
+        pipeline.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                collectCycle();
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Collecting cycles every ", intervalMs, " ms");
+    }
+    
+    /**
+     * Method to collect a cycle into the staging buffer and hand it over to
+     * the publisher. A cycle not yet published is replaced by the newer one.
+     * Only the swap waits for the publisher, collection never does.
+     */
+    public void collectCycle() {
+        cycleLock.lock();
+        try {
+            if (closed.get())
+                return;
+            collecting.clear();
+            staging = collecting;
+            try {
+                reportCycle();
+            } finally {
+                staging = null;
+            }
+        } finally {
+            cycleLock.unlock();
+        }
+        synchronized (buffersLock) {
+            MetricBuffer collected = collecting;
+            collecting = complete;
+            complete = collected;
+            completeReady = true;
+        }
+    }
+    
+    /**
+     * Method to publish the last complete cycle. With a journal, the cycle is
+     * also appended to it with its time.
+     */
+    private void publishCycle() {
+        synchronized (buffersLock) {
+            if (!completeReady) {
+                logger.debug("No complete cycle to publish.");
+                return;
+            }
+            drain(complete);
+            if (journal != null && journal.append(complete, System.currentTimeMillis()) < 0)
+                logger.warn("Cycle larger than the journal, not journaled: ", complete.size(), " metrics");
+            completeReady = false;
+        }
+    }
+    
+    /**
+     * Method to pass the metrics of a buffer to New Relic.
+     */
+    private void drain(MetricBuffer metrics) {
+        for (int i = 0; i < metrics.size(); i++) {
+            int count = metrics.getCount(i);
+            if (count == 0)
+                super.reportMetric(metrics.getName(i), metrics.getUnits(i), metrics.getValue(i));
+            else
+                super.reportMetric(metrics.getName(i), metrics.getUnits(i), count, metrics.getValue(i),
+                        metrics.getMin(i), metrics.getMax(i), metrics.getSumOfSquares(i));
         }
     }
     
+    /**
+     * Method to take one sample of the sampled families between two cycles.
+     * The metrics are added to the aggregates of their family and reported
+     * by the next cycle as count, total, min, max and sum of squares.
+     */
+    public void sample() {
+        cycleLock.lock();
+        try {
+            if (closed.get())
+                return;
+            try {
+                List<NodeSnapshot> snapshots = takeNodeSnapshots(sampledFamilies);
+                for (MetricFamily family : sampledFamilies) {
+                    aggregating = familySamples.get(family);
+                    try {
+                        reportFamily(family, snapshots);
+                    } catch (RuntimeException exception) {
+                        pluginStats.recordError(exception);
+                        logger.error("Exception sampling ", family.getKey(), ": ", exception);
+                    } finally {
+                        aggregating = null;
+                    }
+                }
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            } catch (Exception exception) {
+                /* an exception would cancel the sampler */
+                pluginStats.recordError(exception);
+                logger.error("Exception while sampling: ", exception);
+            }
+        } finally {
+            cycleLock.unlock();
+        }
+    }
+    
+    /**
+     * Getter method for the topology tracker of this agent.
+     *
+     * @return TopologyTracker tracker of the cluster nodes
+     */
+    public TopologyTracker getTopology() {
+        return topology;
+    }
+    
+    /**
+     * Getter method for the collection state of this agent.
+     *
+     * @return CollectionState per node history of the cluster
+     */
+    public CollectionState getCollectionState() {
+        return state;
+    }
+    
+    /**
+     * Getter method for the journal of this agent.
+     *
+     * @return CycleJournal journal of the published cycles, null if none is
+     *         configured
+     */
+    public CycleJournal getJournal() {
+        return journal;
+    }
+    
     /**
      * Method to return agent name.
      *
@@ -163,46 +649,30 @@ public class AerospikeAgent extends Agent {
     }
     
     /**
-     * Method to fetch node statistics from base and report to new relic.
+     * Method to report node statistics of a node snapshot to new relic.
      * For ASD>3.9 derive used_bytes_memory and use_bytes_disk.
-     * @return Map<String, String> A map of node statistics
+     * @return StatTable A table of node statistics
      */
-    public Map<String, String> reportNodeStatistics(Node node) {
-        logger.debug("Reporting node stats: " + node);
+    public StatTable reportNodeStatistics(NodeSnapshot snapshot) {
+        Node node = snapshot.getNode();
+        logger.debug("Reporting node stats: ", node);
 
         
-        String nodeStatPrefix = metricBaseName + SLASH + NODE_STATS + SLASH + node.getHost().name + SLASH;
-        Map<String, String> nodeStats = base.getNodeStatistics(node);
+        Prefix nodeStatPrefix = metricNames.prefix(NODE_STATS, node.getHost().name);
+        StatTable nodeStats = snapshot.getNodeStatistics();
 
-		boolean newAsd = base.newAsdversion(node);
+		boolean newAsd = snapshot.getCapabilities().hasNamespaceStats();
         if (newAsd == true) {
         	logger.debug("New ASD, collect used_disk and used_memory.");
-            Float totalUsedMemory = (float) 0;
-            Float totalUsedDisk = (float) 0;
-            
-            Map<String, String> memoryStats = base.getMemoryStats(node);
-            Map<String, String> diskStats = base.getDiskStats(node);
-            
-            if (memoryStats.get("used_bytes_memory") != null && memoryStats.get("used_bytes_memory") != "n/s")
-            	totalUsedMemory = Float.parseFloat(memoryStats.get("used_bytes_memory"));
-            
-            if (diskStats.get("used_bytes_disk") != null && diskStats.get("used_bytes_disk") != "n/s")
-            	totalUsedDisk = Float.parseFloat(diskStats.get("used_bytes_disk"));
+            double totalUsedMemory = base.getMemoryStats(snapshot).get(USED_BYTES_MEMORY);
+            double totalUsedDisk = base.getDiskStats(snapshot).get(USED_BYTES_DISK);
             
-            reportMetric(nodeStatPrefix + "used_bytes_memory", "", totalUsedMemory);
-            logger.debug("Reprting metics, metric name: " + nodeStatPrefix + "used_bytes_memory" + ", value: " + totalUsedMemory);
-                        
-            reportMetric(nodeStatPrefix + "used_bytes_disk", "", totalUsedDisk);
-            logger.debug("Reprting metics, metric name: " + nodeStatPrefix + "used_bytes_disk" + ", value: " + totalUsedDisk);
-            	
-        	
+            reportMetric(nodeStatPrefix.name("used_bytes_memory"), "", totalUsedMemory);
+            reportMetric(nodeStatPrefix.name("used_bytes_disk"), "", totalUsedDisk);
         }
 
-        for (Map.Entry<String, String> nodeStat : nodeStats.entrySet()) {
-            String metric_name = nodeStatPrefix + nodeStat.getKey();
-            float value = Float.parseFloat(nodeStat.getValue());
-            reportMetric(metric_name, "", value);
-            logger.debug("Reprting metics, metric name: " + metric_name + ", value: " + value);
+        for (int i = 0; i < nodeStats.size(); i++) {
+            reportMetric(nodeStatPrefix.name(nodeStats.idAt(i)), "", nodeStats.valueAt(i));
         }
         return nodeStats;
     }
@@ -226,105 +696,70 @@ public class AerospikeAgent extends Agent {
      * Method to report node throughput.
      *
      */
-    public void reportThroughput(Node node) {
+    public void reportThroughput(NodeSnapshot snapshot) {
         logger.debug("Report node throughput.");
-        Map<String, Map<String, String>> tps = base.getThroughput(node);
-        Map<String, String> readTps = tps.get("reads");
-        Map<String, String> writeTps = tps.get("writes");
+        Node node = snapshot.getNode();
+        StatTable tps = base.getThroughput(snapshot);
         
-        String baseThroughputMetric = metricBaseName + SLASH + THROUGHPUT_STATS + SLASH;
-        if (readTps != null) {
-            String read_metric_prefix = baseThroughputMetric + node.getHost().name + SLASH + READS + SLASH;
-            if (readTps.get("successTps") == null) {
-                totalReadTps.put("successTps", (float) 0);
-                reportMetric(read_metric_prefix + "success", "", 0);
-                logger.debug("Reprting metics, metric name: " + read_metric_prefix + "success" + ", value: " + 0);
-                
-            } else {
-                totalReadTps.put("successTps", totalReadTps.get("successTps") + Integer.valueOf(readTps.get("successTps")));
-                reportMetric(read_metric_prefix + "success", "", Integer.valueOf(readTps.get("successTps")));
-                logger.debug("Reprting metics, metric name: " + read_metric_prefix + "success" + ", value: " + Integer.valueOf(readTps.get("successTps")));
-                
-            }
-            
-            if (readTps.get("totalTps") == null) {
-                totalReadTps.put("totalTps", (float) 0);
-                reportMetric(read_metric_prefix + "total", "", 0);
-                logger.debug("Reprting metics, metric name: " + read_metric_prefix + "total" + ", value: " + 0);
-                
-            } else {
-                totalReadTps.put("totalTps", totalReadTps.get("totalTps") + Integer.valueOf(readTps.get("totalTps")));
-                reportMetric(read_metric_prefix + "total", "", Integer.valueOf(readTps.get("totalTps")));
-                logger.debug("Reprting metics, metric name: " + read_metric_prefix + "total" + ", value: " + Integer.valueOf(readTps.get("totalTps")));
-                
-            }
-        }
+        Prefix throughputPrefix = metricNames.prefix(THROUGHPUT_STATS, node.getHost().name);
+        reportNodeTps(throughputPrefix.name(READS, "success"), tps, READ_SUCCESS, totalReadTps, "successTps");
+        reportNodeTps(throughputPrefix.name(READS, "total"), tps, READ_REQS, totalReadTps, "totalTps");
         
-        if (writeTps != null) {
-            String write_metric_name = baseThroughputMetric + node.getHost().name + SLASH + WRITES + SLASH;
-            if (writeTps.get("successTps") == null) {
-                totalWriteTps.put("successTps", (float) 0);
-                reportMetric(write_metric_name + "success", "", 0);
-                logger.debug("Reprting metics, metric name: " + write_metric_name + "success" + ", value: " + 0);
-                
-            } else {
-                totalWriteTps.put("successTps", totalWriteTps.get("successTps") + Integer.valueOf(writeTps.get("successTps")));
-                reportMetric(write_metric_name + "success", "", Integer.valueOf(writeTps.get("successTps")));
-                logger.debug("Reprting metics, metric name: " + write_metric_name + "success" + ", value: " + Integer.valueOf(writeTps.get("successTps")));
-                
-            }
-            if (writeTps.get("totalTps") == null) {
-                totalWriteTps.put("totalTps", (float) 0);
-                reportMetric(write_metric_name + "total", "", 0);
-                logger.debug("Reprting metics, metric name: " + write_metric_name + "total" + ", value: " + 0);
-                
-            } else {
-                totalWriteTps.put("totalTps",totalWriteTps.get("totalTps") + Integer.valueOf(writeTps.get("totalTps")));
-                reportMetric(write_metric_name + "total", "", Integer.valueOf(writeTps.get("totalTps")));
-                logger.debug("Reprting metics, metric name: " + write_metric_name + "total" + ", value: " + Integer.valueOf(writeTps.get("totalTps")));
-                
-            }
+        reportNodeTps(throughputPrefix.name(WRITES, "success"), tps, WRITE_SUCCESS, totalWriteTps, "successTps");
+        reportNodeTps(throughputPrefix.name(WRITES, "total"), tps, WRITE_REQS, totalWriteTps, "totalTps");
+        
+        /* per-second rates of the configured counters */
+        reportRates(throughputPrefix, base.getNodeRates(snapshot));
+        for (String namespace : snapshot.getNamespaces()) {
+            reportRates(metricNames.prefix(THROUGHPUT_STATS, node.getHost().name, namespace),
+            		base.getNamespaceRates(snapshot, namespace));
+        }
+    }
+    
+    /**
+     * Method to report a table of per-second rates.
+     */
+    private void reportRates(Prefix metricPrefix, StatTable rates) {
+        for (int i = 0; i < rates.size(); i++) {
+            reportMetric(metricPrefix.name(rates.idAt(i)), "", rates.valueAt(i));
         }
     }
     
+    /**
+     * Method to report one node tps value and add it to the cluster-wide total.
+     * A tps that could not be computed yet (first cycle) is reported as 0.
+     */
+    private void reportNodeTps(String metric_name, StatTable tps, int tpsId, Map<String, Float> totalTps, String totalKey) {
+        double value = tps.get(tpsId);
+        totalTps.put(totalKey, (float) (totalTps.get(totalKey) + value));
+        reportMetric(metric_name, "", value);
+    }
+    
     /**
      * Method to report Summary metric
      *
      */
-    public void reportSummaryMetric() {
+    public void reportSummaryMetric(List<NodeSnapshot> snapshots) {
         logger.debug("Reporting summary metric.");
-        String baseSummaryMetric = METRIC_BASE_NAME + SLASH + SUMMARY + SLASH;
+        Prefix summaryPrefix = metricNames.prefix(SUMMARY, null);
         /* Getting one active node from cluster and getting its stats*/
-        Float totalUsedMemory = (float) 0;
-        Float totalUsedDisk = (float) 0;
+        double totalUsedMemory = 0;
+        double totalUsedDisk = 0;
         
-        Node[] nodes = base.getAerospikeNodes();
-        
-        for (Node node : nodes) {
-            Map<String, String> memoryStats = base.getMemoryStats(node);
-            Map<String, String> diskStats = base.getDiskStats(node);
-            
-            if (memoryStats.get("used_bytes_memory") != null && memoryStats.get("used_bytes_memory") != "n/s")
-            	totalUsedMemory += Float.parseFloat(memoryStats.get("used_bytes_memory"));
-            if (diskStats.get("used_bytes_disk") != null && diskStats.get("used_bytes_disk") != "n/s")
-            	totalUsedDisk += Float.parseFloat(diskStats.get("used_bytes_disk"));
+        for (NodeSnapshot snapshot : snapshots) {
+            totalUsedMemory += base.getMemoryStats(snapshot).get(USED_BYTES_MEMORY);
+            totalUsedDisk += base.getDiskStats(snapshot).get(USED_BYTES_DISK);
         }
         
-        Node node = base.getAerospikeNodes()[0];
-        if (node != null) {
-            Map<String, String> nodeStats = base.getNodeStatistics(node);
-            if (nodeStats != null) {
-                reportMetric(baseSummaryMetric + "cluster_size", "", Float.parseFloat(nodeStats.get("cluster_size")));
-                logger.debug("Reprting metics, metric name: " + baseSummaryMetric + "cluster_size" + ", value: " + Float.parseFloat(nodeStats.get("cluster_size")));
+        if (!snapshots.isEmpty()) {
+            StatTable nodeStats = snapshots.get(0).getNodeStatistics();
+            if (nodeStats.contains(CLUSTER_SIZE)) {
+                reportMetric(summaryPrefix.name("cluster_size"), "", nodeStats.get(CLUSTER_SIZE));
             }
         }
 
-        reportMetric(baseSummaryMetric + "used_bytes_memory", "", totalUsedMemory);
-        logger.debug("Reprting metics, metric name: " + baseSummaryMetric + "used_bytes_memory" + ", value: " + totalUsedMemory);
-        
-        
-        reportMetric(baseSummaryMetric + "used_bytes_disk", "", totalUsedDisk);
-        logger.debug("Reprting metics, metric name: " + baseSummaryMetric + "used_bytes_disk" + ", value: " + totalUsedDisk);      
+        reportMetric(summaryPrefix.name("used_bytes_memory"), "", totalUsedMemory);
+        reportMetric(summaryPrefix.name("used_bytes_disk"), "", totalUsedDisk);
     }
     
     /**
@@ -333,61 +768,49 @@ public class AerospikeAgent extends Agent {
      */
     public void reportTotalTps() {
         logger.debug("Report total tps.");
-        String baseSummaryTpsMetric = METRIC_BASE_NAME + SLASH + SUMMARY + SLASH;
-        String read_metric = baseSummaryTpsMetric + READS + SLASH;
-        String write_metric = baseSummaryTpsMetric + WRITES + SLASH;
-        
-        reportMetric(read_metric + "success", "", totalReadTps.get("successTps"));
-        logger.debug("Reprting metics, metric name: " + read_metric + ", value: " + totalReadTps.get("successTps"));
-        
-        reportMetric(read_metric + "total", "", totalReadTps.get("totalTps"));
-        logger.debug("Reprting metics, metric name: " + read_metric + ", value: " + totalReadTps.get("totalTps"));
-        
-        reportMetric(write_metric + "success", "", totalWriteTps.get("successTps"));
-        logger.debug("Reprting metics, metric name: " + write_metric + ", value: " + totalWriteTps.get("successTps"));
-        
-        reportMetric(write_metric + "total", "", totalWriteTps.get("totalTps"));
-        logger.debug("Reprting metics, metric name: " + write_metric + ", value: " + totalWriteTps.get("totalTps"));
-        
+        Prefix summaryPrefix = metricNames.prefix(SUMMARY, null);
+        reportMetric(summaryPrefix.name(READS, "success"), "", totalReadTps.get("successTps"));
+        reportMetric(summaryPrefix.name(READS, "total"), "", totalReadTps.get("totalTps"));
+        reportMetric(summaryPrefix.name(WRITES, "success"), "", totalWriteTps.get("successTps"));
+        reportMetric(summaryPrefix.name(WRITES, "total"), "", totalWriteTps.get("totalTps"));
     }
     
     /**
      * A method to report node latency for reads, writes_master, proxy, udf and
      * query.
      */
-    public void reportNodesLatency() {
+    public void reportNodesLatency(List<NodeSnapshot> snapshots) {
         logger.debug("Reporting node latency.");
-        String baseLatentyMetric = metricBaseName + SLASH + LATENCY_STATS + SLASH;
         /* setting default values to cluster-wide latency map */
         initClusterWideLatency();
-        Node[] nodes = base.getAerospikeNodes();
-        for (Node node : nodes) {
-            Map<String, Map<String, String>> latency = base.getNodeLatency(node);
-            logger.info("Node latency: " + latency);
-            for (Map.Entry<String, Map<String, String>> entry : latency.entrySet()) {
-                String key = entry.getKey();
-                for (Map.Entry<String, String> dataEntry : entry.getValue().entrySet()) {
-                    
-                    String metric_name_prefix = baseLatentyMetric + node.getHost().name + SLASH + key + "/" + dataEntry.getKey();
-                    float metric_value = Float.parseFloat(dataEntry.getValue().split(";")[0]);
-                    float metric_pct = Float.parseFloat(dataEntry.getValue().split(";")[1]);
-                    
-                    reportMetric(metric_name_prefix + "/value", "", metric_value);
-                    logger.debug("Reprting metics, metric name: " + metric_name_prefix + "/value" + ", value: " + metric_value);
+        for (NodeSnapshot snapshot : snapshots) {
+            Node node = snapshot.getNode();
+            List<LatencyHistogram> latency;
+            try {
+                latency = base.getNodeLatency(snapshot);
+            } catch (RuntimeException exception) {
+                nodeFailed(node, exception);
+                continue;
+            }
+            logger.debug("Node latency histograms: ", latency.size());
+            for (LatencyHistogram histogram : latency) {
+                LatencyBuckets buckets = histogram.getBuckets();
+                Prefix latencyPrefix = metricNames.prefix(LATENCY_STATS, node.getHost().name, histogram.getKey());
+                for (int i = 0; i < buckets.size(); i++) {
+                    float metric_value = (float) histogram.getBucketOps(i);
+                    float metric_pct = (float) histogram.getBucketPct(i);
                     
-                    reportMetric(metric_name_prefix + "/pct", "", metric_pct);
-                    logger.debug("Reprting metics, metric name: " + metric_name_prefix + "/pct" + ", value: " + metric_pct);
+                    reportMetric(latencyPrefix.name(buckets.getName(i), "value"), "", metric_value);
+                    reportMetric(latencyPrefix.name(buckets.getName(i), "pct"), "", metric_pct);
                     
                     /* calculating cluster-wide latency */
-                    
-                    calculateClusterWideLatency(key, dataEntry.getKey(),
-                    		metric_value, node);
-                    
+                    calculateClusterWideLatency(histogram, buckets.getName(i), metric_value);
                 }
+                mergeLatency(histogram);
             }
         }
         /* reporting cluster-wide latency */
-        reportClusterWideLatency(nodes.length);
+        reportClusterWideLatency(snapshots.size());
     }
     
     /**
@@ -399,21 +822,10 @@ public class AerospikeAgent extends Agent {
     	logger.debug("Init clusterwide latency.");
         clusterWideLatency.clear();
         clusterWideNamespaceLatency.clear();
+        mergedLatency.clear();
       
     }
     
-    /**
-     * Init latency buckets for some category.
-     */
-    private void initClusterWideLatencyBucket(Map<String, Map<String, Float>> clusterWideLatency, String category) {
-        Map<String, Float> bucketMap = new HashMap<String, Float>();
-        for (String bucket : LATENCY_BUCKETS) {
-            bucketMap.put(bucket, (float) 0);
-        }
-        clusterWideLatency.put(category, bucketMap);
-    }
-
-    
     /**
      * Method to calculate latency
      *
@@ -423,39 +835,70 @@ public class AerospikeAgent extends Agent {
      * @param bucketValue
      */ 
     private void calculateLatency(Map<String, Map<String, Float>> clusterWideLatency, String category, String bucket, float bucketValue) {
-        logger.debug("Calculating latency.");
-        float value = (float)0.0;
-        if (clusterWideLatency.containsKey(category)) {
-            value = clusterWideLatency.get(category).get(bucket) + bucketValue;
-        } else {
-            initClusterWideLatencyBucket(clusterWideLatency, category);
+        Map<String, Float> bucketMap = clusterWideLatency.get(category);
+        if (bucketMap == null) {
+            /* buckets differ between latency: and latencies: nodes, keep them in the order seen */
+            bucketMap = new LinkedHashMap<String, Float>();
+            clusterWideLatency.put(category, bucketMap);
         }
-        clusterWideLatency.get(category).put(bucket, value);
+        Float value = bucketMap.get(bucket);
+        bucketMap.put(bucket, value == null ? bucketValue : value + bucketValue);
     }
 
     
     /**
-     * Method to calculate cluster-wide latency and cluster wide namespace latency for ASD>3.9
+     * Method to calculate cluster-wide latency, and cluster wide namespace
+     * latency for namespaced histograms (ASD>3.9)
      *
-     * @param category
+     * @param histogram
      * @param bucket
      * @param bucketValue
      */
-    private void calculateClusterWideLatency(String category, String bucket, float bucketValue, Node node) {
-        logger.debug("Calculating clusterwide latency.");
-        boolean newAsd = base.newAsdversion(node);
-
-        if (newAsd == true) {
-    		String[] lst = category.split("-");
-    		//calculateLatency(clusterWideLatency, category, bucket, bucketValue);
-    		if(lst.length > 0)
-        		calculateLatency(clusterWideNamespaceLatency, category, bucket, bucketValue);
-    		category = lst[0];
-    		
-    	}
-		calculateLatency(clusterWideLatency, category, bucket, bucketValue);
+    private void calculateClusterWideLatency(LatencyHistogram histogram, String bucket, float bucketValue) {
+        if (histogram.getNamespace() != null)
+            calculateLatency(clusterWideNamespaceLatency, histogram.getKey(), bucket, bucketValue);
+        calculateLatency(clusterWideLatency, histogram.getCategory(), bucket, bucketValue);
     }
     
+    /**
+     * Method to merge a node histogram into the cluster-wide histograms of its
+     * category and, for namespaced histograms, of its namespace.
+     *
+     * @param histogram
+     */
+    private void mergeLatency(LatencyHistogram histogram) {
+        if (histogram.getNamespace() != null)
+            mergeLatency(histogram.getKey(), histogram);
+        mergeLatency(histogram.getCategory(), histogram);
+    }
+
+    private void mergeLatency(String key, LatencyHistogram histogram) {
+        MergedHistogram merged = mergedLatency.get(key);
+        if (merged == null) {
+            merged = new MergedHistogram(histogram.getBuckets());
+            mergedLatency.put(key, merged);
+        }
+        merged.add(histogram);
+    }
+
+    /**
+     * Method to report the throughput weighted bucket shares and percentiles
+     * of the merged cluster-wide histograms.
+     */
+    private void reportLatencyPercentiles() {
+        for (Map.Entry<String, MergedHistogram> entry : mergedLatency.entrySet()) {
+            MergedHistogram merged = entry.getValue();
+            if (merged.getTotalOps() <= 0)
+                continue;
+            Prefix prefix = metricNames.prefix(SUMMARY_LATENCY, null, entry.getKey());
+            LatencyBuckets buckets = merged.getBuckets();
+            for (int i = 0; i < buckets.size(); i++)
+                reportMetric(prefix.name(buckets.getName(i), "pct"), "", merged.getBucketPct(i));
+            for (int i = 0; i < LATENCY_PERCENTILES.length; i++)
+                reportMetric(prefix.name(LATENCY_PERCENTILES[i]), "ms", merged.percentile(LATENCY_QUANTILES[i]));
+        }
+    }
+
     /**
      * Method to report latency
      *
@@ -465,11 +908,11 @@ public class AerospikeAgent extends Agent {
     private void reportLatency(int clusterSize, Map<String, Map<String, Float>> clusterWideLatency) {
         logger.debug("Reporting latency.");
         logger.debug(clusterWideLatency);
-        String baseClusterWideLatencyMetric = METRIC_BASE_NAME + SLASH + SUMMARY + SLASH + LATENCY + SLASH;
         for (Map.Entry<String, Map<String, Float>> entry : clusterWideLatency.entrySet()) {
             String key = entry.getKey();
+            Prefix prefix = metricNames.prefix(SUMMARY_LATENCY, null, key);
             for (Map.Entry<String, Float> dataEntry : entry.getValue().entrySet()) {
-                String metric_name = baseClusterWideLatencyMetric + key + SLASH + dataEntry.getKey() + SLASH + "value";
+                String metric_name = prefix.name(dataEntry.getKey(), "value");
                 
                 //if (key.equals(LATENCY_CATEGORY[2])) {
                 if (key.contains("query")) {
@@ -477,13 +920,10 @@ public class AerospikeAgent extends Agent {
                     /* calculate average for query category */
                     if (clusterSize > 0) {
                         reportMetric(metric_name, "", dataEntry.getValue() / clusterSize);
-                        logger.debug("Reprting metics, metric name: " + metric_name + ", value: " + dataEntry.getValue() / clusterSize);
                     }
                     
                 } else {
                     reportMetric(metric_name, "", dataEntry.getValue());
-                    logger.debug("Reprting metics, metric name: " + metric_name + ", value: " + dataEntry.getValue());
-                    
                 }
                 
             }
@@ -495,32 +935,28 @@ public class AerospikeAgent extends Agent {
         logger.debug("Reporting clusterwide latency.");
     	reportLatency(clusterSize, clusterWideLatency);
     	reportLatency(clusterSize, clusterWideNamespaceLatency);
+    	reportLatencyPercentiles();
     }
 
     
     /**
      * Method to report namespace statistics.
      * 
-     * @param namespace
-     *            namespace name to fetch the statistics
-     */
-    public void reportNamespaceStats() {
-        String[] namespaces = base.getNamespaces();
-        if (namespaces.length != 0) {
-            for (String namespace : namespaces) {
-                logger.debug("Reporting namespace stats. Namespace: ", namespace);
-                String namespaceBaseMatric = metricBaseName + SLASH;
-                Node[] nodes = base.getAerospikeNodes();
-                for (Node node : nodes) {
-                    Map<String, String> namespaceStats = base.getNamespaceStatistics(namespace, node);
-                    logger.debug("Namespacestats: " + namespaceStats);
+     * @param snapshots
+     *            node snapshots holding the namespace statistics
+     */
+    public void reportNamespaceStats(List<NodeSnapshot> snapshots) {
+        for (NodeSnapshot snapshot : snapshots) {
+            Node node = snapshot.getNode();
+            String[] namespaces = snapshot.getNamespaces();
+            if (namespaces.length != 0) {
+                for (String namespace : namespaces) {
+                    logger.debug("Reporting namespace stats. Namespace: ", namespace);
+                    StatTable namespaceStats = snapshot.getNamespaceStatistics(namespace);
                     if (namespaceStats != null && namespaceStats.size() != 0) {
-                        String namespacePrefix = namespaceBaseMatric + NAMESPACE_STATS + SLASH + node.getHost().name + SLASH + namespace + SLASH;
-                        for (Map.Entry<String, String> stat : namespaceStats.entrySet()) {
-                            String metric_name = namespacePrefix + stat.getKey();
-                            float value = Float.parseFloat(stat.getValue());
-                            reportMetric(metric_name, "",value);
-                            logger.debug("Reprting metics, metric name: " + metric_name + ", value: " + value);
+                        Prefix namespacePrefix = metricNames.prefix(NAMESPACE_STATS, node.getHost().name, namespace);
+                        for (int i = 0; i < namespaceStats.size(); i++) {
+                            reportMetric(namespacePrefix.name(namespaceStats.idAt(i)), "", namespaceStats.valueAt(i));
                         }
                     }
                 }								
@@ -529,51 +965,410 @@ public class AerospikeAgent extends Agent {
         
     }
     
+    /**
+     * Method to drop the cached metric names of the namespaces that are no
+     * longer on a node. Names of departed nodes are dropped by the topology
+     * tracker.
+     *
+     * @param snapshots
+     *            node snapshots of the current cycle
+     */
+    private void evictMetricNames(List<NodeSnapshot> snapshots) {
+        for (NodeSnapshot snapshot : snapshots) {
+            String host = snapshot.getNode().getHost().name;
+            Set<String> namespaces = new HashSet<String>();
+            for (String namespace : snapshot.getNamespaces())
+                namespaces.add(namespace);
+            Set<String> previous = reportedNamespaces.put(host, namespaces);
+            if (previous != null) {
+                for (String namespace : previous) {
+                    if (!namespaces.contains(namespace))
+                        metricNames.evictNamespace(host, namespace);
+                }
+            }
+        }
+    }
+    
     
-    public Map<String, Map<String, String>> reportNodesData() {
-        logger.info("Report data for nodes");
-        Map<String, Map<String, String>> perNodeStats = new HashMap<String, Map<String, String>>();
+    /**
+     * Method to take a snapshot of every node in the cluster with everything
+     * needed by all metric families.
+     *
+     * @return List<NodeSnapshot> snapshots of the nodes collected in time
+     * @throws InterruptedException
+     *             if the polling thread is interrupted while waiting
+     */
+    public List<NodeSnapshot> takeNodeSnapshots() throws InterruptedException {
+        return takeNodeSnapshots(EnumSet.allOf(MetricFamily.class));
+    }
+    
+    /**
+     * Method to take a snapshot of every node in the cluster. Nodes are
+     * collected in parallel on the collector executor, the snapshots are
+     * returned in node order so that all aggregation stays on the polling
+     * thread.
+     *
+     * The cycle deadline is split across the nodes: each node gets the share
+     * of the deadline its collector thread can spend on it. A node that
+     * misses its deadline or fails is marked stale and left out of the
+     * cycle, the other nodes are still reported.
+     *
+     * @param families
+     *            metric families collected in this cycle
+     * @return List<NodeSnapshot> snapshots of the nodes collected in time
+     * @throws InterruptedException
+     *             if the polling thread is interrupted while waiting
+     */
+    public List<NodeSnapshot> takeNodeSnapshots(final Set<MetricFamily> families) throws InterruptedException {
+        logger.debug("Taking node snapshots.");
         Node[] nodes = base.getAerospikeNodes();
+        topology.update(nodes);
+        final long cycleDeadline = System.nanoTime() + cycleDeadlineNanos;
+        final long nodeBudget = nodes.length == 0 ? cycleDeadlineNanos
+                : cycleDeadlineNanos * Math.min(collectorThreads, nodes.length) / nodes.length;
+        List<Future<NodeSnapshot>> futures = new ArrayList<Future<NodeSnapshot>>(nodes.length);
+        for (final Node node : nodes) {
+            futures.add(collector.submit(new Callable<NodeSnapshot>() {
+                @Override
+                public NodeSnapshot call() {
+                    long deadline = Math.min(cycleDeadline, System.nanoTime() + nodeBudget);
+                    return base.takeSnapshot(node, deadline, families);
+                }
+            }));
+        }
         
-        for (Node node : nodes) {
-            Map<String, String> nodeStats = base.getNodeStatistics(node);
-            perNodeStats.put(node.getHost().name, nodeStats);
-            reportNodeStatistics(node);
-            reportThroughput(node);	
+        List<NodeSnapshot> snapshots = new ArrayList<NodeSnapshot>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            Future<NodeSnapshot> future = futures.get(i);
+            try {
+                NodeSnapshot snapshot = future.get(Math.max(0, cycleDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (snapshot != null) {
+                    NodeState nodeState = state.getNodeState(nodes[i]);
+                    nodeState.setStale(false);
+                    nodeState.setStatistics(snapshot.getNodeStatistics());
+                    snapshots.add(snapshot);
+                }
+            } catch (TimeoutException timeoutException) {
+                future.cancel(true);
+                nodeFailed(nodes[i], timeoutException);
+            } catch (ExecutionException executionException) {
+                nodeFailed(nodes[i], executionException.getCause());
+            }
+        }
+        return snapshots;
+    }
+    
+    /**
+     * Method to mark a node stale for this cycle after it missed its deadline
+     * or failed.
+     */
+    private void nodeFailed(Node node, Throwable cause) {
+        state.getNodeState(node).setStale(true);
+        pluginStats.nodeStale(node.getName());
+        pluginStats.recordError(cause);
+        logger.error("Node ", node, " left out of this cycle: ", cause);
+    }
+    
+    public Map<String, StatTable> reportNodesData(List<NodeSnapshot> snapshots) {
+        logger.info("Report data for nodes");
+        Map<String, StatTable> perNodeStats = reportNodesStatistics(snapshots);
+        reportNodesThroughput(snapshots);
+        return perNodeStats;
+    }
+    
+    /**
+     * Method to report the statistics of every node, a failing node is left
+     * out of the cycle.
+     *
+     * @return Map<String, StatTable> statistics keyed by host
+     */
+    public Map<String, StatTable> reportNodesStatistics(List<NodeSnapshot> snapshots) {
+        Map<String, StatTable> perNodeStats = new HashMap<String, StatTable>();
+        for (NodeSnapshot snapshot : snapshots) {
+            try {
+                reportNodeStatistics(snapshot);
+                perNodeStats.put(snapshot.getNode().getHost().name, snapshot.getNodeStatistics());
+            } catch (RuntimeException exception) {
+                nodeFailed(snapshot.getNode(), exception);
+            }
         }
         return perNodeStats;
     }
     
     /**
-     * A method to submit Aerospike metrics to New Relic, periodically.
+     * Method to report the throughput of every node, a failing node is left
+     * out of the cycle.
+     */
+    public void reportNodesThroughput(List<NodeSnapshot> snapshots) {
+        for (NodeSnapshot snapshot : snapshots) {
+            try {
+                reportThroughput(snapshot);
+            } catch (RuntimeException exception) {
+                nodeFailed(snapshot.getNode(), exception);
+            }
+        }
+    }
+    
+    /**
+     * Method to run a reporting phase, isolating its failure from the other
+     * phases.
+     *
+     * @param phase
+     *            Phase name used in the plugin statistics
+     * @param task
+     *            Phase to run
+     */
+    private void runPhase(String phase, Runnable task) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } catch (RuntimeException exception) {
+            pluginStats.recordError(exception);
+            logger.error("Exception in phase ", phase, ": ", exception);
+        } finally {
+            pluginStats.addPhaseTime(phase, start);
+        }
+    }
+    
+    /**
+     * Method to report a metric family from the snapshots of a cycle or of a
+     * sample.
+     */
+    private void reportFamily(MetricFamily family, List<NodeSnapshot> snapshots) {
+        switch (family) {
+        case NODE_STATS:
+            reportNodesStatistics(snapshots);
+            break;
+        case THROUGHPUT:
+            /* set default values for cluster-wide TPS */
+            initTps();
+            reportNodesThroughput(snapshots);
+            reportTotalTps();
+            break;
+        case LATENCY:
+            reportNodesLatency(snapshots);
+            break;
+        case NAMESPACE:
+            reportNamespaceStats(snapshots);
+            break;
+        case SUMMARY:
+            reportSummaryMetric(snapshots);
+            break;
+        }
+    }
+    
+    /**
+     * Method to run the reporting phase of a metric family. A sampled family
+     * adds the cycle as its last sample and reports the aggregates of the
+     * interval. A family with its own interval records what it reports when
+     * it is due and reports the recorded values again on the cycles in
+     * between, so that New Relic keeps receiving every metric each minute.
+     *
+     * @param family
+     *            Metric family, its key is the phase name
+     * @param due
+     *            Families collected in this cycle
+     * @param snapshots
+     *            Node snapshots of the cycle
+     */
+    private void runFamily(final MetricFamily family, Set<MetricFamily> due, final List<NodeSnapshot> snapshots) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                reportFamily(family, snapshots);
+            }
+        };
+        MetricAggregates samples = familySamples.get(family);
+        MetricBuffer metrics = familyMetrics.get(family);
+        if (samples != null) {
+            aggregating = samples;
+            try {
+                runPhase(family.getKey(), task);
+            } finally {
+                aggregating = null;
+            }
+            reportSamples(samples);
+        } else if (metrics == null) {
+            runPhase(family.getKey(), task);
+        } else if (due.contains(family)) {
+            metrics.clear();
+            recording = metrics;
+            try {
+                runPhase(family.getKey(), task);
+            } finally {
+                recording = null;
+            }
+        } else {
+            for (int i = 0; i < metrics.size(); i++)
+                reportMetric(metrics.getName(i), metrics.getUnits(i), metrics.getValue(i));
+        }
+    }
+    
+    /**
+     * Method to report the aggregates of a sampled family and start its next
+     * interval.
+     */
+    private void reportSamples(MetricAggregates samples) {
+        for (int i = 0; i < samples.size(); i++) {
+            int count = samples.getCount(i);
+            if (count == 0)
+                continue;
+            pluginStats.metricEmitted();
+            publish(samples.getName(i), samples.getUnits(i), count, samples.getTotal(i), samples.getMin(i),
+                    samples.getMax(i), samples.getSumOfSquares(i));
+        }
+        samples.clear();
+    }
+    
+    /**
+     * A method to submit Aerospike metrics to New Relic, periodically. With
+     * collect_interval_ms set, cycles are collected in the background and
+     * this only publishes the last complete one. With a journal, the cycle is
+     * collected into a buffer first so that it can be journaled. Cycles are
+     * skipped until the agent is connected to its cluster, and once it is
+     * closed.
      * 
      */
     @Override
     public void pollCycle() {
+        if (closed.get()) {
+            logger.debug("Agent of cluster ", clusterName, " is closed, skipping cycle.");
+            return;
+        }
+        if (!isConnected()) {
+            logger.info("Not connected to cluster ", clusterName, " yet, skipping cycle.");
+            return;
+        }
+        if (pipeline != null) {
+            publishCycle();
+            return;
+        }
+        if (journal != null) {
+            collectCycle();
+            publishCycle();
+            return;
+        }
+        cycleLock.lock();
+        try {
+            reportCycle();
+        } finally {
+            cycleLock.unlock();
+        }
+    }
+    
+    /**
+     * Method to collect and report one cycle, called with the cycle lock held.
+     */
+    private void reportCycle() {
         try {
             logger.info("********** Reporting stats for cluster: ", this.clusterName + " **********");
-            /* set default values for cluster-wide TPS */
-            initTps();
+            pluginStats.startCycle();
             
-            Map<String, Map<String, String>> perNodeStats = reportNodesData();
-            Main.setStatistcs(perNodeStats);
+            long start = System.nanoTime();
+            Set<MetricFamily> due = scheduler.due(start);
+            due.addAll(sampledFamilies);
+            List<NodeSnapshot> snapshots = takeNodeSnapshots(due);
+            pluginStats.addPhaseTime("collect", start);
+            evictMetricNames(snapshots);
             
-            reportNodesLatency();
-            reportNamespaceStats();
-            reportSummaryMetric();
-            reportTotalTps();
+            /* every phase publishes what it can, a failure only skips the rest of its phase */
+            for (MetricFamily family : MetricFamily.values())
+                runFamily(family, due, snapshots);
             
             
         } catch (Connection connection) {
+            pluginStats.recordError(connection);
             logger.error("Exception : " + connection.getMessage());
             //logger.error("Plugin is should not stop. earlier it was a bug");
             //System.exit(-1);
         } catch (AerospikeException aerospikeException) {
+            pluginStats.recordError(aerospikeException);
             logger.error("Exception : " + aerospikeException.getMessage());
         } catch (ArrayIndexOutOfBoundsException arrayIndexOutOfBoundsException) {
+            pluginStats.recordError(arrayIndexOutOfBoundsException);
             logger.info("Server is starting");
         } catch (Exception exception) {
+            pluginStats.recordError(exception);
             logger.error("Exception : " + exception);
+        } finally {
+            saveCheckpoint();
+            pluginStats.endCycle();
+            reportPluginStats();
+        }
+    }
+    
+    /**
+     * Method to report a metric, counting it in the plugin statistics. Nothing
+     * is logged per metric, so that reporting allocates nothing.
+     */
+    @Override
+    public void reportMetric(String metricName, String units, Number value) {
+        if (aggregating != null) {
+            aggregating.add(metricName, units, value.doubleValue());
+            return;
+        }
+        if (recording != null)
+            recording.add(metricName, units, value.doubleValue());
+        pluginStats.metricEmitted();
+        publish(metricName, units, value);
+    }
+    
+    /**
+     * Method to pass a metric to New Relic, or to the staging buffer when the
+     * cycle is collected in the background.
+     */
+    private void publish(String metricName, String units, Number value) {
+        if (staging != null)
+            staging.add(metricName, units, value.doubleValue());
+        else
+            super.reportMetric(metricName, units, value);
+    }
+    
+    private void publish(String metricName, String units, int count, double total, double min, double max,
+            double sumOfSquares) {
+        if (staging != null)
+            staging.add(metricName, units, count, total, min, max, sumOfSquares);
+        else
+            super.reportMetric(metricName, units, count, total, min, max, sumOfSquares);
+    }
+    
+    /**
+     * Method to report the performance of the plugin itself during the cycle.
+     * The plugin metrics are not counted in metrics_emitted. Round trips and
+     * errors include those of the samples taken since the previous cycle.
+     */
+    public void reportPluginStats() {
+        Prefix prefix = metricNames.prefix(PLUGIN_STATS, null);
+        publish(prefix.name("cycle_time"), "ms", pluginStats.getCycleNanos() / 1e6);
+        publish(prefix.name("parse_time"), "ms", pluginStats.getParseNanos() / 1e6);
+        publish(prefix.name("metrics_emitted"), "metrics", pluginStats.getMetricsEmitted());
+        publish(prefix.name("stale_nodes"), "nodes", pluginStats.getStaleNodes());
+        if (journal != null)
+            publish(prefix.name("journaled_cycles"), "cycles", journal.size());
+        Prefix phasePrefix = metricNames.prefix(PLUGIN_STATS, null, "phase");
+        Prefix errorPrefix = metricNames.prefix(PLUGIN_STATS, null, "errors");
+        for (Map.Entry<String, Long> phase : pluginStats.getPhaseNanos().entrySet())
+            publish(phasePrefix.name(phase.getKey(), "time"), "ms", phase.getValue() / 1e6);
+        for (Map.Entry<String, Long> error : pluginStats.getErrors().entrySet())
+            publish(errorPrefix.name(error.getKey()), "errors", error.getValue());
+        for (NodeInfoStats node : pluginStats.getNodes()) {
+            Prefix nodePrefix = metricNames.prefix(PLUGIN_NODE_STATS, node.getHost());
+            publish(nodePrefix.name("round_trips"), "requests", node.getRoundTrips());
+            publish(nodePrefix.name("bytes_received"), "bytes", node.getBytesReceived());
+            for (int i = 0; i < PluginStats.RTT_BUCKETS.size(); i++)
+                publish(nodePrefix.name("rtt", PluginStats.RTT_BUCKETS.getName(i)), "requests", node.getRttCount(i));
+        }
+        Node[] nodes = base.getAerospikeNodes();
+        if (nodes != null) {
+            /* 0 closed, 1 half open (probing), 2 open */
+            for (Node node : nodes) {
+                CircuitBreaker breaker = base.getCircuitBreaker(node);
+                Prefix nodePrefix = metricNames.prefix(PLUGIN_NODE_STATS, node.getHost().name);
+                publish(nodePrefix.name("breaker_state"), "state", breaker.getState().ordinal());
+                publish(nodePrefix.name("consecutive_failures"), "errors", breaker.getConsecutiveFailures());
+            }
         }
+        logger.debug("Plugin cycle time (ms): ", pluginStats.getCycleNanos() / 1e6, ", metrics emitted: ", pluginStats.getMetricsEmitted());
+        pluginStats.published();
     }
 }
@@ -59,6 +59,6 @@ public class AerospikeAgentFactory extends AgentFactory {
 		}
 		
 		/* creating and returning the AerospikeAgent */
-		return new AerospikeAgent(seed_list, user, password, clusterName);
+		return new AerospikeAgent(seed_list, user, password, clusterName, new AgentSettings(properties));
 	}
 }
@@ -0,0 +1,328 @@
+package com.aerospike.newrelic.connector;
+
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_BREAKER_BACKOFF_MS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_BREAKER_FAILURES;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_BREAKER_MAX_BACKOFF_MS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_CHECKPOINT_MAX_AGE_S;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_CLIENT_MAX_SOCKET_IDLE_S;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_CLIENT_MAX_THREADS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_CLIENT_TEND_INTERVAL_MS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_CLIENT_TIMEOUT_MS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_COLLECTOR_THREADS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_CONNECT_RETRY_MS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_CYCLE_DEADLINE_MS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_LATENCY_BUCKETS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_RATE_COUNTERS;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_SAMPLED_FAMILIES;
+import static com.aerospike.newrelic.utils.Constants.DEFAULT_JOURNAL_MAX_MB;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optional tuning parameters of an Aerospike agent, read from its entry in
+ * plugin.json. Every parameter has a default so existing configurations keep
+ * working unchanged.
+ *
+ */
+public class AgentSettings {
+
+	private final int collectorThreads;
+	private final boolean virtualThreads;
+	private final List<String> rateCounters;
+	private final int latencyBuckets;
+	private final int cycleDeadlineMs;
+	private final int breakerFailures;
+	private final int breakerBackoffMs;
+	private final int breakerMaxBackoffMs;
+	private final Map<MetricFamily, Integer> pollIntervals;
+	private final int sampleIntervalMs;
+	private final Set<MetricFamily> sampledFamilies;
+	private final int collectIntervalMs;
+	private final String journalFile;
+	private final int journalMaxMb;
+	private final String checkpointFile;
+	private final int checkpointMaxAgeS;
+	private final int clientMaxThreads;
+	private final int clientMaxSocketIdleS;
+	private final int clientTendIntervalMs;
+	private final int clientTimeoutMs;
+	private final int connectRetryMs;
+
+	/**
+	 * Constructor for AgentSettings with all defaults.
+	 */
+	public AgentSettings() {
+		this(Collections.<String, Object> emptyMap());
+	}
+
+	/**
+	 * Constructor for AgentSettings
+	 *
+	 * @param properties
+	 *            Agent properties from plugin.json
+	 */
+	public AgentSettings(Map<String, Object> properties) {
+		this.collectorThreads = Math.max(1, getInt(properties, "collector_threads", DEFAULT_COLLECTOR_THREADS));
+		this.virtualThreads = getBoolean(properties, "virtual_threads", false);
+		this.rateCounters = getStringList(properties, "rate_counters", DEFAULT_RATE_COUNTERS);
+		this.latencyBuckets = Math.max(1, getInt(properties, "latency_buckets", DEFAULT_LATENCY_BUCKETS));
+		this.cycleDeadlineMs = Math.max(1, getInt(properties, "cycle_deadline_ms", DEFAULT_CYCLE_DEADLINE_MS));
+		this.breakerFailures = Math.max(1, getInt(properties, "breaker_failures", DEFAULT_BREAKER_FAILURES));
+		this.breakerBackoffMs = Math.max(1, getInt(properties, "breaker_backoff_ms", DEFAULT_BREAKER_BACKOFF_MS));
+		this.breakerMaxBackoffMs = Math.max(1,
+				getInt(properties, "breaker_max_backoff_ms", DEFAULT_BREAKER_MAX_BACKOFF_MS));
+		this.pollIntervals = getPollIntervals(properties, "poll_intervals");
+		this.sampleIntervalMs = Math.max(0, getInt(properties, "sample_interval_ms", 0));
+		this.sampledFamilies = getFamilies(getStringList(properties, "sampled_families", DEFAULT_SAMPLED_FAMILIES));
+		this.collectIntervalMs = Math.max(0, getInt(properties, "collect_interval_ms", 0));
+		this.journalFile = getString(properties, "journal_file", null);
+		this.journalMaxMb = Math.max(1, getInt(properties, "journal_max_mb", DEFAULT_JOURNAL_MAX_MB));
+		this.checkpointFile = getString(properties, "checkpoint_file", null);
+		this.checkpointMaxAgeS = Math.max(1, getInt(properties, "checkpoint_max_age_s", DEFAULT_CHECKPOINT_MAX_AGE_S));
+		this.clientMaxThreads = Math.max(1, getInt(properties, "client_max_threads", DEFAULT_CLIENT_MAX_THREADS));
+		this.clientMaxSocketIdleS = Math.max(0,
+				getInt(properties, "client_max_socket_idle_s", DEFAULT_CLIENT_MAX_SOCKET_IDLE_S));
+		this.clientTendIntervalMs = Math.max(10,
+				getInt(properties, "client_tend_interval_ms", DEFAULT_CLIENT_TEND_INTERVAL_MS));
+		this.clientTimeoutMs = Math.max(0, getInt(properties, "client_timeout_ms", DEFAULT_CLIENT_TIMEOUT_MS));
+		this.connectRetryMs = Math.max(1, getInt(properties, "connect_retry_ms", DEFAULT_CONNECT_RETRY_MS));
+	}
+
+	/**
+	 * @return int maximum number of nodes collected in parallel
+	 */
+	public int getCollectorThreads() {
+		return collectorThreads;
+	}
+
+	/**
+	 * @return boolean true if collector threads should be virtual threads (JDK
+	 *         21+)
+	 */
+	public boolean useVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * @return List<String> regular expressions matching the stats reported as
+	 *         per-second rates
+	 */
+	public List<String> getRateCounters() {
+		return rateCounters;
+	}
+
+	/**
+	 * @return int number of power of two thresholds kept from the latencies:
+	 *         histograms (11 = 1ms to 1024ms)
+	 */
+	public int getLatencyBuckets() {
+		return latencyBuckets;
+	}
+
+	/**
+	 * @return int time budget in milliseconds for collecting all nodes of a
+	 *         cycle
+	 */
+	public int getCycleDeadlineMs() {
+		return cycleDeadlineMs;
+	}
+
+	/**
+	 * @return int consecutive failed info requests opening the circuit
+	 *         breaker of a node
+	 */
+	public int getBreakerFailures() {
+		return breakerFailures;
+	}
+
+	/**
+	 * @return int milliseconds between the breaker opening and its first
+	 *         probe, doubled after every failed probe
+	 */
+	public int getBreakerBackoffMs() {
+		return breakerBackoffMs;
+	}
+
+	/**
+	 * @return int maximum milliseconds between two probes
+	 */
+	public int getBreakerMaxBackoffMs() {
+		return breakerMaxBackoffMs;
+	}
+
+	/**
+	 * @return Map<MetricFamily, Integer> poll interval in seconds of the
+	 *         families not collected on every cycle
+	 */
+	public Map<MetricFamily, Integer> getPollIntervals() {
+		return pollIntervals;
+	}
+
+	/**
+	 * @return int milliseconds between two samples of the sampled families, 0
+	 *         if they are only collected once per cycle
+	 */
+	public int getSampleIntervalMs() {
+		return sampleIntervalMs;
+	}
+
+	/**
+	 * @return Set<MetricFamily> families sampled between cycles and reported
+	 *         as aggregates
+	 */
+	public Set<MetricFamily> getSampledFamilies() {
+		return sampledFamilies;
+	}
+
+	/**
+	 * @return int milliseconds between two cycles collected in the
+	 *         background, 0 if cycles are collected by pollCycle()
+	 */
+	public int getCollectIntervalMs() {
+		return collectIntervalMs;
+	}
+
+	/**
+	 * @return String file journaling the published cycles, null if they are
+	 *         not journaled
+	 */
+	public String getJournalFile() {
+		return journalFile;
+	}
+
+	/**
+	 * @return int size of the journal file in megabytes, the oldest cycles are
+	 *         evicted beyond it
+	 */
+	public int getJournalMaxMb() {
+		return journalMaxMb;
+	}
+
+	/**
+	 * @return String file the counter state is checkpointed to every cycle,
+	 *         null if rates start over after a restart
+	 */
+	public String getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	/**
+	 * @return int age in seconds beyond which a checkpoint is not restored
+	 */
+	public int getCheckpointMaxAgeS() {
+		return checkpointMaxAgeS;
+	}
+
+	/**
+	 * @return int maximum number of connections of the client to each node
+	 */
+	public int getClientMaxThreads() {
+		return clientMaxThreads;
+	}
+
+	/**
+	 * @return int seconds an idle connection of the client stays pooled
+	 */
+	public int getClientMaxSocketIdleS() {
+		return clientMaxSocketIdleS;
+	}
+
+	/**
+	 * @return int milliseconds between two refreshes of the cluster map
+	 */
+	public int getClientTendIntervalMs() {
+		return clientTendIntervalMs;
+	}
+
+	/**
+	 * @return int timeout in milliseconds of the initial connection to the
+	 *         cluster
+	 */
+	public int getClientTimeoutMs() {
+		return clientTimeoutMs;
+	}
+
+	/**
+	 * @return int milliseconds before connecting again to a cluster that could
+	 *         not be reached
+	 */
+	public int getConnectRetryMs() {
+		return connectRetryMs;
+	}
+
+	private static int getInt(Map<String, Object> properties, String key, int defaultValue) {
+		Object value = properties.get(key);
+		if (value instanceof Number)
+			return ((Number) value).intValue();
+		if (value instanceof String && !((String) value).isEmpty())
+			return Integer.parseInt((String) value);
+		return defaultValue;
+	}
+
+	private static String getString(Map<String, Object> properties, String key, String defaultValue) {
+		Object value = properties.get(key);
+		if (value instanceof String && !((String) value).isEmpty())
+			return (String) value;
+		return defaultValue;
+	}
+
+	private static List<String> getStringList(Map<String, Object> properties, String key, String[] defaultValue) {
+		Object value = properties.get(key);
+		if (value instanceof List) {
+			List<String> list = new ArrayList<String>();
+			for (Object item : (List<?>) value)
+				list.add(item.toString());
+			return Collections.unmodifiableList(list);
+		}
+		return Collections.unmodifiableList(Arrays.asList(defaultValue));
+	}
+
+	/**
+	 * Method to read the per family intervals ({"latency": 60, "namespace":
+	 * 3600}), unknown families are ignored.
+	 */
+	private static Map<MetricFamily, Integer> getPollIntervals(Map<String, Object> properties, String key) {
+		Map<MetricFamily, Integer> intervals = new EnumMap<MetricFamily, Integer>(MetricFamily.class);
+		Object value = properties.get(key);
+		if (value instanceof Map) {
+			Map<String, Object> families = new HashMap<String, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+				families.put(entry.getKey().toString(), entry.getValue());
+			for (MetricFamily family : MetricFamily.values()) {
+				int interval = getInt(families, family.getKey(), 0);
+				if (interval > 0)
+					intervals.put(family, interval);
+			}
+		}
+		return Collections.unmodifiableMap(intervals);
+	}
+
+	/**
+	 * Method to map family keys to families, unknown keys are ignored.
+	 */
+	private static Set<MetricFamily> getFamilies(List<String> keys) {
+		Set<MetricFamily> families = EnumSet.noneOf(MetricFamily.class);
+		for (MetricFamily family : MetricFamily.values()) {
+			if (keys.contains(family.getKey()))
+				families.add(family);
+		}
+		return Collections.unmodifiableSet(families);
+	}
+
+	private static boolean getBoolean(Map<String, Object> properties, String key, boolean defaultValue) {
+		Object value = properties.get(key);
+		if (value instanceof Boolean)
+			return (Boolean) value;
+		if (value instanceof String && !((String) value).isEmpty())
+			return Boolean.parseBoolean((String) value);
+		return defaultValue;
+	}
+}
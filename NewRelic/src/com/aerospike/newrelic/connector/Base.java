@@ -1,26 +1,50 @@
 package com.aerospike.newrelic.connector;
 
-import static com.aerospike.newrelic.utils.Constants.LATENCY_ERROR;
+import static com.aerospike.newrelic.utils.Constants.CLUSTER_FALLBACK_NAME;
+import static com.aerospike.newrelic.utils.Constants.INFO_BUILD;
+import static com.aerospike.newrelic.utils.Constants.INFO_LATENCIES;
+import static com.aerospike.newrelic.utils.Constants.INFO_LATENCY;
+import static com.aerospike.newrelic.utils.Constants.INFO_NAMESPACES;
+import static com.aerospike.newrelic.utils.Constants.INFO_NAMESPACE_PREFIX;
+import static com.aerospike.newrelic.utils.Constants.INFO_NODE;
+import static com.aerospike.newrelic.utils.Constants.INFO_PARTITION_GENERATION;
+import static com.aerospike.newrelic.utils.Constants.INFO_STATISTICS;
+import static com.aerospike.newrelic.utils.StatIds.*;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 
 import com.aerospike.client.AerospikeClient;
 import com.aerospike.client.Info;
+import com.aerospike.client.ResultCode;
 import com.aerospike.client.cluster.Node;
+import com.aerospike.client.AerospikeException;
 import com.aerospike.client.policy.ClientPolicy;
+import com.aerospike.client.policy.InfoPolicy;
+import com.aerospike.newrelic.connector.CollectionState.NodeState;
+import com.aerospike.newrelic.utils.InfoParser;
+import com.aerospike.newrelic.utils.LatencyHistogram;
+import com.aerospike.newrelic.utils.LatencyParser;
+import com.aerospike.newrelic.utils.StatRegistry;
+import com.aerospike.newrelic.utils.StatTable;
 import com.aerospike.newrelic.utils.Utils;
 import com.newrelic.metrics.publish.util.Logger;
 import com.aerospike.client.Host;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 /**
- * Base class to communicate with Aerospike.
+ * Base class to communicate with Aerospike. Snapshots of different nodes may
+ * be taken concurrently.
  * 
  *
  */
@@ -29,10 +53,65 @@ public class Base {
 	private AerospikeClient client;
 	private ClientPolicy policy;
 
+	/* Namespaces of each node, refreshed on partition generation change */
+	private final NamespaceCatalogue catalogue = new NamespaceCatalogue();
+
+	/* Server version and derived features, keyed by node name */
+	private final Map<String, NodeCapabilities> capabilities = new ConcurrentHashMap<String, NodeCapabilities>();
+
+	private final RateEngine rateEngine;
+	private final CollectionState state;
+	private final int latencyBuckets;
+	private final AgentSettings settings;
+
+	/* Circuit breakers keyed by node name */
+	private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	private final int breakerFailures;
+	private final long breakerBackoffNanos;
+	private final long breakerMaxBackoffNanos;
+
+	private static final Set<MetricFamily> ALL_FAMILIES = Collections.unmodifiableSet(EnumSet.allOf(MetricFamily.class));
+
 	private static final Logger logger = Logger.getLogger(Base.class);
 
 	/**
-	 * Method to initialize Aerospike client and policy.
+	 * Constructor for Base with the default settings.
+	 */
+	public Base() {
+		this(new AgentSettings(), new CollectionState(CLUSTER_FALLBACK_NAME));
+	}
+
+	/**
+	 * Constructor for Base
+	 * 
+	 * @param settings
+	 *            Agent settings (rate counters, latency buckets)
+	 * @param state
+	 *            Collection state of the agent owning this Base
+	 */
+	public Base(AgentSettings settings, CollectionState state) {
+		this.rateEngine = new RateEngine(settings.getRateCounters());
+		this.latencyBuckets = settings.getLatencyBuckets();
+		this.breakerFailures = settings.getBreakerFailures();
+		this.breakerBackoffNanos = TimeUnit.MILLISECONDS.toNanos(settings.getBreakerBackoffMs());
+		this.breakerMaxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(settings.getBreakerMaxBackoffMs());
+		this.state = state;
+		this.settings = settings;
+	}
+
+	/**
+	 * Getter method for the collection state.
+	 * 
+	 * @return CollectionState state of the cluster nodes
+	 */
+	public CollectionState getCollectionState() {
+		return state;
+	}
+
+	/**
+	 * Method to initialize Aerospike client and policy. The client is shared
+	 * with the other agents using the same seeds and credentials. It may be
+	 * called again after a failure to connect.
 	 * 
 	 * @param host_list
 	 *            Host list to create java Aerospike client object.
@@ -40,21 +119,22 @@ public class Base {
 	 *            User name for Aerospike node if security enabled else null
 	 * @param password
 	 *            Password for Aerospike node if if security enabled else null
+	 * @throws AerospikeException
+	 *             if the cluster cannot be reached
 	 */
 	
 	public void createAerospikeClient(ArrayList<Host> host_list, String user, String password) {
-		if (this.client == null && this.policy == null) {
+		if (this.client == null) {
 			this.policy = new ClientPolicy();
 			if (user != null && password != null) {
 				this.policy.user = user;
 				this.policy.password = password;
 			}
-			// this.policy.timeout = 85000;
-			this.policy.maxThreads = 10;
-			this.policy.maxSocketIdle = 10;
-			Host []host_array = new Host[host_list.size()];
-			host_list.toArray(host_array);
-			this.client = new AerospikeClient(policy, host_array);
+			this.policy.timeout = settings.getClientTimeoutMs();
+			this.policy.maxThreads = settings.getClientMaxThreads();
+			this.policy.maxSocketIdle = settings.getClientMaxSocketIdleS();
+			this.policy.tendInterval = settings.getClientTendIntervalMs();
+			this.client = ClientRegistry.getInstance().acquire(host_list, policy);
 			if (this.client == null || !this.client.isConnected()) {
 				logger.error("Connection to Aerospike cluster failed! Please check the server settings and try again!");
 			}
@@ -105,31 +185,161 @@ public class Base {
 	}
 
 
+	/**
+	 * Method to take a snapshot of everything a poll cycle needs from a node.
+	 * Statistics, partition generation, namespace statistics and latency are
+	 * sent as one pipelined info request. The latency command (latencies: or
+	 * legacy latency:) is chosen from the node capabilities, read once per
+	 * node and partition generation. The namespace list and the build are only
+	 * read again when the node is new or its partition generation changed.
+	 * 
+	 * @param node
+	 *            Aerospike node
+	 * @return NodeSnapshot snapshot of the node or null if client or node is
+	 *         not available
+	 */
+	public NodeSnapshot takeSnapshot(Node node) {
+		return takeSnapshot(node, 0, ALL_FAMILIES);
+	}
+
+	/**
+	 * Method to take a snapshot of a node within a deadline. Every info
+	 * request uses the time left as timeout.
+	 * 
+	 * @param node
+	 *            Aerospike node
+	 * @param deadline
+	 *            System.nanoTime() by which the snapshot must be taken, 0 for
+	 *            the default info timeout
+	 * @return NodeSnapshot snapshot of the node or null if client or node is
+	 *         not available
+	 * @throws AerospikeException.Timeout
+	 *             if the deadline passed
+	 */
+	public NodeSnapshot takeSnapshot(Node node, long deadline) {
+		return takeSnapshot(node, deadline, ALL_FAMILIES);
+	}
+
+	/**
+	 * Method to take a snapshot of what the given metric families need from a
+	 * node. Node statistics are always read. Latency is only read for the
+	 * latency family; namespace statistics for the namespace and throughput
+	 * (namespace rates) families, and for the node and summary families of
+	 * servers reporting them at namespace level (3.9+). The namespace list is
+	 * kept up to date either way.
+	 * 
+	 * @param node
+	 *            Aerospike node
+	 * @param deadline
+	 *            System.nanoTime() by which the snapshot must be taken, 0 for
+	 *            the default info timeout
+	 * @param families
+	 *            Metric families collected in this cycle
+	 * @return NodeSnapshot snapshot of the node or null if client or node is
+	 *         not available
+	 * @throws AerospikeException.Timeout
+	 *             if the deadline passed
+	 */
+	public NodeSnapshot takeSnapshot(Node node, long deadline, Set<MetricFamily> families) {
+		logger.debug("Taking snapshot of node: ", node);
+		if (this.client == null || node == null)
+			return null;
+
+		String[] namespaces = catalogue.get(node);
+		NodeCapabilities nodeCapabilities = getCachedCapabilities(node);
+		if (nodeCapabilities == null)
+			nodeCapabilities = readCapabilities(node, infoPolicy(node, deadline));
+		String latencyCommand = nodeCapabilities.hasLatencies() ? INFO_LATENCIES : INFO_LATENCY;
+		boolean withLatency = families.contains(MetricFamily.LATENCY);
+		boolean withNamespaceStats = families.contains(MetricFamily.NAMESPACE)
+				|| families.contains(MetricFamily.THROUGHPUT)
+				|| (nodeCapabilities.hasNamespaceStats() && (families.contains(MetricFamily.NODE_STATS)
+						|| families.contains(MetricFamily.SUMMARY)));
+
+		List<String> commands = new ArrayList<String>(4 + (namespaces == null ? 0 : namespaces.length));
+		commands.add(INFO_STATISTICS);
+		commands.add(INFO_PARTITION_GENERATION);
+		if (withLatency)
+			commands.add(latencyCommand);
+		if (namespaces == null) {
+			commands.add(INFO_NAMESPACES);
+		} else if (withNamespaceStats) {
+			for (String namespace : namespaces)
+				commands.add(INFO_NAMESPACE_PREFIX + namespace);
+		}
+		Map<String, String> response = request(node, infoPolicy(node, deadline), commands.toArray(new String[commands.size()]));
+		long nanoTime = System.nanoTime();
+
+		long generation = parseGeneration(response.get(INFO_PARTITION_GENERATION));
+		boolean buildChanged = !nodeCapabilities.isCurrent(generation);
+		String[] currentNamespaces = namespaces;
+		if (namespaces == null || !catalogue.isCurrent(node, generation) || buildChanged) {
+			/* the namespaces and the build may change with the generation, read them again together */
+			List<String> reread = new ArrayList<String>(2);
+			if (!response.containsKey(INFO_NAMESPACES))
+				reread.add(INFO_NAMESPACES);
+			if (buildChanged)
+				reread.add(INFO_BUILD);
+			if (!reread.isEmpty())
+				response.putAll(request(node, infoPolicy(node, deadline), reread.toArray(new String[reread.size()])));
+			String namespaceList = response.get(INFO_NAMESPACES);
+			currentNamespaces = splitNamespaces(namespaceList);
+			catalogue.update(node, generation, currentNamespaces);
+			logger.debug("Namespaces of node ", node, " at partition generation ", generation, ": ", namespaceList);
+		}
+		if (buildChanged || (nodeCapabilities.getGeneration() == NamespaceCatalogue.UNKNOWN_GENERATION
+				&& generation != NamespaceCatalogue.UNKNOWN_GENERATION)) {
+			String build = buildChanged ? response.get(INFO_BUILD) : nodeCapabilities.getBuild();
+			boolean hadLatencies = nodeCapabilities.hasLatencies();
+			nodeCapabilities = new NodeCapabilities(node, build, generation);
+			capabilities.put(node.getName(), nodeCapabilities);
+			if (buildChanged)
+				logger.debug("Node build at partition generation ", generation, ": ", node, " ", build);
+			if (withLatency && nodeCapabilities.hasLatencies() != hadLatencies) {
+				/* upgraded across 5.1, the latency was read with the other command */
+				latencyCommand = nodeCapabilities.hasLatencies() ? INFO_LATENCIES : INFO_LATENCY;
+				response.putAll(request(node, infoPolicy(node, deadline), latencyCommand));
+			}
+			withNamespaceStats = withNamespaceStats
+					|| (nodeCapabilities.hasNamespaceStats() && (families.contains(MetricFamily.NODE_STATS)
+							|| families.contains(MetricFamily.SUMMARY)));
+		}
+
+		/*
+		 * Namespace statistics are not in the first request when the
+		 * namespaces were (re)read, fetch the missing ones in one more request.
+		 */
+		Map<String, StatTable> namespaceStats = new HashMap<String, StatTable>();
+		if (withNamespaceStats) {
+			List<String> missing = new ArrayList<String>();
+			for (String namespace : currentNamespaces) {
+				if (!response.containsKey(INFO_NAMESPACE_PREFIX + namespace))
+					missing.add(INFO_NAMESPACE_PREFIX + namespace);
+			}
+			if (!missing.isEmpty())
+				response.putAll(request(node, infoPolicy(node, deadline), missing.toArray(new String[missing.size()])));
+
+			for (String namespace : currentNamespaces) {
+				namespaceStats.put(namespace, parseStatistics(response.get(INFO_NAMESPACE_PREFIX + namespace)));
+			}
+		}
+		return new NodeSnapshot(node, nodeCapabilities, currentNamespaces,
+				parseStatistics(response.get(INFO_STATISTICS)), namespaceStats,
+				withLatency ? response.get(latencyCommand) : null, nanoTime);
+	}
+
 	/**
 	 * Method to get node statistics from Aerospike
 	 * 
 	 * @param node
 	 *            Aerospike node
-	 * @return Map<String, String> Map of node statistics
+	 * @return StatTable table of node statistics
 	 */
-	public Map<String, String> getNodeStatistics(Node node) {
+	public StatTable getNodeStatistics(Node node) {
 		logger.debug("Getting node statistics for node: " + node.toString());
-		Map<String, String> nodeStats = null;
+		StatTable nodeStats = null;
 		if (this.client != null && node != null) {
-			nodeStats = Info.request(null, node);
-			String[] stats = nodeStats.get("statistics").split(";");
-			nodeStats.clear();
-			for (String stat : stats) {
-				String[] pair = stat.split("=");
-				pair[1] = Utils.transformStringMetric(pair[1]);
-				if (Utils.isValidNumber(pair[1])) {
-					Float val = Float.parseFloat(pair[1]);
-					// Older version(<3.9) have mixed stats(contains [-] and [_] both.)
-					// Convert all [-] to [_].
-					pair[0] = pair[0].replace("-", "_");
-					nodeStats.put(pair[0], String.valueOf(val));
-				}
-			}
+			nodeStats = parseStatistics(request(node, INFO_STATISTICS));
 		}
 		return nodeStats;
 	}
@@ -141,146 +351,218 @@ public class Base {
 	 *            Namespace name
 	 * @param node
 	 *            Aerospike node
-	 * @return Map<String, String> Map of namespace statistics
+	 * @return StatTable table of namespace statistics
 	 */
-	public Map<String, String> getNamespaceStatistics(String namespace, Node node) {
-
-		Map<String, String> namespaceStats = new HashMap<String, String>();
-		String filter = "namespace/" + namespace;
-		String[] stats = new String[0];
+	public StatTable getNamespaceStatistics(String namespace, Node node) {
 		if (node != null) {
-			stats = Info.request(null, node, filter).split(";");
-			for (String stat : stats) {
-				String[] pair = stat.split("=");
-				pair[1] = Utils.transformStringMetric(pair[1]);
-				if (Utils.isValidNumber(pair[1])) {
-					Float val = Float.parseFloat(pair[1]);
-					// Older version(<3.9) have mixed stats(contains [-] and [_] both.)
-					// Convert all [-] to [_].
-					pair[0] = pair[0].replace("-", "_");					
-					namespaceStats.put(pair[0], String.valueOf(val));
-				}
-			}
-			return namespaceStats;
+			return parseStatistics(request(node, INFO_NAMESPACE_PREFIX + namespace));
 		}
 		return null;
 	}
 
 	/**
-	 * Method to get node latency from Aerospike
+	 * Method to parse a statistics response (name=value;name=value...). Only
+	 * numeric and boolean values are kept, names are normalised to [_] by the
+	 * stat registry.
 	 * 
-	 * @param node
-	 *            Aerospike node
-	 * @return Map<String, Map<String, String>> Map of latency stats
-	 */
-	public Map<String, Map<String, String>> getNodeLatency(Node node) {
-		logger.debug("Get node latency for node: " + node);
-		Map<String, Map<String, String>> latency = new HashMap<String, Map<String, String>>();
-		String filter = "latency:";
-		String latencyString = "";
-		String[] latencyBuckets = {};
-		
-		latencyString = Info.request(null, node, filter);
-		logger.debug("latency_info: " + latencyString);
+	 * @param response
+	 *            Info response
+	 * @return StatTable table of statistics
+	 */
+	private StatTable parseStatistics(String response) {
+		long start = System.nanoTime();
+		StatTable stats = InfoParser.parseStatistics(response, new StatTable());
+		state.getPluginStats().addParseTime(System.nanoTime() - start);
+		return stats;
+	}
 
+	/**
+	 * Method to split namespaces response, dropping empty entries.
+	 */
+	private static String[] splitNamespaces(String response) {
+		List<String> namespaces = new ArrayList<String>();
+		if (response != null) {
+			for (String namespace : response.split(";")) {
+				if (!namespace.isEmpty())
+					namespaces.add(namespace);
+			}
+		}
+		return namespaces.toArray(new String[namespaces.size()]);
+	}
 
-		if (latencyString.length() != 0 && !latencyString.contains(LATENCY_ERROR))
-			latencyBuckets = latencyString.split(";");
+	/**
+	 * Method to get node latency from a node snapshot. Histograms of the
+	 * latencies: command are cut to the configured number of buckets, the
+	 * legacy latency: command always has 4 buckets (1ms, 8ms, 64ms).
+	 * 
+	 * @param snapshot
+	 *            Aerospike node snapshot
+	 * @return List<LatencyHistogram> latency histograms of the node
+	 */
+	public List<LatencyHistogram> getNodeLatency(NodeSnapshot snapshot) {
+		logger.debug("Get node latency for node: ", snapshot.getNode());
+		logger.debug("latency_info: ", snapshot.getLatency());
+		NodeCapabilities nodeCapabilities = snapshot.getCapabilities();
+		long start = System.nanoTime();
+		List<LatencyHistogram> latency;
+		if (nodeCapabilities.hasLatencies())
+			latency = LatencyParser.parseLatencies(snapshot.getLatency(), latencyBuckets);
+		else
+			latency = LatencyParser.parseLegacy(snapshot.getLatency(), nodeCapabilities.hasNamespacedLatency());
+		state.getPluginStats().addParseTime(System.nanoTime() - start);
+		return latency;
+	}
 
-		for (Integer i = 0; i < latencyBuckets.length; i += 2) {
-			Map<String, String> data = new HashMap<String, String>();
-			String line0 = latencyBuckets[i];
-			if (line0.contains("error-")) {
-				logger.error("Not enough info for latency: -> " + line0);
+	/**
+	 * Method to send a pipelined info request through the circuit breaker of
+	 * the node, recording its round trip time and response size in the plugin
+	 * statistics.
+	 * 
+	 * @param node
+	 *            Aerospike node
+	 * @param infoPolicy
+	 *            Policy with the request timeout, null for the default
+	 * @param commands
+	 *            Info commands
+	 * @return Map<String, String> responses keyed by command
+	 */
+	private Map<String, String> request(Node node, InfoPolicy infoPolicy, String... commands) {
+		CircuitBreaker breaker = getCircuitBreaker(node);
+		acquire(node, breaker, infoPolicy);
+		long start = System.nanoTime();
+		Map<String, String> response = null;
+		try {
+			response = Info.request(infoPolicy, node, commands);
+		} finally {
+			/* whatever was thrown, a request without response is a failure */
+			if (response == null)
+				breaker.recordFailure(System.nanoTime());
+		}
+		breaker.recordSuccess();
+		long bytes = 0;
+		for (Map.Entry<String, String> entry : response.entrySet())
+			bytes += entry.getKey().length() + entry.getValue().length() + 2;
+		state.getPluginStats().recordInfo(node, System.nanoTime() - start, bytes);
+		return response;
+	}
 
-				// Error will be single line. So, step back one line so that
-				// next iteration (which does +2) will position itself properly.
-				i--;
-				continue;
-			}
-			String line1 = latencyBuckets[i + 1];
-			String key = line0.substring(0, line0.indexOf(':'));
-
-			// 3.9+ server send namespace level latency in. {test}-read
-			// Change this in form of read-{test}. namespace name is unpredictable. put unpredictable part at last.
-			if (key.contains("reads"))
-				key = "read";
-			
-			if (key.contains("writes"))
-				key = "write";
-			
-            boolean newAsd = newAsdversion(node);
-            if (newAsd == true) {
-				String[] lst = key.split("-");
-				if (lst.length > 1) {
-					key = lst[1] + "-" + lst[0];
-				}
-            }
-			
-			if (key.contains("writes_reply"))
-				continue;
-
-			String[] keys = line0.substring(line0.indexOf('>')).split(",");
-			Collections.reverse(Arrays.asList(keys));
-			String[] values = line1.substring(line1.indexOf(',') + 1).split(",");
-			Float opsPerSec = Float.parseFloat(values[0]);
-			Collections.reverse(Arrays.asList(values));
-
-			String previousKey = "";
-			Float previousValue = (float) 0.0;
-			Float lessThan1;
-
-			if (opsPerSec == (float) 0.0)
-				lessThan1 = (float) 0.0;
-			else
-				lessThan1 = (float) 100.0;
-			for (Integer j = 0; j < keys.length; j++) {
-				Float pct = Float.parseFloat(values[j]) - previousValue;
-				previousValue = Float.parseFloat(values[j]);
-				String k = "";
-				if (previousKey != "") {
-					
-					k = keys[j].substring(1) +  "_to_" + previousKey.substring(1);
-					 
-				} else {
-					
-					k = "GT_" + keys[j].substring(1);
+	/**
+	 * Method to send a single info command.
+	 * 
+	 * @see #request(Node, InfoPolicy, String...)
+	 */
+	private String request(Node node, String command) {
+		return request(node, null, command).get(command);
+	}
+
+	/**
+	 * Method to pass the circuit breaker of a node. An open breaker rejects
+	 * the request, unless a probe is due: the cheap node command is sent and
+	 * closes the breaker if it succeeds. A probe failing in any way, errors
+	 * included, opens the breaker again with the next backoff.
+	 * 
+	 * @throws AerospikeException
+	 *             SERVER_NOT_AVAILABLE if the breaker is open, or the probe
+	 *             failure
+	 */
+	private void acquire(Node node, CircuitBreaker breaker, InfoPolicy infoPolicy) {
+		switch (breaker.acquire(System.nanoTime())) {
+		case ALLOW:
+			return;
+		case PROBE:
+			long start = System.nanoTime();
+			boolean answered = false;
+			try {
+				Info.request(infoPolicy, node, INFO_NODE);
+				answered = true;
+			} finally {
+				/* any throwable reopens the breaker, it must not stay half open */
+				if (!answered) {
+					breaker.recordFailure(System.nanoTime());
+					logger.debug("Probe of node ", node, " failed, next probe in ms: ",
+							TimeUnit.NANOSECONDS.toMillis(breaker.getBackoffNanos()));
 				}
-				previousKey = keys[j]; 
-				
-				lessThan1 -= pct;
-				Float val = opsPerSec * pct / 100;
-				//Float val = Float.parseFloat("35000.0");
-				data.put(k, String.valueOf(val) + ";" + String.valueOf(pct));
 			}
-			Float lessThan1Val = opsPerSec * lessThan1 / 100;
-			data.put("0ms_to_1ms", String.valueOf(lessThan1Val) + ";" + String.valueOf(lessThan1));
-
-			/*
-			 * data.put("\u003C 1ms", String.valueOf(lessThan1Val) + ";" +
-			 * String.valueOf(lessThan1));
-			 */
-			latency.put(key, data);
+			state.getPluginStats().recordInfo(node, System.nanoTime() - start, INFO_NODE.length());
+			breaker.recordSuccess();
+			logger.info("Node ", node, " answered probe, circuit breaker closed");
+			return;
+		default:
+			throw new AerospikeException(ResultCode.SERVER_NOT_AVAILABLE, "Circuit breaker open for node " + node);
 		}
-		return latency;
 	}
-	
 
 	/**
-	 * Method to get namespaces for Aerospike node.
+	 * Method to get the circuit breaker of a node, creating it on first use.
+	 * 
+	 * @param node
+	 *            Aerospike node
+	 * @return CircuitBreaker breaker keyed by the node name
+	 */
+	public CircuitBreaker getCircuitBreaker(Node node) {
+		CircuitBreaker breaker = breakers.get(node.getName());
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(breakerFailures, breakerBackoffNanos, breakerMaxBackoffNanos);
+			breaker = breakers.putIfAbsent(node.getName(), created);
+			if (breaker == null)
+				breaker = created;
+		}
+		return breaker;
+	}
+
+	/**
+	 * Method to get the namespaces of the cluster: the union of the
+	 * namespaces of all nodes. Only nodes missing from the catalogue are
+	 * queried.
 	 * 
 	 * @return String[] Array of Namespaces
 	 */
 	public String[] getNamespaces() {
+		Node[] nodes = getAerospikeNodes();
+		catalogue.retain(nodes);
+		for (Node node : nodes) {
+			if (catalogue.get(node) == null) {
+				Map<String, String> response = request(node, null, INFO_PARTITION_GENERATION, INFO_NAMESPACES);
+				catalogue.update(node, parseGeneration(response.get(INFO_PARTITION_GENERATION)),
+						splitNamespaces(response.get(INFO_NAMESPACES)));
+			}
+		}
+		Set<String> namespaces = catalogue.union(nodes);
+		return namespaces.toArray(new String[namespaces.size()]);
+	}
+
+	/**
+	 * Method to drop everything cached for a node that left the cluster:
+	 * capabilities, namespaces and circuit breaker.
+	 * 
+	 * @param nodeId
+	 *            Aerospike node id
+	 */
+	public void evictNode(String nodeId) {
+		capabilities.remove(nodeId);
+		catalogue.evict(nodeId);
+		breakers.remove(nodeId);
+	}
+
+	/**
+	 * Getter method for the namespace catalogue.
+	 * 
+	 * @return NamespaceCatalogue namespaces of each node
+	 */
+	public NamespaceCatalogue getNamespaceCatalogue() {
+		return catalogue;
+	}
 
-		Node node = getAerospikeNodes()[0];
-		String[] namespaces;
-		String filter = "namespaces";
-		String ns_str = "";
-		if (node != null)
-			ns_str = Info.request(null, node, filter);
-		namespaces = ns_str.split(";");
-		return namespaces;
+	/**
+	 * @return long partition generation or
+	 *         {@link NamespaceCatalogue#UNKNOWN_GENERATION} if not a number
+	 */
+	private static long parseGeneration(String response) {
+		if (response == null)
+			return NamespaceCatalogue.UNKNOWN_GENERATION;
+		String value = response.trim();
+		double generation = InfoParser.parseNumber(value, 0, value.length());
+		return Double.isNaN(generation) ? NamespaceCatalogue.UNKNOWN_GENERATION : (long) generation;
 	}
 
 
@@ -290,7 +572,8 @@ public class Base {
 	 */
 	public void closeClientConnections() {
 		if (this.client != null)
-			this.client.close();
+			ClientRegistry.getInstance().release(this.client);
+		this.client = null;
 	}
 	
 	/**
@@ -298,224 +581,212 @@ public class Base {
 	 */
 	public boolean newAsdversion(Node node) {
 		logger.debug("Check ASD version is new(>3.9) or old(<3.9)");
-		Map<String, String> nodeStats = null;
 		if (this.client != null && node != null) {
-			nodeStats = Info.request(null, node);
-			String build = nodeStats.get("build");
-			logger.debug("Node build: " + build);
-			String[] ver = build.split("[.]");
-			if (Integer.parseInt(ver[0]) > 3 || (Integer.parseInt(ver[0]) == 3 && Integer.parseInt(ver[1]) >= 9)) {
-				logger.debug("New ASD > 3.9");
-				return true;
-			} else {
-				logger.debug("Old ASD < 3.9");
-				return false;
-			}	
+			return getCapabilities(node).hasNamespaceStats();
 		} else {
 			logger.debug("Client or node is down. Not able to get info");
 			throw new NullPointerException("Client or node is down. Not able to get info");
 		}
 	}
 
-	
-	public Map<String, Map<String, String>> getThroughput(Node node) {
-		logger.debug("Get node throughput");
-		String oldReadReqs = "";
-		String oldReadSuccess = "";
-		String oldWriteReqs = "";
-		String oldWriteSuccess = "";
-		String newReadReqs = "";
-		String newReadSuccess = "";
-		String newWriteReqs = "";
-		String newWriteSuccess = "";
-
-		Map<String, String> writeTpsHistory = new HashMap<String, String>();
-		Map<String, String> readTpsHistory = new HashMap<String, String>();
-		Map<String, Map<String, String>> output = new HashMap<String, Map<String, String>>();
-		
-		String nodeName = node.getHost().name;
-		if (Main.rwStatsHistory.containsKey(nodeName)) {
-			if (Main.rwStatsHistory.get(nodeName).containsKey("readReqs"))
-				oldReadReqs = Main.rwStatsHistory.get(nodeName).get("readReqs");
+	/**
+	 * Method to get server version and features of a node. The build is only
+	 * requested from the node when it is not cached yet or the node was
+	 * replaced (left and rejoined the cluster); snapshots also read it again
+	 * when the partition generation of the node changed.
+	 * 
+	 * @param node
+	 *            Aerospike node
+	 * @return NodeCapabilities capabilities of the node
+	 */
+	public NodeCapabilities getCapabilities(Node node) {
+		NodeCapabilities nodeCapabilities = getCachedCapabilities(node);
+		if (nodeCapabilities == null)
+			nodeCapabilities = readCapabilities(node, null);
+		return nodeCapabilities;
+	}
 
-			if (Main.rwStatsHistory.get(nodeName).containsKey("readSuccess"))
-				oldReadSuccess = Main.rwStatsHistory.get(nodeName).get("readSuccess");
+	private NodeCapabilities readCapabilities(Node node, InfoPolicy infoPolicy) {
+		NodeCapabilities nodeCapabilities = new NodeCapabilities(node, request(node, infoPolicy, INFO_BUILD).get(INFO_BUILD));
+		logger.debug("Node build: ", node, " ", nodeCapabilities.getBuild());
+		capabilities.put(node.getName(), nodeCapabilities);
+		return nodeCapabilities;
+	}
 
-			if (Main.rwStatsHistory.get(nodeName).containsKey("writeReqs"))
-				oldWriteReqs = Main.rwStatsHistory.get(nodeName).get("writeReqs");
+	/**
+	 * Method to get the info policy of a request that must complete before a
+	 * deadline.
+	 * 
+	 * @param node
+	 *            Aerospike node
+	 * @param deadline
+	 *            System.nanoTime() deadline, 0 for none
+	 * @return InfoPolicy policy with the time left as timeout, or null for the
+	 *         default policy
+	 * @throws AerospikeException.Timeout
+	 *             if the deadline passed
+	 */
+	private static InfoPolicy infoPolicy(Node node, long deadline) {
+		if (deadline == 0)
+			return null;
+		long remaining = (deadline - System.nanoTime()) / 1000000;
+		if (remaining <= 0)
+			throw new AerospikeException.Timeout(node, 0, 0, 0, 0);
+		InfoPolicy infoPolicy = new InfoPolicy();
+		infoPolicy.timeout = (int) Math.min(Integer.MAX_VALUE, remaining);
+		return infoPolicy;
+	}
 
-			if (Main.rwStatsHistory.get(nodeName).containsKey("writeReqs"))
-				oldWriteSuccess = Main.rwStatsHistory.get(nodeName).get("writeReqs");
-		}
+	/**
+	 * Method to get cached capabilities of a node.
+	 * 
+	 * @return NodeCapabilities or null if not cached or no longer valid
+	 */
+	private NodeCapabilities getCachedCapabilities(Node node) {
+		NodeCapabilities nodeCapabilities = capabilities.get(node.getName());
+		if (nodeCapabilities != null && nodeCapabilities.isValidFor(node))
+			return nodeCapabilities;
+		return null;
+	}
 
-		Map<String, String> readWriteInfo = getReadWriteInfoFromNodes(node);
-		newReadReqs = readWriteInfo.get("readReqs");
-		newReadSuccess = readWriteInfo.get("readSuccess");
-		newWriteReqs = readWriteInfo.get("writeReqs");
-		newWriteSuccess = readWriteInfo.get("writeReqs");
-
-		Main.rwStatsHistory.put(nodeName, readWriteInfo);
-
-
-		//Integer timestamp = Calendar.getInstance().get(Calendar.MINUTE) * 60 + Calendar.getInstance().get(Calendar.SECOND);
-		Long timeStamp = System.currentTimeMillis() / 1000l;
-
-		boolean writeCondition = newWriteReqs.isEmpty() || newWriteSuccess.isEmpty() || oldWriteReqs.isEmpty()
-				|| oldWriteSuccess.isEmpty();
-		boolean readCondition = newReadReqs.isEmpty() || newReadSuccess.isEmpty() || oldReadReqs.isEmpty()
-				|| oldReadSuccess.isEmpty();
-
-		if (!writeCondition) {
-			Float totalWriteTps = Float.valueOf(newWriteReqs) - Float.valueOf(oldWriteReqs);
-			Float successWriteTps = Float.valueOf(newWriteSuccess) - Float.valueOf(oldWriteSuccess);
-			Long oldTimestamp = Long.valueOf(Main.writeTpsHistory.get(nodeName).get("timeStamp"));
-			Long timeDifference = timeStamp - oldTimestamp;
-			totalWriteTps = Math.abs(totalWriteTps / timeDifference);
-			successWriteTps = Math.abs(successWriteTps / timeDifference);
-			writeTpsHistory.put("timeStamp", Long.toString(timeStamp));
-			writeTpsHistory.put("totalTps", Integer.toString(Math.round(totalWriteTps)));
-			writeTpsHistory.put("successTps", Integer.toString(Math.round(successWriteTps)));
-		} else {
-			writeTpsHistory.put("timeStamp", Long.toString(timeStamp));
-			writeTpsHistory.put("totalTps", null);
-			writeTpsHistory.put("successTps", null);
+	
+	/**
+	 * Method to get read and write throughput of a node.
+	 * 
+	 * @param snapshot
+	 *            Node snapshot
+	 * @return StatTable per-second rates of READ_REQS, READ_SUCCESS,
+	 *         WRITE_REQS and WRITE_SUCCESS. Rates are missing on the first
+	 *         cycle and after a counter reset.
+	 */
+	public StatTable getThroughput(NodeSnapshot snapshot) {
+		logger.debug("Get node throughput");
+		NodeState nodeState = state.getNodeState(snapshot.getNode());
+		StatTable output = new StatTable(4);
+		StatTable readWriteInfo = getReadWriteInfoFromNodes(snapshot);
+		synchronized (nodeState) {
+			rateEngine.computeAllRates(nodeState.getCounters(), readWriteInfo, snapshot.getNanoTime(), output);
 		}
+		nodeState.setThroughput(output);
+		return output;
+	}
 
-		if (!readCondition) {
-			Float totalReadTps = Float.valueOf(newReadReqs) - Float.valueOf(oldReadReqs);
-			Float successReadTps = Float.valueOf(newReadSuccess) - Float.valueOf(oldReadSuccess);
-			Long oldTimestamp = Long.valueOf(Main.readTpsHistory.get(nodeName).get("timeStamp"));
-			Long timeDifference = timeStamp - oldTimestamp;
-			totalReadTps = Math.abs(totalReadTps / timeDifference);
-			successReadTps = Math.abs(successReadTps / timeDifference);
-			readTpsHistory.put("timeStamp", Long.toString(timeStamp));
-			readTpsHistory.put("totalTps", Integer.toString(Math.round(totalReadTps)));
-			readTpsHistory.put("successTps", Integer.toString(Math.round(successReadTps)));
-		} else {
-			readTpsHistory.put("timeStamp", Long.toString(timeStamp));
-			readTpsHistory.put("totalTps", null);
-			readTpsHistory.put("successTps", null);
+	/**
+	 * Method to get per-second rates of the configured counters of a node.
+	 * 
+	 * @param snapshot
+	 *            Node snapshot
+	 * @return StatTable rates keyed by stat id
+	 */
+	public StatTable getNodeRates(NodeSnapshot snapshot) {
+		NodeState nodeState = state.getNodeState(snapshot.getNode());
+		StatTable rates = new StatTable(16);
+		synchronized (nodeState) {
+			rateEngine.computeRates(nodeState.getCounters(), snapshot.getNodeStatistics(), snapshot.getNanoTime(),
+					rates);
 		}
-		Main.setReadTpsHistory(readTpsHistory, node);
-		Main.setWriteTpsHistory(writeTpsHistory, node);
+		return rates;
+	}
 
-		output.put("reads", readTpsHistory);
-		output.put("writes", writeTpsHistory);
-		return output;
+	/**
+	 * Method to get per-second rates of the configured counters of a
+	 * namespace.
+	 * 
+	 * @param snapshot
+	 *            Node snapshot
+	 * @param namespace
+	 *            Namespace name
+	 * @return StatTable rates keyed by stat id
+	 */
+	public StatTable getNamespaceRates(NodeSnapshot snapshot, String namespace) {
+		StatTable rates = new StatTable(16);
+		StatTable namespaceStats = snapshot.getNamespaceStatistics(namespace);
+		if (namespaceStats != null) {
+			NodeState nodeState = state.getNodeState(snapshot.getNode());
+			synchronized (nodeState) {
+				rateEngine.computeRates(nodeState.getNamespaceCounters(namespace), namespaceStats,
+						snapshot.getNanoTime(), rates);
+			}
+		}
+		return rates;
 	}
 	
 	
-	public Map<String, String> getReadWriteInfoFromNodes(Node node) {
-		boolean newAsd = newAsdversion(node);
+	public StatTable getReadWriteInfoFromNodes(NodeSnapshot snapshot) {
+		boolean newAsd = snapshot.getCapabilities().hasNamespaceStats();
 		logger.debug("Get Read Write Info From Nodes");
 		if (newAsd == false) {
-			return getReadWriteInfoFromNodeStats(node);
+			return getReadWriteInfoFromNodeStats(snapshot);
 		
 		} else {
-			return getReadWriteInfoFromNamespaceStats(node);
+			return getReadWriteInfoFromNamespaceStats(snapshot);
 		}	
 	}
 	
 	
-	public Map<String, String> getReadWriteInfoFromNodeStats(Node node) {
+	public StatTable getReadWriteInfoFromNodeStats(NodeSnapshot snapshot) {
 		logger.debug("getReadWriteInfoFrom NodeStats");
-		Map<String, String> readWriteInfo = new HashMap<String, String>();
-		Map<String, String> nodeStats = getNodeStatistics(node);
-		String newReadReqs = "";
-		String newReadSuccess = "";
-		String newWriteReqs = "";
-		String newWriteSuccess = "";
+		StatTable readWriteInfo = new StatTable(4);
+		StatTable nodeStats = snapshot.getNodeStatistics();
 		
-		if (nodeStats != null && nodeStats.containsKey("stat_read_reqs"))
-			newReadReqs = nodeStats.get("stat_read_reqs");
+		if (nodeStats.contains(STAT_READ_REQS))
+			readWriteInfo.put(READ_REQS, nodeStats.get(STAT_READ_REQS));
 
-		if (nodeStats != null && nodeStats.containsKey("stat_read_success"))
-			newReadSuccess = nodeStats.get("stat_read_success");
+		if (nodeStats.contains(STAT_READ_SUCCESS))
+			readWriteInfo.put(READ_SUCCESS, nodeStats.get(STAT_READ_SUCCESS));
 
-		if (nodeStats != null && nodeStats.containsKey("stat_write_reqs"))
-			newWriteReqs = nodeStats.get("stat_write_reqs");
+		if (nodeStats.contains(STAT_WRITE_REQS))
+			readWriteInfo.put(WRITE_REQS, nodeStats.get(STAT_WRITE_REQS));
 
-		if (nodeStats != null && nodeStats.containsKey("stat_write_success"))
-			newWriteSuccess = nodeStats.get("stat_write_success");
-		
-		readWriteInfo.put("readReqs", newReadReqs);
-		readWriteInfo.put("readSuccess", newReadSuccess);
-		readWriteInfo.put("writeReqs", newWriteReqs);
-		readWriteInfo.put("writeSuccess", newWriteSuccess);
+		if (nodeStats.contains(STAT_WRITE_SUCCESS))
+			readWriteInfo.put(WRITE_SUCCESS, nodeStats.get(STAT_WRITE_SUCCESS));
 
 		return readWriteInfo;
 		
 	}
 	
 	
-	public Map<String, String> getReadWriteInfoFromNamespaceStats(Node node) {
+	public StatTable getReadWriteInfoFromNamespaceStats(NodeSnapshot snapshot) {
 		logger.debug("getReadWriteInfoFrom NamespaceStats");
-		Map<String, String> readWriteInfo = new HashMap<String, String>();
-		String[] namespaces = this.getNamespaces();
-		float newReadSuccess = 0;
-		float newReadReqs = 0;
-		float newWriteSuccess = 0;
-		float newWriteReqs = 0;
+		StatTable readWriteInfo = new StatTable(4);
+		String[] namespaces = snapshot.getNamespaces();
+		double newReadSuccess = 0;
+		double newReadReqs = 0;
+		double newWriteSuccess = 0;
+		double newWriteReqs = 0;
 
 		boolean writeCondition = false;
 		boolean readCondition = false;
 		
-		if (namespaces.length != 0) {
-			for (String namespace : namespaces) {
-				Map<String, String> namespaceStats = getNamespaceStatistics(namespace, node);
-				//logger.debug(namespaceStats);
-				if (namespaceStats != null && namespaceStats.containsKey("client_read_success") && 
-						namespaceStats.containsKey("client_read_error")) {
-					
-					float readSuccess = Float.parseFloat(namespaceStats.get("client_read_success"));
-					float readReqs = (Float.parseFloat(namespaceStats.get("client_read_error")) + 
-							Float.parseFloat(namespaceStats.get("client_read_success")));
-					
-					logger.debug("readSuccess: " + readSuccess);
-					logger.debug("readReqs: " + readReqs);
-
-					newReadSuccess = newReadSuccess + readSuccess;
-					newReadReqs = newReadReqs + readReqs;
-					
-					logger.debug("newReadSuccess: " + newReadSuccess);
-					logger.debug("newReadReqs: " + newReadReqs);
-					readCondition = true;
-				}
-		
-				if (namespaceStats != null && namespaceStats.containsKey("client_write_success") &&
-						namespaceStats.containsKey("client_write_error")) {
-					
-					float writeSuccess = Float.parseFloat(namespaceStats.get("client_write_success"));
-					float writeReqs = (Float.parseFloat(namespaceStats.get("client_write_error")) + 
-							Float.parseFloat(namespaceStats.get("client_write_success")));
-					
-					logger.debug("writeSuccess: " + writeSuccess);
-					logger.debug("writeReqs: " + writeReqs);
-					
-					newWriteSuccess = newWriteSuccess + writeSuccess;
-					newWriteReqs = newWriteReqs + writeReqs;
-					
-					logger.debug("newWriteSuccess: " + newWriteSuccess);
-					logger.debug("newWriteReqs: " + newWriteReqs);
-					writeCondition = true;
-				}
+		for (String namespace : namespaces) {
+			StatTable namespaceStats = snapshot.getNamespaceStatistics(namespace);
+			if (namespaceStats != null && namespaceStats.contains(CLIENT_READ_SUCCESS)
+					&& namespaceStats.contains(CLIENT_READ_ERROR)) {
+				double readSuccess = namespaceStats.get(CLIENT_READ_SUCCESS);
+				newReadSuccess += readSuccess;
+				newReadReqs += readSuccess + namespaceStats.get(CLIENT_READ_ERROR);
+				readCondition = true;
 			}
-			if (readCondition == true) {
-				readWriteInfo.put("readSuccess", Float.toString(newReadSuccess));
-				readWriteInfo.put("readReqs", Float.toString(newReadReqs));
-			} else {
-				readWriteInfo.put("readSuccess", "");
-				readWriteInfo.put("readReqs", "");
+	
+			if (namespaceStats != null && namespaceStats.contains(CLIENT_WRITE_SUCCESS)
+					&& namespaceStats.contains(CLIENT_WRITE_ERROR)) {
+				double writeSuccess = namespaceStats.get(CLIENT_WRITE_SUCCESS);
+				newWriteSuccess += writeSuccess;
+				newWriteReqs += writeSuccess + namespaceStats.get(CLIENT_WRITE_ERROR);
+				writeCondition = true;
 			}
-			if (writeCondition == true) {
-				readWriteInfo.put("writeSuccess", Float.toString(newWriteSuccess));
-				readWriteInfo.put("writeReqs", Float.toString(newWriteReqs));
-			} else {
-				readWriteInfo.put("writeSuccess", "");
-				readWriteInfo.put("writeReqs", "");
+		}
+		logger.debug("newReadSuccess: ", newReadSuccess, " newReadReqs: ", newReadReqs);
+		logger.debug("newWriteSuccess: ", newWriteSuccess, " newWriteReqs: ", newWriteReqs);
 
-			}
-		}	
+		if (readCondition == true) {
+			readWriteInfo.put(READ_SUCCESS, newReadSuccess);
+			readWriteInfo.put(READ_REQS, newReadReqs);
+		}
+		if (writeCondition == true) {
+			readWriteInfo.put(WRITE_SUCCESS, newWriteSuccess);
+			readWriteInfo.put(WRITE_REQS, newWriteReqs);
+		}
 		return readWriteInfo;		
 	}
 
@@ -523,143 +794,102 @@ public class Base {
 	/**
 	 * Method to extract memory stat metrics from node statistics.
 	 * 
-	 * @param Node
-	 * @return Map<String, String> Map of memory statistics
+	 * @param snapshot
+	 * @return StatTable used_bytes_memory or empty if not available
 	 */
-	public Map<String, String> getMemoryStats(Node node) {
-		boolean newAsd = newAsdversion(node);
+	public StatTable getMemoryStats(NodeSnapshot snapshot) {
+		boolean newAsd = snapshot.getCapabilities().hasNamespaceStats();
 		if (newAsd == false) {
-			return getMemoryStatsFromNodeStats(node);
+			return getMemoryStatsFromNodeStats(snapshot);
 		
 		} else {
-			return getMemoryStatsFromNamespaceStats(node);
+			return getMemoryStatsFromNamespaceStats(snapshot);
 		}
 	}
 
 	
-	public Map<String, String> getMemoryStatsFromNodeStats(Node node) {
+	public StatTable getMemoryStatsFromNodeStats(NodeSnapshot snapshot) {
 		logger.debug("Getting node memory info");		
-		Map<String, String> nodeStats = getNodeStatistics(node);
-		Map<String, String> memoryStats = new HashMap<String, String>();
-		try {
-			memoryStats.put("used_bytes_memory", nodeStats.get("used_bytes_memory"));
-		} catch (Exception exception) {
-			memoryStats.put("used_bytes_memory", "n/s");
-			logger.error("ERROR: ", exception);
-		}
-		logger.info("NodeMemoryStats");
-		logger.info(memoryStats);
+		StatTable nodeStats = snapshot.getNodeStatistics();
+		StatTable memoryStats = new StatTable(1);
+		if (nodeStats.contains(USED_BYTES_MEMORY))
+			memoryStats.put(USED_BYTES_MEMORY, nodeStats.get(USED_BYTES_MEMORY));
+		else
+			logger.error("ERROR: used_bytes_memory not reported by node ", snapshot.getNode());
+		logger.debug("NodeMemoryStats: ", memoryStats.get(USED_BYTES_MEMORY));
 		return memoryStats;		
 	}
 	
 	
-	public Map<String, String> getMemoryStatsFromNamespaceStats(Node node) {
+	public StatTable getMemoryStatsFromNamespaceStats(NodeSnapshot snapshot) {
 		logger.debug("Getting namespace memory info");
-		String[] namespaces = this.getNamespaces();
-		Map<String, String> memoryStats = new HashMap<String, String>();
-		float totalUsedMemory = 0;
-
-		/*
-		 * There are few changed in 3.9 stats
-		 * (global stat)used-bytes-memory -> (namespace stat)memory_used_bytes
-		 * (global stat)total-bytes-memory -> (namespace config)memory-size
-		 */
-		if (namespaces.length != 0) {
-			try {
-				for (String namespace : namespaces) {
-					Map<String, String> namespaceStats = getNamespaceStatistics(namespace, node);
-					if (namespaceStats.get("memory_used_bytes") != null) {
-						float mem = Float.parseFloat(namespaceStats.get("memory_used_bytes"));
-						logger.debug("usedMemory: " + mem);
-						totalUsedMemory = totalUsedMemory + mem;
-						logger.debug("totalUsedMemory: " + totalUsedMemory);
-					}
-				}
-				memoryStats.put("used_bytes_memory", Float.toString(totalUsedMemory));				
-			} catch (Exception exception) {
-				memoryStats.put("used_bytes_memory", "n/s");
-				logger.error("ERROR: ", exception);
-			}
-		}
-		logger.info("NamespaceMemoryStats");
-		logger.info(memoryStats);
-		return memoryStats;
+		return sumNamespaceStat(snapshot, MEMORY_USED_BYTES, USED_BYTES_MEMORY);
 	}
 
 	
 	/**
 	 * Method to extract Disk stat metrics from node statistics.
-	 * @param Node
-	 * @return Map<String, String> Map of Disk statistics
+	 * @param snapshot
+	 * @return StatTable used_bytes_disk or empty if not available
 	 */
-	public Map<String, String> getDiskStats(Node node) {
-		boolean newAsd = newAsdversion(node);
+	public StatTable getDiskStats(NodeSnapshot snapshot) {
+		boolean newAsd = snapshot.getCapabilities().hasNamespaceStats();
 		if (newAsd == false) {
-			return getDiskStatsFromNodeStats(node);
+			return getDiskStatsFromNodeStats(snapshot);
 		
 		} else {
-			return getDiskStatsFromNamespaceStats(node);
+			return getDiskStatsFromNamespaceStats(snapshot);
 		}
 	}
 
 	
-	public Map<String, String> getDiskStatsFromNodeStats(Node node) {
+	public StatTable getDiskStatsFromNodeStats(NodeSnapshot snapshot) {
 		logger.debug("Getting node disk info");
-		Map<String, String> nodeStats = getNodeStatistics(node);
-		Map<String, String> diskStats = new HashMap<String, String>();
-		try {
-			diskStats.put("used_bytes_disk", nodeStats.get("used_bytes_disk"));
-
-		} catch (Exception exception) {
-
-			diskStats.put("used_bytes_disk", "n/s");
-			logger.error("ERROR: ", exception);
-		}
-		logger.info("NodeDiskStats");
-		logger.info(diskStats);
+		StatTable nodeStats = snapshot.getNodeStatistics();
+		StatTable diskStats = new StatTable(1);
+		if (nodeStats.contains(USED_BYTES_DISK))
+			diskStats.put(USED_BYTES_DISK, nodeStats.get(USED_BYTES_DISK));
+		else
+			logger.error("ERROR: used_bytes_disk not reported by node ", snapshot.getNode());
+		logger.debug("NodeDiskStats: ", diskStats.get(USED_BYTES_DISK));
 		return diskStats;		
 	}
 	
 	
-	public Map<String, String> getDiskStatsFromNamespaceStats(Node node) {
+	public StatTable getDiskStatsFromNamespaceStats(NodeSnapshot snapshot) {
 		logger.debug("Getting namespace disk info");
-		String[] namespaces = this.getNamespaces();
-		Map<String, String> diskStats = new HashMap<String, String>();
-		float totalUsedDisk = 0;
-		//float totalDisk = (float)0.0;
-		
-		/*
-		 *  There are few changed in 3.9 stats
-		 *  (global stat)used-bytes-disk -> (namespace stat)device_used_bytes
-		 *  (global stat)total-bytes-disk -> (namespace config)device-total-bytes
-		 */
-		
-		if (namespaces.length != 0) {
-			try {
-				for (String namespace : namespaces) {
-					Map<String, String> namespaceStats = getNamespaceStatistics(namespace, node);
-					//logger.info("namespaceStats" + namespaceStats);
-					//totalUsedDisk =+ Float.parseFloat(namespaceStats.get("device_used_bytes"));
-					if (namespaceStats.get("device_used_bytes") != null) {
-						float disk = Float.parseFloat(namespaceStats.get("device_used_bytes"));
-						logger.debug("used disk: " + disk);
-						totalUsedDisk = totalUsedDisk + disk;
-						logger.debug("totalUsedDisk: " + totalUsedDisk);
-					}
-				}
-				//float freeBytes = totalDisk - totalUsedDisk;
-				diskStats.put("used_bytes_disk", Float.toString(totalUsedDisk));
+		return sumNamespaceStat(snapshot, DEVICE_USED_BYTES, USED_BYTES_DISK);
+	}
 
-				
-			} catch (Exception exception) {
-				diskStats.put("used_bytes_disk", "n/s");
-				logger.error("ERROR: ", exception);
+	/**
+	 * Method to sum a namespace stat over all namespaces of a node.
+	 * 
+	 * There are few changed in 3.9 stats
+	 * (global stat)used-bytes-memory -> (namespace stat)memory_used_bytes
+	 * (global stat)used-bytes-disk -> (namespace stat)device_used_bytes
+	 * 
+	 * @param snapshot
+	 *            Node snapshot
+	 * @param namespaceStat
+	 *            Id of the namespace stat to sum
+	 * @param nodeStat
+	 *            Id the sum is stored under
+	 * @return StatTable the sum or empty if the node has no namespaces
+	 */
+	private StatTable sumNamespaceStat(NodeSnapshot snapshot, int namespaceStat, int nodeStat) {
+		String[] namespaces = snapshot.getNamespaces();
+		StatTable stats = new StatTable(1);
+		double total = 0;
+		if (namespaces.length != 0) {
+			for (String namespace : namespaces) {
+				StatTable namespaceStats = snapshot.getNamespaceStatistics(namespace);
+				if (namespaceStats != null)
+					total += namespaceStats.get(namespaceStat);
 			}
+			stats.put(nodeStat, total);
 		}
-		logger.info("NamespaceDiskStats");
-		logger.info(diskStats);
-		return diskStats;
+		logger.debug("Namespace ", StatRegistry.getInstance().getName(nodeStat), ": ", total);
+		return stats;
 	}	
 	
 }
-
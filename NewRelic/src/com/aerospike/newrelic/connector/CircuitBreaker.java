@@ -0,0 +1,123 @@
+package com.aerospike.newrelic.connector;
+
+/**
+ * Circuit breaker of one node. After a number of consecutive failed info
+ * requests the breaker opens and requests to the node are rejected without
+ * touching the network. Once per backoff interval one cheap probe request is
+ * let through: success closes the breaker, failure doubles the interval (up
+ * to a maximum).
+ *
+ * Methods are synchronized, a node may be used by the collector threads and
+ * the polling thread.
+ *
+ */
+public class CircuitBreaker {
+
+	/** Breaker states, reported as metric value (ordinal) */
+	public enum State {
+		CLOSED, HALF_OPEN, OPEN
+	}
+
+	/** Outcome of {@link CircuitBreaker#acquire(long)} */
+	public enum Permit {
+		/** send the request */
+		ALLOW,
+		/** send a probe first, then the request if the probe succeeds */
+		PROBE,
+		/** do not send anything */
+		REJECT
+	}
+
+	private final int failureThreshold;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long backoffNanos;
+	private long nextProbe;
+
+	/**
+	 * Constructor for CircuitBreaker
+	 *
+	 * @param failureThreshold
+	 *            Consecutive failures opening the breaker
+	 * @param initialBackoffNanos
+	 *            Interval between probes after the breaker opened
+	 * @param maxBackoffNanos
+	 *            Maximum interval between probes
+	 */
+	public CircuitBreaker(int failureThreshold, long initialBackoffNanos, long maxBackoffNanos) {
+		this.failureThreshold = failureThreshold;
+		this.initialBackoffNanos = initialBackoffNanos;
+		this.maxBackoffNanos = Math.max(initialBackoffNanos, maxBackoffNanos);
+	}
+
+	/**
+	 * Method to ask whether a request may be sent.
+	 *
+	 * @param nanoTime
+	 *            Current System.nanoTime()
+	 * @return Permit ALLOW when closed, PROBE when open and the backoff
+	 *         elapsed (one caller only), REJECT otherwise
+	 */
+	public synchronized Permit acquire(long nanoTime) {
+		switch (state) {
+		case CLOSED:
+			return Permit.ALLOW;
+		case OPEN:
+			if (nanoTime - nextProbe >= 0) {
+				state = State.HALF_OPEN;
+				return Permit.PROBE;
+			}
+			return Permit.REJECT;
+		default:
+			/* a probe is in flight */
+			return Permit.REJECT;
+		}
+	}
+
+	/**
+	 * Method to record a successful request or probe, closing the breaker.
+	 */
+	public synchronized void recordSuccess() {
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		backoffNanos = 0;
+	}
+
+	/**
+	 * Method to record a failed request or probe.
+	 *
+	 * @param nanoTime
+	 *            Current System.nanoTime()
+	 */
+	public synchronized void recordFailure(long nanoTime) {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN) {
+			backoffNanos = Math.min(maxBackoffNanos, backoffNanos * 2);
+		} else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+			backoffNanos = initialBackoffNanos;
+		} else {
+			return;
+		}
+		state = State.OPEN;
+		nextProbe = nanoTime + backoffNanos;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * @return long current interval between probes in nanoseconds, 0 when
+	 *         closed
+	 */
+	public synchronized long getBackoffNanos() {
+		return backoffNanos;
+	}
+}
@@ -0,0 +1,163 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Host;
+import com.aerospike.client.policy.ClientPolicy;
+import com.newrelic.metrics.publish.util.Logger;
+
+/**
+ * Registry of the Aerospike clients shared by the agents of this process.
+ * Agents configured with the same seeds (in any order or case) and
+ * credentials share one client, its tend thread and its connection pools.
+ * The client is closed when the last agent releases it.
+ *
+ * The first agent creating a client decides its policy; agents acquiring it
+ * later with other pool or tend settings are logged and use it as is. Clients
+ * of different clusters are created in parallel, agents of a cluster whose
+ * client is being created wait for it.
+ *
+ */
+public final class ClientRegistry {
+
+	private static final ClientRegistry INSTANCE = new ClientRegistry();
+
+	private static final Logger logger = Logger.getLogger(ClientRegistry.class);
+
+	private static final class Entry {
+		final String key;
+		final ClientPolicy policy;
+		/* null while the client is being created */
+		AerospikeClient client;
+		int references;
+
+		Entry(String key, ClientPolicy policy) {
+			this.key = key;
+			this.policy = policy;
+		}
+	}
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private final Map<AerospikeClient, Entry> byClient = new IdentityHashMap<AerospikeClient, Entry>();
+
+	/**
+	 * @return ClientRegistry registry shared by all agents
+	 */
+	public static ClientRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Method to get the client of a cluster, creating it on first use.
+	 *
+	 * @param seeds
+	 *            Seed hosts of the cluster
+	 * @param policy
+	 *            Policy (credentials, pool and tend settings) used if the
+	 *            client is created
+	 * @return AerospikeClient client shared with the agents using the same
+	 *         seeds and credentials
+	 * @throws AerospikeException
+	 *             if the client cannot connect to the cluster
+	 */
+	public AerospikeClient acquire(List<Host> seeds, ClientPolicy policy) {
+		String key = key(seeds, policy.user, policy.password);
+		Entry entry;
+		synchronized (this) {
+			entry = awaitEntry(key);
+			if (entry != null) {
+				if (entry.policy.maxThreads != policy.maxThreads || entry.policy.maxSocketIdle != policy.maxSocketIdle
+						|| entry.policy.tendInterval != policy.tendInterval || entry.policy.timeout != policy.timeout)
+					logger.warn("Sharing the client of ", seeds, " with the pool and tend settings it was created with");
+				entry.references++;
+				return entry.client;
+			}
+			entry = new Entry(key, policy);
+			entries.put(key, entry);
+		}
+
+		/* the client waits for the cluster in its constructor, outside the lock */
+		AerospikeClient client = null;
+		try {
+			client = new AerospikeClient(policy, seeds.toArray(new Host[seeds.size()]));
+		} finally {
+			synchronized (this) {
+				if (client == null) {
+					entries.remove(key);
+				} else {
+					entry.client = client;
+					entry.references = 1;
+					byClient.put(client, entry);
+				}
+				notifyAll();
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * Method to wait until the client of a key, if one is being created, is
+	 * connected or failed. Called with the lock held.
+	 *
+	 * @return Entry entry with a client, null if there is none
+	 */
+	private Entry awaitEntry(String key) {
+		Entry entry = entries.get(key);
+		while (entry != null && entry.client == null) {
+			try {
+				wait();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new AerospikeException("Interrupted while waiting for the client of " + key);
+			}
+			entry = entries.get(key);
+		}
+		return entry;
+	}
+
+	/**
+	 * Method to release a client, closing it when no agent uses it anymore.
+	 *
+	 * @param client
+	 *            Client returned by acquire()
+	 */
+	public synchronized void release(AerospikeClient client) {
+		Entry entry = byClient.get(client);
+		if (entry == null || --entry.references > 0)
+			return;
+		entries.remove(entry.key);
+		byClient.remove(client);
+		client.close();
+	}
+
+	/**
+	 * @return int number of agents using a client, 0 if it is closed
+	 */
+	public synchronized int getReferences(AerospikeClient client) {
+		Entry entry = byClient.get(client);
+		return entry == null ? 0 : entry.references;
+	}
+
+	/**
+	 * Method to build the key of a cluster: its sorted, lower case, distinct
+	 * seeds and the credentials.
+	 */
+	static String key(List<Host> seeds, String user, String password) {
+		TreeSet<String> hosts = new TreeSet<String>();
+		for (Host seed : seeds)
+			hosts.add(seed.name.trim().toLowerCase(Locale.ROOT) + ":" + seed.port);
+		StringBuilder key = new StringBuilder();
+		for (String host : hosts)
+			key.append(host).append(',');
+		key.append('|').append(user == null ? "" : user);
+		key.append('|').append(password == null ? "" : password);
+		return key.toString();
+	}
+}
@@ -0,0 +1,181 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.aerospike.client.cluster.Node;
+import com.aerospike.newrelic.connector.RateEngine.CounterState;
+import com.aerospike.newrelic.utils.StatTable;
+
+/**
+ * Collection state of one agent (cluster), keyed by Aerospike node id. Each
+ * agent owns its own instance, so clusters whose nodes share host names do not
+ * see each other's history and agents can be polled concurrently.
+ *
+ * Nodes are independent: the map is concurrent and every {@link NodeState} is
+ * its own lock.
+ *
+ */
+public class CollectionState {
+
+	private final String clusterName;
+	private final ConcurrentMap<String, NodeState> nodes = new ConcurrentHashMap<String, NodeState>();
+	private final PluginStats pluginStats = new PluginStats();
+
+	/**
+	 * State of one node. Callers synchronize on the instance while updating
+	 * counters.
+	 */
+	public static class NodeState {
+		private final String nodeId;
+		private final CounterState counters = new CounterState();
+		private final ConcurrentMap<String, CounterState> namespaceCounters = new ConcurrentHashMap<String, CounterState>();
+		private volatile StatTable statistics;
+		private volatile StatTable throughput;
+		private volatile boolean stale;
+
+		NodeState(String nodeId) {
+			this.nodeId = nodeId;
+		}
+
+		public String getNodeId() {
+			return nodeId;
+		}
+
+		/**
+		 * @return CounterState previous values of the node counters
+		 */
+		public CounterState getCounters() {
+			return counters;
+		}
+
+		/**
+		 * @return Map<String, CounterState> previous values of the counters
+		 *         of every namespace, keyed by namespace
+		 */
+		public Map<String, CounterState> getAllNamespaceCounters() {
+			return namespaceCounters;
+		}
+
+		/**
+		 * @return CounterState previous values of the counters of a namespace
+		 */
+		public CounterState getNamespaceCounters(String namespace) {
+			CounterState state = namespaceCounters.get(namespace);
+			if (state == null) {
+				CounterState created = new CounterState();
+				state = namespaceCounters.putIfAbsent(namespace, created);
+				if (state == null)
+					state = created;
+			}
+			return state;
+		}
+
+		/**
+		 * @return StatTable node statistics of the last cycle or null
+		 */
+		public StatTable getStatistics() {
+			return statistics;
+		}
+
+		public void setStatistics(StatTable statistics) {
+			this.statistics = statistics;
+		}
+
+		/**
+		 * @return StatTable read/write throughput of the last cycle or null
+		 */
+		public StatTable getThroughput() {
+			return throughput;
+		}
+
+		public void setThroughput(StatTable throughput) {
+			this.throughput = throughput;
+		}
+
+		/**
+		 * @return boolean true if the node missed its deadline or failed in
+		 *         the last cycle
+		 */
+		public boolean isStale() {
+			return stale;
+		}
+
+		public void setStale(boolean stale) {
+			this.stale = stale;
+		}
+	}
+
+	/**
+	 * Constructor for CollectionState
+	 *
+	 * @param clusterName
+	 *            Name of the cluster the state belongs to
+	 */
+	public CollectionState(String clusterName) {
+		this.clusterName = clusterName;
+	}
+
+	public String getClusterName() {
+		return clusterName;
+	}
+
+	/**
+	 * @return PluginStats performance of the agent during the current cycle
+	 */
+	public PluginStats getPluginStats() {
+		return pluginStats;
+	}
+
+	/**
+	 * Method to get the state of a node, creating it on first use.
+	 *
+	 * @param node
+	 *            Aerospike node
+	 * @return NodeState state keyed by the node id
+	 */
+	public NodeState getNodeState(Node node) {
+		return getNodeState(node.getName());
+	}
+
+	NodeState getNodeState(String nodeId) {
+		NodeState state = nodes.get(nodeId);
+		if (state == null) {
+			NodeState created = new NodeState(nodeId);
+			state = nodes.putIfAbsent(nodeId, created);
+			if (state == null)
+				state = created;
+		}
+		return state;
+	}
+
+	/**
+	 * Method to get the state of a node if it is known.
+	 *
+	 * @param nodeId
+	 *            Aerospike node id
+	 * @return NodeState state or null
+	 */
+	public NodeState findNodeState(String nodeId) {
+		return nodes.get(nodeId);
+	}
+
+	/**
+	 * Method to drop the state of a node that left the cluster.
+	 *
+	 * @param nodeId
+	 *            Aerospike node id
+	 */
+	public void removeNodeState(String nodeId) {
+		nodes.remove(nodeId);
+	}
+
+	/**
+	 * @return Collection<NodeState> states of all known nodes
+	 */
+	public Collection<NodeState> getNodeStates() {
+		return nodes.values();
+	}
+}
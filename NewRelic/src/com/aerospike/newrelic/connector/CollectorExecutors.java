@@ -0,0 +1,87 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.newrelic.metrics.publish.util.Logger;
+
+/**
+ * Factory for the bounded executors used to collect nodes in parallel, and
+ * for the timer of the background sampler.
+ *
+ */
+public class CollectorExecutors {
+
+	private static final Logger logger = Logger.getLogger(CollectorExecutors.class);
+
+	/**
+	 * Method to create a bounded executor for node collection.
+	 * 
+	 * @param name
+	 *            Thread name prefix
+	 * @param threads
+	 *            Maximum number of concurrent tasks
+	 * @param virtualThreads
+	 *            Use virtual threads if the JVM supports them
+	 * @return ExecutorService fixed size executor
+	 */
+	public static ExecutorService newExecutor(String name, int threads, boolean virtualThreads) {
+		ThreadFactory factory = null;
+		if (virtualThreads) {
+			factory = virtualThreadFactory(name);
+			if (factory == null)
+				logger.warn("Virtual threads are not supported by this JVM, using platform threads.");
+		}
+		if (factory == null)
+			factory = platformThreadFactory(name);
+		return Executors.newFixedThreadPool(threads, factory);
+	}
+
+	/**
+	 * Method to create a single daemon thread scheduler.
+	 * 
+	 * @param name
+	 *            Thread name prefix
+	 * @return ScheduledExecutorService scheduler running one task at a time
+	 */
+	public static ScheduledExecutorService newScheduler(String name) {
+		return Executors.newSingleThreadScheduledExecutor(platformThreadFactory(name));
+	}
+
+	/**
+	 * Method to create a daemon platform thread factory.
+	 */
+	private static ThreadFactory platformThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Method to create a virtual thread factory. Looked up reflectively so the
+	 * plugin still builds and runs on JVMs without virtual threads.
+	 * 
+	 * @return ThreadFactory or null if virtual threads are not available
+	 */
+	private static ThreadFactory virtualThreadFactory(String name) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name, 1L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (Exception exception) {
+			logger.debug("Virtual threads not available: ", exception);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,557 @@
+package com.aerospike.newrelic.connector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Journal of the last published cycles with their wall-clock time, in a
+ * memory-mapped file of fixed size used as a ring: records are appended at
+ * the tail and the oldest are evicted when the file is full. New Relic takes
+ * no timestamps and the SDK does not tell which cycles were delivered, so
+ * nothing is sent again from the journal; cycles lost in an outage are
+ * recovered from the file by hand (see {@link JournalDump}).
+ *
+ * Cycles store journal ids and values only. A name record defines the ids a
+ * cycle uses that no live record defines yet; when a name record is evicted,
+ * the ids still used by a live cycle are defined again with the next cycle,
+ * so the file is read without any other state and kept across restarts. The
+ * file is laid out as
+ *
+ * <pre>
+ * header: int magic | int version | int capacity | int head | int tail | int records | long next sequence
+ * record: int length | byte type | names or cycle
+ * names: int entries | per entry: int id | utf name | utf units
+ * cycle: long sequence | long time millis | int metrics | per metric: int id | byte aggregate | double value [| int count | double min | double max | double sum of squares]
+ * </pre>
+ *
+ * where a utf string is a short byte length and its UTF-8 bytes. A file of
+ * another size or format is cleared.
+ *
+ */
+public class CycleJournal {
+
+	private static final int MAGIC = 0x4153434a;
+	private static final int VERSION = 1;
+	private static final int HEADER = 6 * 4 + 8;
+	private static final int RECORD_HEADER = 4 + 1;
+	private static final byte NAMES = 1;
+	private static final byte CYCLE = 2;
+	private static final int NAMES_HEADER = RECORD_HEADER + 4;
+	private static final int CYCLE_HEADER = RECORD_HEADER + 8 + 8 + 4;
+	private static final int VALUE_BYTES = 4 + 1 + 8;
+	private static final int AGGREGATE_BYTES = 4 + 8 + 8 + 8;
+	private static final int WRAP = -1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[][] NO_NAMES = new byte[0][];
+
+	/**
+	 * Receives the cycles read from the journal.
+	 */
+	public interface CycleReader {
+		/**
+		 * @param sequence
+		 *            Sequence of the cycle
+		 * @param timeMillis
+		 *            Wall-clock time of the cycle
+		 * @param metrics
+		 *            Metrics of the cycle, reused for the next cycle
+		 */
+		void cycle(long sequence, long timeMillis, MetricBuffer metrics);
+	}
+
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+
+	/* records are in [head, wrap) and [HEADER, tail) once the tail wrapped, in [head, tail) otherwise */
+	private int head;
+	private int tail;
+	private int records;
+	private int cycles;
+	private long nextSequence;
+
+	/* journal ids of the metric names, a freed id is reused */
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private String[] names = new String[64];
+	private String[] units = new String[64];
+	/* whether a live name record defines the id, and the sequence of the last cycle using it */
+	private boolean[] defined = new boolean[64];
+	private long[] lastUsed = new long[64];
+	private int nextId;
+	private int[] free = new int[16];
+	private int freeCount;
+	/* ids allocated or whose name record was evicted, defined again by the next cycle */
+	private int[] undefined = new int[64];
+	private int undefinedCount;
+	private int[] cycleIds = new int[64];
+
+	/**
+	 * Constructor for CycleJournal
+	 *
+	 * @param file
+	 *            Journal file, reopened if it has the same size and format,
+	 *            created or cleared otherwise
+	 * @param maxBytes
+	 *            Size of the file, the oldest cycles are evicted beyond it
+	 * @throws IOException
+	 *             if the file cannot be created or mapped
+	 */
+	public CycleJournal(File file, long maxBytes) throws IOException {
+		this.capacity = (int) Math.max(HEADER + CYCLE_HEADER, Math.min(maxBytes, Integer.MAX_VALUE));
+		Arrays.fill(lastUsed, -1);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			boolean reopened = raf.length() == capacity;
+			if (!reopened)
+				raf.setLength(capacity);
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			if (!reopened || !load())
+				reset();
+		} finally {
+			/* the mapping stays valid after the channel is closed */
+			raf.close();
+		}
+	}
+
+	/**
+	 * Method to restore the state of a reopened file: the name records are
+	 * read back and the records checked against the header.
+	 *
+	 * @return boolean true if the header and the records it points to are
+	 *         consistent
+	 */
+	private boolean load() {
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != capacity)
+			return false;
+		head = buffer.getInt(12);
+		tail = buffer.getInt(16);
+		records = buffer.getInt(20);
+		nextSequence = buffer.getLong(24);
+		if (records < 0 || head < HEADER || tail < HEADER || head > capacity || tail > capacity)
+			return false;
+		int position = head;
+		long sequence = -1;
+		try {
+			for (int i = 0; i < records; i++) {
+				position = start(position);
+				int length = buffer.getInt(position);
+				if (length < RECORD_HEADER || position + length > capacity)
+					return false;
+				byte type = buffer.get(position + 4);
+				if (type == NAMES) {
+					loadNames(position);
+				} else if (type != CYCLE) {
+					return false;
+				} else {
+					long cycleSequence = buffer.getLong(position + RECORD_HEADER);
+					if (sequence >= 0 && cycleSequence != sequence + 1)
+						return false;
+					sequence = cycleSequence;
+					markUsed(position, cycleSequence);
+					cycles++;
+				}
+				position += length;
+			}
+		} catch (RuntimeException exception) {
+			/* a corrupt record points outside the file or holds a bad id */
+			return false;
+		}
+		if ((records > 0 && position != tail) || (cycles > 0 && sequence != nextSequence - 1))
+			return false;
+		for (int id = 0; id < nextId; id++) {
+			if (names[id] == null) {
+				/* used by a cycle without a name, or never defined */
+				if (lastUsed[id] >= 0)
+					return false;
+				pushFree(id);
+			}
+		}
+		return true;
+	}
+
+	private void loadNames(int position) {
+		int entries = buffer.getInt(position + RECORD_HEADER);
+		int offset = position + NAMES_HEADER;
+		for (int i = 0; i < entries; i++) {
+			int id = checkId(buffer.getInt(offset));
+			offset += 4;
+			String name = getUtf(offset);
+			offset += 2 + buffer.getShort(offset);
+			String unit = getUtf(offset);
+			offset += 2 + buffer.getShort(offset);
+			ensureIds(id + 1);
+			nextId = Math.max(nextId, id + 1);
+			names[id] = name;
+			units[id] = unit;
+			defined[id] = true;
+			ids.put(name, id);
+		}
+	}
+
+	private void markUsed(int position, long sequence) {
+		int metrics = buffer.getInt(position + RECORD_HEADER + 16);
+		int offset = position + CYCLE_HEADER;
+		for (int i = 0; i < metrics; i++) {
+			int id = checkId(buffer.getInt(offset));
+			ensureIds(id + 1);
+			nextId = Math.max(nextId, id + 1);
+			lastUsed[id] = sequence;
+			offset += buffer.get(offset + 4) != 0 ? VALUE_BYTES + AGGREGATE_BYTES : VALUE_BYTES;
+		}
+	}
+
+	/**
+	 * @return int id read from a reopened file, if it may be defined in a
+	 *         file of this size
+	 */
+	private int checkId(int id) {
+		if (id < 0 || id > capacity / (4 + 2 + 2))
+			throw new IllegalStateException("Journal id out of range: " + id);
+		return id;
+	}
+
+	private void reset() {
+		head = HEADER;
+		tail = HEADER;
+		records = 0;
+		cycles = 0;
+		nextSequence = 0;
+		ids.clear();
+		Arrays.fill(names, null);
+		Arrays.fill(units, null);
+		Arrays.fill(defined, false);
+		Arrays.fill(lastUsed, -1);
+		nextId = 0;
+		freeCount = 0;
+		undefinedCount = 0;
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, capacity);
+		writeState();
+	}
+
+	private void writeState() {
+		buffer.putInt(12, head);
+		buffer.putInt(16, tail);
+		buffer.putInt(20, records);
+		buffer.putLong(24, nextSequence);
+	}
+
+	private void ensureIds(int size) {
+		if (size <= names.length)
+			return;
+		int length = Math.max(size, names.length * 2);
+		int previous = lastUsed.length;
+		names = Arrays.copyOf(names, length);
+		units = Arrays.copyOf(units, length);
+		defined = Arrays.copyOf(defined, length);
+		lastUsed = Arrays.copyOf(lastUsed, length);
+		Arrays.fill(lastUsed, previous, length, -1);
+	}
+
+	private void pushFree(int id) {
+		if (freeCount == free.length)
+			free = Arrays.copyOf(free, freeCount * 2);
+		free[freeCount++] = id;
+	}
+
+	private void pushUndefined(int id) {
+		if (undefinedCount == undefined.length)
+			undefined = Arrays.copyOf(undefined, undefinedCount * 2);
+		undefined[undefinedCount++] = id;
+	}
+
+	/**
+	 * @return int start of the record at a position, past the wrap marker
+	 */
+	private int start(int position) {
+		if (capacity - position < 4 || buffer.getInt(position) == WRAP)
+			return HEADER;
+		return position;
+	}
+
+	/**
+	 * Method to get the journal id of a metric, allocating it for a new name
+	 * or units.
+	 */
+	private int idOf(String name, String unit) {
+		Integer known = ids.get(name);
+		if (known != null && equal(units[known], unit))
+			return known;
+		int id = freeCount > 0 ? free[--freeCount] : nextId++;
+		ensureIds(id + 1);
+		names[id] = name;
+		units[id] = unit;
+		defined[id] = false;
+		ids.put(name, id);
+		pushUndefined(id);
+		return id;
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Method to append a cycle, evicting the oldest records if needed. Only
+	 * the names not defined by a live record are written.
+	 *
+	 * @param cycle
+	 *            Metrics of the cycle
+	 * @param timeMillis
+	 *            Wall-clock time of the cycle
+	 * @return long sequence of the cycle, -1 if it is larger than the journal
+	 */
+	public synchronized long append(MetricBuffer cycle, long timeMillis) {
+		long sequence = nextSequence;
+		if (cycleIds.length < cycle.size())
+			cycleIds = new int[Math.max(cycle.size(), cycleIds.length * 2)];
+		long cycleLength = CYCLE_HEADER;
+		for (int i = 0; i < cycle.size(); i++) {
+			int id = idOf(cycle.getName(i), cycle.getUnits(i));
+			cycleIds[i] = id;
+			lastUsed[id] = sequence;
+			cycleLength += cycle.getCount(i) != 0 ? VALUE_BYTES + AGGREGATE_BYTES : VALUE_BYTES;
+		}
+
+		/* evicting a name record leaves more names to define, until the room found is enough */
+		byte[][] encoded;
+		int namesLength;
+		int start;
+		while (true) {
+			encoded = encodeUndefined();
+			namesLength = 0;
+			if (encoded.length > 0) {
+				namesLength = NAMES_HEADER;
+				for (int i = 0; i < encoded.length; i += 2)
+					namesLength += 4 + 2 + encoded[i].length + 2 + encoded[i + 1].length;
+			}
+			if (namesLength + cycleLength > capacity - HEADER)
+				return -1;
+			int pending = undefinedCount;
+			start = reserve(namesLength + (int) cycleLength);
+			if (undefinedCount == pending)
+				break;
+		}
+
+		int position = start;
+		if (namesLength > 0) {
+			position = writeNames(position, namesLength, encoded);
+			records++;
+		}
+		buffer.putInt(position, (int) cycleLength);
+		buffer.put(position + 4, CYCLE);
+		buffer.putLong(position + RECORD_HEADER, sequence);
+		buffer.putLong(position + RECORD_HEADER + 8, timeMillis);
+		buffer.putInt(position + RECORD_HEADER + 16, cycle.size());
+		position += CYCLE_HEADER;
+		for (int i = 0; i < cycle.size(); i++) {
+			int samples = cycle.getCount(i);
+			buffer.putInt(position, cycleIds[i]);
+			buffer.put(position + 4, (byte) (samples == 0 ? 0 : 1));
+			buffer.putDouble(position + 5, cycle.getValue(i));
+			position += VALUE_BYTES;
+			if (samples != 0) {
+				buffer.putInt(position, samples);
+				buffer.putDouble(position + 4, cycle.getMin(i));
+				buffer.putDouble(position + 12, cycle.getMax(i));
+				buffer.putDouble(position + 20, cycle.getSumOfSquares(i));
+				position += AGGREGATE_BYTES;
+			}
+		}
+		tail = position;
+		records++;
+		cycles++;
+		nextSequence++;
+		/* the header is written last, a record cut short by a crash is not referenced */
+		writeState();
+		return sequence;
+	}
+
+	/**
+	 * Method to encode the names left to define: ids no live cycle uses
+	 * anymore are freed, the others encoded as name and units pairs. Names
+	 * are only encoded when first seen or when their record was evicted.
+	 */
+	private byte[][] encodeUndefined() {
+		long oldest = nextSequence - cycles;
+		int kept = 0;
+		for (int i = 0; i < undefinedCount; i++) {
+			int id = undefined[i];
+			if (defined[id] || names[id] == null)
+				continue;
+			if (lastUsed[id] < oldest) {
+				Integer current = ids.get(names[id]);
+				if (current != null && current == id)
+					ids.remove(names[id]);
+				names[id] = null;
+				units[id] = null;
+				lastUsed[id] = -1;
+				pushFree(id);
+				continue;
+			}
+			undefined[kept++] = id;
+		}
+		undefinedCount = kept;
+		if (kept == 0)
+			return NO_NAMES;
+		byte[][] encoded = new byte[kept * 2][];
+		for (int i = 0; i < kept; i++) {
+			encoded[i * 2] = utf(names[undefined[i]]);
+			encoded[i * 2 + 1] = utf(units[undefined[i]]);
+		}
+		return encoded;
+	}
+
+	private int writeNames(int position, int length, byte[][] encoded) {
+		buffer.putInt(position, length);
+		buffer.put(position + 4, NAMES);
+		buffer.putInt(position + RECORD_HEADER, undefinedCount);
+		position += NAMES_HEADER;
+		for (int i = 0; i < undefinedCount; i++) {
+			buffer.putInt(position, undefined[i]);
+			position = putUtf(position + 4, encoded[i * 2]);
+			position = putUtf(position, encoded[i * 2 + 1]);
+			defined[undefined[i]] = true;
+		}
+		undefinedCount = 0;
+		return position;
+	}
+
+	private static byte[] utf(String value) {
+		byte[] bytes = value == null ? new byte[0] : value.getBytes(UTF8);
+		if (bytes.length > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Metric name too long: " + value);
+		return bytes;
+	}
+
+	private int putUtf(int position, byte[] bytes) {
+		buffer.putShort(position, (short) bytes.length);
+		for (int i = 0; i < bytes.length; i++)
+			buffer.put(position + 2 + i, bytes[i]);
+		return position + 2 + bytes.length;
+	}
+
+	/**
+	 * Method to find room for records at the tail, evicting from the head.
+	 *
+	 * @return int start of the records
+	 */
+	private int reserve(int length) {
+		while (true) {
+			if (records == 0) {
+				head = HEADER;
+				tail = HEADER;
+				return HEADER;
+			}
+			if (tail > head) {
+				if (capacity - tail >= length)
+					return tail;
+				if (head - HEADER >= length) {
+					if (capacity - tail >= 4)
+						buffer.putInt(tail, WRAP);
+					return HEADER;
+				}
+			} else if (head - tail >= length) {
+				return tail;
+			}
+			evictHead();
+		}
+	}
+
+	private void evictHead() {
+		if (buffer.get(head + 4) == NAMES) {
+			int entries = buffer.getInt(head + RECORD_HEADER);
+			int offset = head + NAMES_HEADER;
+			for (int i = 0; i < entries; i++) {
+				int id = buffer.getInt(offset);
+				defined[id] = false;
+				pushUndefined(id);
+				offset += 4;
+				offset += 2 + buffer.getShort(offset);
+				offset += 2 + buffer.getShort(offset);
+			}
+		} else {
+			cycles--;
+		}
+		head = start(head + buffer.getInt(head));
+		records--;
+	}
+
+	/**
+	 * Method to read the cycles from the oldest, without removing them.
+	 *
+	 * @param maxCycles
+	 *            Maximum number of cycles to read
+	 * @param reader
+	 *            Receives each cycle
+	 * @return int number of cycles read
+	 */
+	public synchronized int read(int maxCycles, CycleReader reader) {
+		MetricBuffer metrics = new MetricBuffer();
+		int position = head;
+		int read = 0;
+		for (int i = 0; i < records && read < maxCycles; i++) {
+			position = start(position);
+			int length = buffer.getInt(position);
+			if (buffer.get(position + 4) == CYCLE) {
+				metrics.clear();
+				int size = buffer.getInt(position + RECORD_HEADER + 16);
+				int offset = position + CYCLE_HEADER;
+				for (int j = 0; j < size; j++) {
+					int id = buffer.getInt(offset);
+					double value = buffer.getDouble(offset + 5);
+					if (buffer.get(offset + 4) != 0) {
+						offset += VALUE_BYTES;
+						metrics.add(names[id], units[id], buffer.getInt(offset), value, buffer.getDouble(offset + 4),
+								buffer.getDouble(offset + 12), buffer.getDouble(offset + 20));
+						offset += AGGREGATE_BYTES;
+					} else {
+						metrics.add(names[id], units[id], value);
+						offset += VALUE_BYTES;
+					}
+				}
+				reader.cycle(buffer.getLong(position + RECORD_HEADER), buffer.getLong(position + RECORD_HEADER + 8),
+						metrics);
+				read++;
+			}
+			position += length;
+		}
+		return read;
+	}
+
+	private String getUtf(int position) {
+		byte[] bytes = new byte[buffer.getShort(position)];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(position + 2 + i);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * @return int number of journaled cycles
+	 */
+	public synchronized int size() {
+		return cycles;
+	}
+
+	/**
+	 * @return long wall-clock time of the oldest cycle, 0 if the journal is
+	 *         empty
+	 */
+	public synchronized long getOldestTimeMillis() {
+		int position = head;
+		for (int i = 0; i < records; i++) {
+			position = start(position);
+			if (buffer.get(position + 4) == CYCLE)
+				return buffer.getLong(position + RECORD_HEADER + 8);
+			position += buffer.getInt(position);
+		}
+		return 0;
+	}
+}
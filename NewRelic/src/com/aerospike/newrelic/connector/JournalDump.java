@@ -0,0 +1,63 @@
+package com.aerospike.newrelic.connector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Command line tool printing the cycles of a journal file, one metric per
+ * line, so that the cycles New Relic did not receive can be recovered:
+ *
+ * <pre>
+ * java -cp "plugin.jar:lib/*" com.aerospike.newrelic.connector.JournalDump journal_file journal_max_mb
+ * </pre>
+ *
+ * A line is the time of the cycle, the metric name, its units and value, and
+ * for an aggregate the count, min, max and sum of squares, separated by tabs.
+ *
+ */
+public class JournalDump {
+
+	/**
+	 * Entry point main() method
+	 * 
+	 * @param args
+	 *            journal file and its size in megabytes (journal_max_mb)
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: JournalDump <journal_file> <journal_max_mb>");
+			System.exit(-1);
+		}
+		File file = new File(args[0]);
+		if (!file.isFile() || file.length() != Long.parseLong(args[1]) * 1048576L) {
+			/* opening a file of another size would clear it */
+			System.err.println("No journal of " + args[1] + " MB: " + file);
+			System.exit(-1);
+		}
+		dump(new CycleJournal(file, file.length()), System.out);
+	}
+
+	/**
+	 * Method to print all cycles of a journal, the oldest first.
+	 */
+	public static void dump(CycleJournal journal, final PrintStream out) {
+		final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+		journal.read(Integer.MAX_VALUE, new CycleJournal.CycleReader() {
+			@Override
+			public void cycle(long sequence, long timeMillis, MetricBuffer metrics) {
+				String time = format.format(new Date(timeMillis));
+				for (int i = 0; i < metrics.size(); i++) {
+					out.print(time + "\t" + metrics.getName(i) + "\t" + metrics.getUnits(i) + "\t" + metrics.getValue(i));
+					if (metrics.getCount(i) != 0)
+						out.print("\t" + metrics.getCount(i) + "\t" + metrics.getMin(i) + "\t" + metrics.getMax(i) + "\t"
+								+ metrics.getSumOfSquares(i));
+					out.println();
+				}
+			}
+		});
+		out.flush();
+	}
+}
@@ -0,0 +1,156 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running aggregates (count, total, min, max, sum of squares) of the samples
+ * of one metric family, the shape New Relic accepts for a metric. Kept in
+ * parallel primitive arrays indexed by metric name, so that a sample costs no
+ * allocation once the names are known.
+ *
+ */
+public class MetricAggregates {
+
+	private final Map<String, Integer> index = new HashMap<String, Integer>();
+	private String[] names = new String[64];
+	private String[] units = new String[64];
+	private int[] counts = new int[64];
+	private double[] totals = new double[64];
+	private double[] mins = new double[64];
+	private double[] maxs = new double[64];
+	private double[] sumsOfSquares = new double[64];
+	private int size;
+
+	/**
+	 * Method to add a sample of a metric.
+	 */
+	public void add(String name, String unit, double value) {
+		Integer i = index.get(name);
+		if (i == null) {
+			i = size;
+			append(name, unit);
+			index.put(name, i);
+		}
+		if (counts[i] == 0) {
+			mins[i] = value;
+			maxs[i] = value;
+		} else {
+			mins[i] = Math.min(mins[i], value);
+			maxs[i] = Math.max(maxs[i], value);
+		}
+		counts[i]++;
+		totals[i] += value;
+		sumsOfSquares[i] += value * value;
+	}
+
+	private void append(String name, String unit) {
+		if (size == names.length) {
+			int capacity = size * 2;
+			names = Arrays.copyOf(names, capacity);
+			units = Arrays.copyOf(units, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			totals = Arrays.copyOf(totals, capacity);
+			mins = Arrays.copyOf(mins, capacity);
+			maxs = Arrays.copyOf(maxs, capacity);
+			sumsOfSquares = Arrays.copyOf(sumsOfSquares, capacity);
+		}
+		names[size] = name;
+		units[size] = unit;
+		counts[size] = 0;
+		totals[size] = 0;
+		sumsOfSquares[size] = 0;
+		size++;
+	}
+
+	/**
+	 * @return int number of metrics, including those without samples since the
+	 *         last clear
+	 */
+	public int size() {
+		return size;
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	public String getUnits(int index) {
+		return units[index];
+	}
+
+	public int getCount(int index) {
+		return counts[index];
+	}
+
+	/**
+	 * @return double sum of the samples
+	 */
+	public double getTotal(int index) {
+		return totals[index];
+	}
+
+	public double getMin(int index) {
+		return mins[index];
+	}
+
+	public double getMax(int index) {
+		return maxs[index];
+	}
+
+	public double getSumOfSquares(int index) {
+		return sumsOfSquares[index];
+	}
+
+	/**
+	 * Method to drop the metrics whose name contains a fragment, e.g. the
+	 * /host/ of a node that left the cluster.
+	 *
+	 * @param fragment
+	 *            Part of the metric name
+	 */
+	public void removeContaining(String fragment) {
+		compact(fragment);
+	}
+
+	/**
+	 * Method to start a new interval. Metrics without samples in the interval
+	 * that ends are dropped, the others keep their slot.
+	 */
+	public void clear() {
+		compact(null);
+		Arrays.fill(counts, 0, size, 0);
+		Arrays.fill(totals, 0, size, 0);
+		Arrays.fill(sumsOfSquares, 0, size, 0);
+	}
+
+	/**
+	 * Method to drop the metrics without samples, or whose name contains a
+	 * fragment if one is given.
+	 */
+	private void compact(String fragment) {
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			boolean drop = fragment == null ? counts[i] == 0 : names[i].contains(fragment);
+			if (drop) {
+				index.remove(names[i]);
+				continue;
+			}
+			if (kept != i) {
+				names[kept] = names[i];
+				units[kept] = units[i];
+				counts[kept] = counts[i];
+				totals[kept] = totals[i];
+				mins[kept] = mins[i];
+				maxs[kept] = maxs[i];
+				sumsOfSquares[kept] = sumsOfSquares[i];
+				index.put(names[kept], kept);
+			}
+			kept++;
+		}
+		Arrays.fill(names, kept, size, null);
+		Arrays.fill(units, kept, size, null);
+		size = kept;
+	}
+}
@@ -0,0 +1,128 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.Arrays;
+
+/**
+ * Metrics as reported (name, units, value, and count, min, max and sum of
+ * squares for aggregates), kept in parallel arrays so that large clusters do
+ * not cost an object per metric. Used to report the last values of a family
+ * again on cycles where it is not collected, and to hand a collected cycle
+ * over to the publisher. The arrays are kept across clear() so that a reused
+ * buffer does not allocate once it reached the size of a cycle.
+ *
+ */
+public class MetricBuffer {
+
+	private String[] names = new String[64];
+	private String[] units = new String[64];
+	private double[] values = new double[64];
+	private int[] counts = new int[64];
+	private double[] mins = new double[64];
+	private double[] maxs = new double[64];
+	private double[] sumsOfSquares = new double[64];
+	private int size;
+
+	/**
+	 * Method to add a metric.
+	 */
+	public void add(String name, String unit, double value) {
+		add(name, unit, 0, value, 0, 0, 0);
+	}
+
+	/**
+	 * Method to add an aggregated metric.
+	 *
+	 * @param count
+	 *            Number of samples, 0 for a single value
+	 * @param value
+	 *            Single value, or total of the samples
+	 */
+	public void add(String name, String unit, int count, double value, double min, double max, double sumOfSquares) {
+		if (size == names.length) {
+			int capacity = size * 2;
+			names = Arrays.copyOf(names, capacity);
+			units = Arrays.copyOf(units, capacity);
+			values = Arrays.copyOf(values, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			mins = Arrays.copyOf(mins, capacity);
+			maxs = Arrays.copyOf(maxs, capacity);
+			sumsOfSquares = Arrays.copyOf(sumsOfSquares, capacity);
+		}
+		names[size] = name;
+		units[size] = unit;
+		values[size] = value;
+		counts[size] = count;
+		mins[size] = min;
+		maxs[size] = max;
+		sumsOfSquares[size] = sumOfSquares;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	public String getUnits(int index) {
+		return units[index];
+	}
+
+	public double getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * @return int number of samples of an aggregated metric, 0 for a single
+	 *         value
+	 */
+	public int getCount(int index) {
+		return counts[index];
+	}
+
+	public double getMin(int index) {
+		return mins[index];
+	}
+
+	public double getMax(int index) {
+		return maxs[index];
+	}
+
+	public double getSumOfSquares(int index) {
+		return sumsOfSquares[index];
+	}
+
+	/**
+	 * Method to drop the metrics whose name contains a fragment, e.g. the
+	 * /host/ of a node that left the cluster.
+	 *
+	 * @param fragment
+	 *            Part of the metric name
+	 */
+	public void removeContaining(String fragment) {
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			if (!names[i].contains(fragment)) {
+				names[kept] = names[i];
+				units[kept] = units[i];
+				values[kept] = values[i];
+				counts[kept] = counts[i];
+				mins[kept] = mins[i];
+				maxs[kept] = maxs[i];
+				sumsOfSquares[kept] = sumsOfSquares[i];
+				kept++;
+			}
+		}
+		Arrays.fill(names, kept, size, null);
+		Arrays.fill(units, kept, size, null);
+		size = kept;
+	}
+
+	public void clear() {
+		Arrays.fill(names, 0, size, null);
+		Arrays.fill(units, 0, size, null);
+		size = 0;
+	}
+}
@@ -0,0 +1,30 @@
+package com.aerospike.newrelic.connector;
+
+/**
+ * Families of metrics that can be polled on their own interval (poll_intervals
+ * in plugin.json). The name is the key in plugin.json and the phase name in
+ * the plugin statistics.
+ *
+ */
+public enum MetricFamily {
+	/** node statistics (nodeStats) */
+	NODE_STATS("node_stats"),
+	/** node and namespace throughput and rates, cluster-wide tps */
+	THROUGHPUT("throughput"),
+	/** node and cluster-wide latency */
+	LATENCY("latency"),
+	/** namespace statistics, including their configuration */
+	NAMESPACE("namespace"),
+	/** cluster size, memory and disk */
+	SUMMARY("summary");
+
+	private final String key;
+
+	private MetricFamily(String key) {
+		this.key = key;
+	}
+
+	public String getKey() {
+		return key;
+	}
+}
@@ -0,0 +1,120 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.aerospike.client.cluster.Node;
+
+/**
+ * Namespaces configured on each node, keyed by node name. An entry is only
+ * refreshed when the node is new or was replaced (left and rejoined the
+ * cluster), or when its partition generation changed.
+ *
+ */
+public class NamespaceCatalogue {
+
+	/** Partition generation of an entry whose generation could not be read */
+	public static final long UNKNOWN_GENERATION = -1;
+
+	private static class Entry {
+		private final Node node;
+		private final long generation;
+		private final String[] namespaces;
+
+		private Entry(Node node, long generation, String[] namespaces) {
+			this.node = node;
+			this.generation = generation;
+			this.namespaces = namespaces;
+		}
+	}
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Method to get the cached namespaces of a node.
+	 *
+	 * @param node
+	 *            Aerospike node
+	 * @return String[] namespaces or null if the node is not catalogued yet or
+	 *         was replaced
+	 */
+	public String[] get(Node node) {
+		Entry entry = entries.get(node.getName());
+		return entry != null && entry.node == node ? entry.namespaces.clone() : null;
+	}
+
+	/**
+	 * Method to check if the cached namespaces of a node are still valid.
+	 *
+	 * @param node
+	 *            Aerospike node
+	 * @param generation
+	 *            Partition generation just read from the node
+	 * @return boolean true if the node and its partition generation did not
+	 *         change since the namespaces were read
+	 */
+	public boolean isCurrent(Node node, long generation) {
+		Entry entry = entries.get(node.getName());
+		return entry != null && entry.node == node && generation != UNKNOWN_GENERATION
+				&& entry.generation == generation;
+	}
+
+	/**
+	 * Method to store the namespaces of a node.
+	 *
+	 * @param node
+	 *            Aerospike node
+	 * @param generation
+	 *            Partition generation at which the namespaces were read
+	 * @param namespaces
+	 *            Namespaces of the node
+	 */
+	public void update(Node node, long generation, String[] namespaces) {
+		entries.put(node.getName(), new Entry(node, generation, namespaces.clone()));
+	}
+
+	/**
+	 * Method to drop the entries of nodes no longer in the cluster.
+	 *
+	 * @param nodes
+	 *            Current nodes of the cluster
+	 */
+	public void retain(Node[] nodes) {
+		Set<String> names = new HashSet<String>();
+		for (Node node : nodes)
+			names.add(node.getName());
+		entries.keySet().retainAll(names);
+	}
+
+	/**
+	 * Method to drop the entry of a node.
+	 *
+	 * @param nodeName
+	 *            Aerospike node name
+	 */
+	public void evict(String nodeName) {
+		entries.remove(nodeName);
+	}
+
+	/**
+	 * Method to get the namespaces of the cluster, i.e. of any of the given
+	 * nodes, so that a namespace configured on some nodes only is included.
+	 *
+	 * @param nodes
+	 *            Current nodes of the cluster
+	 * @return Set<String> namespaces in the order first seen
+	 */
+	public Set<String> union(Node[] nodes) {
+		Set<String> namespaces = new LinkedHashSet<String>();
+		for (Node node : nodes) {
+			String[] nodeNamespaces = get(node);
+			if (nodeNamespaces != null)
+				Collections.addAll(namespaces, nodeNamespaces);
+		}
+		return namespaces;
+	}
+}
@@ -0,0 +1,134 @@
+package com.aerospike.newrelic.connector;
+
+import com.aerospike.client.cluster.Node;
+
+/**
+ * Server version of a node and the features derived from it. Instances are
+ * cached per node by {@link Base} and rebuilt when the client replaces the
+ * node object, i.e. when the node left and rejoined the cluster, or when the
+ * partition generation of the node changed (a restart or upgrade the client
+ * did not notice keeps the node object).
+ *
+ */
+public class NodeCapabilities {
+
+	private final Node node;
+	private final long generation;
+	private final String build;
+	private final int majorVersion;
+	private final int minorVersion;
+	private final boolean namespaceStats;
+	private final boolean namespacedLatency;
+	private final boolean latencies;
+
+	/**
+	 * Constructor for NodeCapabilities
+	 *
+	 * @param node
+	 *            Aerospike node the build was read from
+	 * @param build
+	 *            Server build string (e.g. 3.9.1)
+	 */
+	public NodeCapabilities(Node node, String build) {
+		this(node, build, NamespaceCatalogue.UNKNOWN_GENERATION);
+	}
+
+	/**
+	 * Constructor for NodeCapabilities
+	 *
+	 * @param node
+	 *            Aerospike node the build was read from
+	 * @param build
+	 *            Server build string (e.g. 3.9.1)
+	 * @param generation
+	 *            Partition generation of the node when the build was read
+	 */
+	public NodeCapabilities(Node node, String build, long generation) {
+		this.node = node;
+		this.generation = generation;
+		this.build = build;
+		String[] ver = build.trim().split("[.]");
+		this.majorVersion = Integer.parseInt(ver[0]);
+		this.minorVersion = ver.length > 1 ? Integer.parseInt(ver[1]) : 0;
+
+		/*
+		 * 3.9 moved read/write, memory and disk stats from node level to
+		 * namespace level and started to report latency per namespace
+		 * ({ns}-read).
+		 */
+		boolean newAsd = majorVersion > 3 || (majorVersion == 3 && minorVersion >= 9);
+		this.namespaceStats = newAsd;
+		this.namespacedLatency = newAsd;
+
+		/* 5.1 replaced latency: by the power of two histograms of latencies: */
+		this.latencies = majorVersion > 5 || (majorVersion == 5 && minorVersion >= 1);
+	}
+
+	/**
+	 * Method to check if these capabilities still describe the given node.
+	 *
+	 * @param node
+	 *            Aerospike node currently known to the client
+	 * @return boolean true if the node was not replaced since the build was
+	 *         read
+	 */
+	public boolean isValidFor(Node node) {
+		return this.node == node;
+	}
+
+	/**
+	 * Method to check if the build was read at the given partition generation.
+	 *
+	 * @param generation
+	 *            Partition generation just read from the node
+	 * @return boolean true if the generation did not change, or one of them is
+	 *         unknown
+	 */
+	public boolean isCurrent(long generation) {
+		return this.generation == generation || this.generation == NamespaceCatalogue.UNKNOWN_GENERATION
+				|| generation == NamespaceCatalogue.UNKNOWN_GENERATION;
+	}
+
+	/**
+	 * @return long partition generation the build was read at
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	public String getBuild() {
+		return build;
+	}
+
+	public int getMajorVersion() {
+		return majorVersion;
+	}
+
+	public int getMinorVersion() {
+		return minorVersion;
+	}
+
+	/**
+	 * @return boolean true if read/write, memory and disk stats are reported at
+	 *         namespace level (ASD >= 3.9)
+	 */
+	public boolean hasNamespaceStats() {
+		return namespaceStats;
+	}
+
+	/**
+	 * @return boolean true if latency keys are namespaced as {ns}-read (ASD >=
+	 *         3.9)
+	 */
+	public boolean hasNamespacedLatency() {
+		return namespacedLatency;
+	}
+
+	/**
+	 * @return boolean true if latency is read with the latencies: command (ASD
+	 *         >= 5.1)
+	 */
+	public boolean hasLatencies() {
+		return latencies;
+	}
+}
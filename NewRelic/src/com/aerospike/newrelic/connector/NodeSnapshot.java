@@ -0,0 +1,102 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.aerospike.client.cluster.Node;
+import com.aerospike.newrelic.utils.StatTable;
+
+/**
+ * Immutable view of everything a single poll cycle needs from one Aerospike
+ * node. It is filled from one pipelined info request so that the report
+ * methods never have to go back to the node.
+ *
+ */
+public class NodeSnapshot {
+
+	private final Node node;
+	private final NodeCapabilities capabilities;
+	private final String[] namespaces;
+	private final StatTable nodeStats;
+	private final Map<String, StatTable> namespaceStats;
+	private final String latency;
+	private final long nanoTime;
+
+	/**
+	 * Constructor for NodeSnapshot
+	 *
+	 * @param node
+	 *            Aerospike node the snapshot was taken from
+	 * @param capabilities
+	 *            Server version and features of the node
+	 * @param namespaces
+	 *            Namespaces configured on the node
+	 * @param nodeStats
+	 *            Parsed node statistics
+	 * @param namespaceStats
+	 *            Parsed namespace statistics keyed by namespace name
+	 * @param latency
+	 *            Raw response of the latency command
+	 * @param nanoTime
+	 *            System.nanoTime() at which the response was received
+	 */
+	public NodeSnapshot(Node node, NodeCapabilities capabilities, String[] namespaces, StatTable nodeStats,
+			Map<String, StatTable> namespaceStats, String latency, long nanoTime) {
+		this.node = node;
+		this.capabilities = capabilities;
+		this.namespaces = namespaces;
+		this.nodeStats = nodeStats;
+		this.namespaceStats = Collections.unmodifiableMap(new HashMap<String, StatTable>(namespaceStats));
+		this.latency = latency;
+		this.nanoTime = nanoTime;
+	}
+
+	public Node getNode() {
+		return node;
+	}
+
+	public NodeCapabilities getCapabilities() {
+		return capabilities;
+	}
+
+	/**
+	 * Getter method for namespaces of the node.
+	 *
+	 * @return String[] copy of the namespace names
+	 */
+	public String[] getNamespaces() {
+		return namespaces.clone();
+	}
+
+	/**
+	 * Getter method for node statistics. The table must not be modified.
+	 *
+	 * @return StatTable node statistics
+	 */
+	public StatTable getNodeStatistics() {
+		return nodeStats;
+	}
+
+	/**
+	 * Getter method for namespace statistics. The table must not be modified.
+	 *
+	 * @param namespace
+	 *            Namespace name
+	 * @return StatTable statistics or null if namespace is not known
+	 */
+	public StatTable getNamespaceStatistics(String namespace) {
+		return namespaceStats.get(namespace);
+	}
+
+	public String getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return long System.nanoTime() at which the snapshot was taken
+	 */
+	public long getNanoTime() {
+		return nanoTime;
+	}
+}
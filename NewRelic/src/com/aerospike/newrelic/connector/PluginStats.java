@@ -0,0 +1,243 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aerospike.client.cluster.Node;
+import com.aerospike.newrelic.utils.LatencyBuckets;
+
+/**
+ * Performance of the plugin itself during one poll cycle: cycle and phase
+ * times, info round trips per node, parse time, metrics emitted and errors.
+ * Cycle and phase times, metrics emitted and stale nodes are reset at the
+ * start of every cycle. Info round trips, parse time and errors are reset
+ * once published, so that the samples taken between two cycles are counted
+ * with the next one.
+ *
+ * Phase times, metric and error counts are not synchronized: they are only
+ * touched with the agent's cycle lock held, by whichever thread runs the
+ * cycle (polling or pipeline thread), the sampler, the connection task or
+ * close(). Info and parse times are recorded by the collector threads.
+ *
+ */
+public class PluginStats {
+
+	/* round trip time buckets of info requests, in microseconds */
+	public static final LatencyBuckets RTT_BUCKETS = LatencyBuckets.of("us",
+			new long[] { 250, 500, 1000, 2000, 4000, 8000, 16000, 64000, 256000, 1024000 });
+
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+	private final Map<String, Long> errors = new LinkedHashMap<String, Long>();
+	private final ConcurrentMap<String, NodeInfoStats> nodes = new ConcurrentHashMap<String, NodeInfoStats>();
+	private final AtomicLong parseNanos = new AtomicLong();
+	private long cycleStart;
+	private long cycleNanos;
+	private long metricsEmitted;
+	private final Set<String> staleNodes = new HashSet<String>();
+
+	/**
+	 * Info requests sent to one node during the cycle.
+	 */
+	public static class NodeInfoStats {
+		private final String host;
+		private long roundTrips;
+		private long bytesReceived;
+		private final long[] rtt = new long[RTT_BUCKETS.size()];
+
+		NodeInfoStats(String host) {
+			this.host = host;
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		public synchronized long getRoundTrips() {
+			return roundTrips;
+		}
+
+		public synchronized long getBytesReceived() {
+			return bytesReceived;
+		}
+
+		/**
+		 * @return long number of round trips in a bucket of
+		 *         {@link PluginStats#RTT_BUCKETS}
+		 */
+		public synchronized long getRttCount(int bucket) {
+			return rtt[bucket];
+		}
+
+		synchronized void record(long nanos, long bytes) {
+			roundTrips++;
+			bytesReceived += bytes;
+			long micros = nanos / 1000;
+			int bucket = 0;
+			while (bucket < rtt.length - 1 && micros >= RTT_BUCKETS.getUpperBound(bucket))
+				bucket++;
+			rtt[bucket]++;
+		}
+
+		synchronized void reset() {
+			roundTrips = 0;
+			bytesReceived = 0;
+			for (int i = 0; i < rtt.length; i++)
+				rtt[i] = 0;
+		}
+	}
+
+	/**
+	 * Method to reset the values of the previous cycle and start timing a new
+	 * one.
+	 */
+	public void startCycle() {
+		cycleStart = System.nanoTime();
+		cycleNanos = 0;
+		metricsEmitted = 0;
+		staleNodes.clear();
+		phaseNanos.clear();
+	}
+
+	/**
+	 * Method to reset the values accumulated since they were last published:
+	 * info round trips, parse time and errors, of the cycle and of the samples
+	 * taken before it.
+	 */
+	public void published() {
+		errors.clear();
+		parseNanos.set(0);
+		for (NodeInfoStats stats : nodes.values())
+			stats.reset();
+	}
+
+	/**
+	 * Method to stop timing the cycle.
+	 */
+	public void endCycle() {
+		cycleNanos = System.nanoTime() - cycleStart;
+	}
+
+	/**
+	 * Method to add the time spent in a phase since startNanos. A phase may be
+	 * recorded several times per cycle (once per node).
+	 *
+	 * @param phase
+	 *            Phase name
+	 * @param startNanos
+	 *            System.nanoTime() at the start of the phase
+	 */
+	public void addPhaseTime(String phase, long startNanos) {
+		long elapsed = System.nanoTime() - startNanos;
+		Long total = phaseNanos.get(phase);
+		phaseNanos.put(phase, total == null ? elapsed : total + elapsed);
+	}
+
+	/**
+	 * Method to record one info round trip to a node.
+	 *
+	 * @param node
+	 *            Aerospike node
+	 * @param nanos
+	 *            Round trip time
+	 * @param bytes
+	 *            Size of the response
+	 */
+	public void recordInfo(Node node, long nanos, long bytes) {
+		NodeInfoStats stats = nodes.get(node.getName());
+		if (stats == null) {
+			NodeInfoStats created = new NodeInfoStats(node.getHost().name);
+			stats = nodes.putIfAbsent(node.getName(), created);
+			if (stats == null)
+				stats = created;
+		}
+		stats.record(nanos, bytes);
+	}
+
+	/**
+	 * Method to drop the info statistics of a node that left the cluster.
+	 *
+	 * @param nodeId
+	 *            Aerospike node id
+	 */
+	public void evictNode(String nodeId) {
+		nodes.remove(nodeId);
+	}
+
+	public void addParseTime(long nanos) {
+		parseNanos.addAndGet(nanos);
+	}
+
+	public void metricEmitted() {
+		metricsEmitted++;
+	}
+
+	/**
+	 * Method to count a node left out of the cycle, once per cycle.
+	 *
+	 * @param nodeId
+	 *            Aerospike node id
+	 */
+	public void nodeStale(String nodeId) {
+		staleNodes.add(nodeId);
+	}
+
+	/**
+	 * @return int number of nodes left out of the cycle (deadline missed or
+	 *         failed)
+	 */
+	public int getStaleNodes() {
+		return staleNodes.size();
+	}
+
+	/**
+	 * Method to count an error by exception type.
+	 *
+	 * @param throwable
+	 *            Error caught by the agent
+	 */
+	public void recordError(Throwable throwable) {
+		String type = throwable.getClass().getSimpleName();
+		Long count = errors.get(type);
+		errors.put(type, count == null ? 1 : count + 1);
+	}
+
+	public long getCycleNanos() {
+		return cycleNanos;
+	}
+
+	/**
+	 * @return Map<String, Long> time spent per phase in nanoseconds, in the
+	 *         order the phases ran
+	 */
+	public Map<String, Long> getPhaseNanos() {
+		return phaseNanos;
+	}
+
+	public long getParseNanos() {
+		return parseNanos.get();
+	}
+
+	public long getMetricsEmitted() {
+		return metricsEmitted;
+	}
+
+	/**
+	 * @return Map<String, Long> number of errors per exception type
+	 */
+	public Map<String, Long> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return Collection<NodeInfoStats> info statistics of the nodes
+	 */
+	public Collection<NodeInfoStats> getNodes() {
+		return nodes.values();
+	}
+}
@@ -0,0 +1,68 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * Decides which metric families are collected in a poll cycle. The runner
+ * drives the cycles on its own fixed interval; a family with a longer interval
+ * is only due on the cycles where its interval elapsed, a family without an
+ * interval (or a shorter one) on every cycle.
+ *
+ * The cycle length is measured between calls, a family is due once its
+ * interval is reached within half a cycle, so that an interval of 10 cycles
+ * runs every 10th cycle despite jitter.
+ *
+ */
+public class PollScheduler {
+
+	private final Map<MetricFamily, Long> intervalNanos = new EnumMap<MetricFamily, Long>(MetricFamily.class);
+	private final Map<MetricFamily, Long> lastRun = new EnumMap<MetricFamily, Long>(MetricFamily.class);
+	private long lastCycle;
+
+	/**
+	 * Constructor for PollScheduler
+	 *
+	 * @param intervalSeconds
+	 *            Interval of the families polled less often than every
+	 *            cycle, in seconds
+	 */
+	public PollScheduler(Map<MetricFamily, Integer> intervalSeconds) {
+		for (Map.Entry<MetricFamily, Integer> entry : intervalSeconds.entrySet()) {
+			if (entry.getValue() > 0)
+				intervalNanos.put(entry.getKey(), entry.getValue() * 1000000000L);
+		}
+	}
+
+	/**
+	 * Method to start a cycle and get the families due in it. The returned
+	 * families are considered collected at the given time.
+	 *
+	 * @param now
+	 *            System.nanoTime() of the cycle start
+	 * @return EnumSet<MetricFamily> families to collect in this cycle
+	 */
+	public synchronized EnumSet<MetricFamily> due(long now) {
+		long cycle = lastCycle == 0 ? 0 : now - lastCycle;
+		lastCycle = now;
+		EnumSet<MetricFamily> due = EnumSet.noneOf(MetricFamily.class);
+		for (MetricFamily family : MetricFamily.values()) {
+			Long interval = intervalNanos.get(family);
+			Long last = lastRun.get(family);
+			if (interval == null || last == null || now - last >= interval - cycle / 2) {
+				due.add(family);
+				lastRun.put(family, now);
+			}
+		}
+		return due;
+	}
+
+	/**
+	 * @return long interval of a family in nanoseconds, 0 for every cycle
+	 */
+	public long getIntervalNanos(MetricFamily family) {
+		Long interval = intervalNanos.get(family);
+		return interval == null ? 0 : interval;
+	}
+}
@@ -0,0 +1,286 @@
+package com.aerospike.newrelic.connector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aerospike.newrelic.connector.CollectionState.NodeState;
+import com.aerospike.newrelic.connector.RateEngine.CounterState;
+import com.aerospike.newrelic.utils.StatRegistry;
+import com.newrelic.metrics.publish.util.Logger;
+
+/**
+ * Checkpoint of the counter state of the nodes (previous value and time of
+ * every rate-tracked counter), so that the first cycle after a restart
+ * already reports rates. Stats are stored by name, times as wall-clock
+ * microseconds since System.nanoTime() does not survive the process:
+ *
+ * <pre>
+ * int magic | int version | long saved at millis | int nodes
+ * per node: utf node id | counters | int namespaces | per namespace: utf namespace | counters
+ * counters: int count | per counter: utf stat name | double value | long time micros
+ * </pre>
+ *
+ * The loaded counters are kept by node id and restored when the node joins,
+ * so nodes the client discovers after the connection are restored too; they
+ * are saved again until then, and dropped once stale. The file is written to
+ * a temporary file first and atomically moved over the previous one, so a
+ * crash while saving keeps the previous checkpoint.
+ *
+ */
+public class RateCheckpoint {
+
+	private static final Logger logger = Logger.getLogger(RateCheckpoint.class);
+
+	private static final int MAGIC = 0x41535243;
+	private static final int VERSION = 1;
+
+	/* a counter as saved: stat name, value and wall-clock time */
+	private static final class SavedCounter {
+		final String name;
+		final double value;
+		final long timeMicros;
+
+		SavedCounter(String name, double value, long timeMicros) {
+			this.name = name;
+			this.value = value;
+			this.timeMicros = timeMicros;
+		}
+	}
+
+	/* counters of a node read from the file, not restored yet */
+	private static final class SavedNode {
+		List<SavedCounter> counters;
+		final Map<String, List<SavedCounter>> namespaces = new LinkedHashMap<String, List<SavedCounter>>();
+	}
+
+	private final File file;
+	private final long maxAgeMillis;
+	private final Map<String, SavedNode> pending = new HashMap<String, SavedNode>();
+
+	/**
+	 * Constructor for RateCheckpoint
+	 *
+	 * @param file
+	 *            Checkpoint file
+	 * @param maxAgeMillis
+	 *            Age beyond which a checkpoint or counter is not restored
+	 */
+	public RateCheckpoint(File file, long maxAgeMillis) {
+		this.file = file;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * Method to save the counter state of all known nodes, and the loaded
+	 * counters of the nodes that did not join yet.
+	 *
+	 * @param state
+	 *            Collection state of the agent
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public synchronized void save(CollectionState state) throws IOException {
+		long nowMicros = System.currentTimeMillis() * 1000;
+		long nowNanos = System.nanoTime();
+		List<NodeState> nodes = new ArrayList<NodeState>(state.getNodeStates());
+		Map<String, SavedNode> waiting = new LinkedHashMap<String, SavedNode>();
+		for (Iterator<Map.Entry<String, SavedNode>> it = pending.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, SavedNode> entry = it.next();
+			if (!isFresh(entry.getValue(), nowMicros))
+				it.remove();
+			else if (state.findNodeState(entry.getKey()) == null)
+				waiting.put(entry.getKey(), entry.getValue());
+		}
+
+		File temporary = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(nowMicros / 1000);
+			out.writeInt(nodes.size() + waiting.size());
+			for (NodeState nodeState : nodes) {
+				out.writeUTF(nodeState.getNodeId());
+				synchronized (nodeState) {
+					writeCounters(out, nodeState.getCounters(), nowMicros, nowNanos);
+					Map<String, CounterState> namespaces = nodeState.getAllNamespaceCounters();
+					out.writeInt(namespaces.size());
+					for (Map.Entry<String, CounterState> namespace : namespaces.entrySet()) {
+						out.writeUTF(namespace.getKey());
+						writeCounters(out, namespace.getValue(), nowMicros, nowNanos);
+					}
+				}
+			}
+			for (Map.Entry<String, SavedNode> entry : waiting.entrySet()) {
+				out.writeUTF(entry.getKey());
+				writeSaved(out, entry.getValue().counters);
+				out.writeInt(entry.getValue().namespaces.size());
+				for (Map.Entry<String, List<SavedCounter>> namespace : entry.getValue().namespaces.entrySet()) {
+					out.writeUTF(namespace.getKey());
+					writeSaved(out, namespace.getValue());
+				}
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void writeCounters(DataOutputStream out, CounterState counters, long nowMicros, long nowNanos)
+			throws IOException {
+		StatRegistry registry = StatRegistry.getInstance();
+		int count = 0;
+		for (int id = 0; id < counters.capacity(); id++) {
+			if (counters.isSeen(id))
+				count++;
+		}
+		out.writeInt(count);
+		for (int id = 0; id < counters.capacity(); id++) {
+			if (!counters.isSeen(id))
+				continue;
+			out.writeUTF(registry.getName(id));
+			out.writeDouble(counters.getValue(id));
+			out.writeLong(nowMicros - (nowNanos - counters.getTimestamp(id)) / 1000);
+		}
+	}
+
+	private static void writeSaved(DataOutputStream out, List<SavedCounter> counters) throws IOException {
+		out.writeInt(counters.size());
+		for (SavedCounter counter : counters) {
+			out.writeUTF(counter.name);
+			out.writeDouble(counter.value);
+			out.writeLong(counter.timeMicros);
+		}
+	}
+
+	/**
+	 * @return boolean true if some counter of a saved node is still young
+	 *         enough to be restored
+	 */
+	private boolean isFresh(SavedNode saved, long nowMicros) {
+		if (isFresh(saved.counters, nowMicros))
+			return true;
+		for (List<SavedCounter> counters : saved.namespaces.values()) {
+			if (isFresh(counters, nowMicros))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean isFresh(List<SavedCounter> counters, long nowMicros) {
+		for (SavedCounter counter : counters) {
+			if (isFresh(counter, nowMicros))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean isFresh(SavedCounter counter, long nowMicros) {
+		long ageMicros = nowMicros - counter.timeMicros;
+		return ageMicros >= 0 && ageMicros <= maxAgeMillis * 1000;
+	}
+
+	/**
+	 * Method to read the checkpoint, keeping its counters until their node
+	 * joins. Nothing is kept from a missing, unreadable or stale checkpoint.
+	 *
+	 * @return int number of nodes read
+	 */
+	public synchronized int load() {
+		pending.clear();
+		if (!file.isFile())
+			return 0;
+		long nowMicros = System.currentTimeMillis() * 1000;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					logger.warn("Ignoring checkpoint of another format: ", file);
+					return 0;
+				}
+				long savedAt = in.readLong();
+				if (nowMicros / 1000 - savedAt > maxAgeMillis) {
+					logger.info("Ignoring stale checkpoint: ", file);
+					return 0;
+				}
+				int nodes = in.readInt();
+				for (int i = 0; i < nodes; i++) {
+					String nodeId = in.readUTF();
+					SavedNode saved = new SavedNode();
+					saved.counters = readCounters(in);
+					int namespaces = in.readInt();
+					for (int j = 0; j < namespaces; j++) {
+						String namespace = in.readUTF();
+						saved.namespaces.put(namespace, readCounters(in));
+					}
+					pending.put(nodeId, saved);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException exception) {
+			pending.clear();
+			logger.warn("Cannot read checkpoint ", file, ": ", exception);
+		}
+		return pending.size();
+	}
+
+	private static List<SavedCounter> readCounters(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<SavedCounter> counters = new ArrayList<SavedCounter>(count);
+		for (int i = 0; i < count; i++)
+			counters.add(new SavedCounter(in.readUTF(), in.readDouble(), in.readLong()));
+		return counters;
+	}
+
+	/**
+	 * Method to restore the loaded counters of a node that joined. Counters
+	 * older than the maximum age are dropped.
+	 *
+	 * @param nodeState
+	 *            State of the node
+	 * @return int number of counters restored
+	 */
+	public synchronized int restore(NodeState nodeState) {
+		SavedNode saved = pending.remove(nodeState.getNodeId());
+		if (saved == null)
+			return 0;
+		long nowMicros = System.currentTimeMillis() * 1000;
+		long nowNanos = System.nanoTime();
+		synchronized (nodeState) {
+			int restored = restore(saved.counters, nodeState.getCounters(), nowMicros, nowNanos);
+			for (Map.Entry<String, List<SavedCounter>> namespace : saved.namespaces.entrySet())
+				restored += restore(namespace.getValue(), nodeState.getNamespaceCounters(namespace.getKey()),
+						nowMicros, nowNanos);
+			return restored;
+		}
+	}
+
+	private int restore(List<SavedCounter> saved, CounterState counters, long nowMicros, long nowNanos) {
+		StatRegistry registry = StatRegistry.getInstance();
+		int restored = 0;
+		for (SavedCounter counter : saved) {
+			if (!isFresh(counter, nowMicros))
+				continue;
+			counters.restore(registry.getId(counter.name), counter.value,
+					nowNanos - (nowMicros - counter.timeMicros) * 1000);
+			restored++;
+		}
+		return restored;
+	}
+}
@@ -0,0 +1,172 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.aerospike.newrelic.utils.StatRegistry;
+import com.aerospike.newrelic.utils.StatTable;
+import com.newrelic.metrics.publish.util.Logger;
+
+/**
+ * Turns monotonic counters into per-second rates. The previous value and
+ * System.nanoTime() of every counter are kept in a {@link CounterState} per
+ * node (or node and namespace), in primitive arrays indexed by stat id.
+ *
+ * A counter that went down is treated as reset (node restart): no rate is
+ * produced for that cycle and the new value becomes the baseline.
+ *
+ */
+public class RateEngine {
+
+	private static final Logger logger = Logger.getLogger(RateEngine.class);
+
+	private static final byte UNKNOWN = 0;
+	private static final byte COUNTER = 1;
+	private static final byte NOT_COUNTER = 2;
+
+	private final Pattern counters;
+
+	/* whether a stat id is a monotonic counter, decided once per id */
+	private volatile byte[] counterFlags = new byte[256];
+
+	/**
+	 * Previous values of the counters of one node or namespace.
+	 */
+	public static class CounterState {
+		private double[] values = new double[0];
+		private long[] timestamps = new long[0];
+		private boolean[] seen = new boolean[0];
+
+		private void ensureCapacity(int id) {
+			if (id >= values.length) {
+				int capacity = Math.max(id + 1, Math.max(64, values.length * 2));
+				values = Arrays.copyOf(values, capacity);
+				timestamps = Arrays.copyOf(timestamps, capacity);
+				seen = Arrays.copyOf(seen, capacity);
+			}
+		}
+
+		/**
+		 * @return int upper bound (exclusive) of the stat ids with a value
+		 */
+		public int capacity() {
+			return values.length;
+		}
+
+		/**
+		 * @return boolean true if a previous value of the stat is known
+		 */
+		public boolean isSeen(int id) {
+			return id < seen.length && seen[id];
+		}
+
+		public double getValue(int id) {
+			return values[id];
+		}
+
+		/**
+		 * @return long System.nanoTime() of the previous value
+		 */
+		public long getTimestamp(int id) {
+			return timestamps[id];
+		}
+
+		/**
+		 * Method to set the previous value of a stat, e.g. from a checkpoint.
+		 *
+		 * @param nanoTime
+		 *            System.nanoTime() the value was read at
+		 */
+		public void restore(int id, double value, long nanoTime) {
+			ensureCapacity(id);
+			values[id] = value;
+			timestamps[id] = nanoTime;
+			seen[id] = true;
+		}
+	}
+
+	/**
+	 * Constructor for RateEngine
+	 *
+	 * @param counterPatterns
+	 *            Regular expressions matching the names of monotonic counters
+	 */
+	public RateEngine(List<String> counterPatterns) {
+		StringBuilder builder = new StringBuilder();
+		for (String pattern : counterPatterns) {
+			if (builder.length() > 0)
+				builder.append('|');
+			builder.append("(?:").append(pattern).append(')');
+		}
+		this.counters = builder.length() == 0 ? null : Pattern.compile(builder.toString());
+	}
+
+	/**
+	 * Method to check if a stat is configured as monotonic counter.
+	 *
+	 * @param id
+	 *            Stat id
+	 * @return boolean true if rates are computed for the stat
+	 */
+	public boolean isCounter(int id) {
+		byte[] flags = counterFlags;
+		if (id < flags.length && flags[id] != UNKNOWN)
+			return flags[id] == COUNTER;
+
+		boolean counter = counters != null && counters.matcher(StatRegistry.getInstance().getName(id)).matches();
+		if (id >= flags.length)
+			flags = Arrays.copyOf(flags, Math.max(id + 1, flags.length * 2));
+		flags[id] = counter ? COUNTER : NOT_COUNTER;
+		counterFlags = flags;
+		return counter;
+	}
+
+	/**
+	 * Method to compute rates of the configured counters in a stat table.
+	 *
+	 * @param state
+	 *            Previous values of the node or namespace
+	 * @param stats
+	 *            Current statistics
+	 * @param nanoTime
+	 *            System.nanoTime() at which the statistics were read
+	 * @param rates
+	 *            Table receiving the per-second rates
+	 */
+	public void computeRates(CounterState state, StatTable stats, long nanoTime, StatTable rates) {
+		compute(state, stats, nanoTime, rates, false);
+	}
+
+	/**
+	 * Method to compute rates of every stat in a table, regardless of the
+	 * configured counters.
+	 *
+	 * @see #computeRates(CounterState, StatTable, long, StatTable)
+	 */
+	public void computeAllRates(CounterState state, StatTable stats, long nanoTime, StatTable rates) {
+		compute(state, stats, nanoTime, rates, true);
+	}
+
+	private void compute(CounterState state, StatTable stats, long nanoTime, StatTable rates, boolean all) {
+		for (int i = 0; i < stats.size(); i++) {
+			int id = stats.idAt(i);
+			if (!all && !isCounter(id))
+				continue;
+			double value = stats.valueAt(i);
+			state.ensureCapacity(id);
+			if (state.seen[id]) {
+				long elapsed = nanoTime - state.timestamps[id];
+				double delta = value - state.values[id];
+				if (delta < 0) {
+					logger.debug("Counter reset detected: ", StatRegistry.getInstance().getName(id));
+				} else if (elapsed > 0) {
+					rates.put(id, delta * 1e9 / elapsed);
+				}
+			}
+			state.values[id] = value;
+			state.timestamps[id] = nanoTime;
+			state.seen[id] = true;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.aerospike.newrelic.connector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aerospike.client.cluster.Node;
+import com.newrelic.metrics.publish.util.Logger;
+
+/**
+ * Tracks the nodes of a cluster from the client node list, keyed by Aerospike
+ * node id. Listeners are told when a node joins, so they can create its
+ * state, and when it leaves, so they can drop it. A node that restarted is
+ * seen by the client as a new Node object and is reported as leaving and
+ * joining again, so no history survives a restart.
+ *
+ * Not thread safe: the tracker is updated by the polling thread.
+ *
+ */
+public class TopologyTracker {
+
+	private static final Logger logger = Logger.getLogger(TopologyTracker.class);
+
+	/**
+	 * Receiver of node changes.
+	 */
+	public interface Listener {
+		/**
+		 * Method called when a node joined the cluster.
+		 *
+		 * @param node
+		 *            Aerospike node
+		 */
+		void nodeJoined(Node node);
+
+		/**
+		 * Method called when a node left the cluster or was replaced.
+		 *
+		 * @param node
+		 *            Aerospike node that left
+		 */
+		void nodeLeft(Node node);
+	}
+
+	private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+	private final List<Listener> listeners = new ArrayList<Listener>();
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Method to compare the current node list with the tracked nodes and
+	 * notify the listeners of the changes.
+	 *
+	 * @param current
+	 *            Current nodes of the client, may be null
+	 */
+	public void update(Node[] current) {
+		Map<String, Node> currentById = new HashMap<String, Node>();
+		if (current != null) {
+			for (Node node : current)
+				currentById.put(node.getName(), node);
+		}
+
+		Iterator<Map.Entry<String, Node>> tracked = nodes.entrySet().iterator();
+		while (tracked.hasNext()) {
+			Map.Entry<String, Node> entry = tracked.next();
+			if (currentById.get(entry.getKey()) != entry.getValue()) {
+				tracked.remove();
+				logger.info("Node left the cluster: ", entry.getValue());
+				for (Listener listener : listeners)
+					listener.nodeLeft(entry.getValue());
+			}
+		}
+		if (current != null) {
+			for (Node node : current) {
+				if (!nodes.containsKey(node.getName())) {
+					nodes.put(node.getName(), node);
+					logger.info("Node joined the cluster: ", node);
+					for (Listener listener : listeners)
+						listener.nodeJoined(node);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Collection<Node> nodes currently tracked, in join order
+	 */
+	public Collection<Node> getNodes() {
+		return Collections.unmodifiableCollection(nodes.values());
+	}
+}
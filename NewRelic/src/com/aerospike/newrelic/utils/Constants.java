@@ -45,6 +45,48 @@ public class Constants {
 	public static final String WRITES = "writes";
 
 	public static final String METRIC_BASE_NAME = "aerospike";
+	public static final String PLUGIN_STATS = "plugin";
+
+	public static final int DEFAULT_COLLECTOR_THREADS = 8;
+
+	/* time budget for collecting all nodes of a cycle */
+	public static final int DEFAULT_CYCLE_DEADLINE_MS = 30000;
+
+	/* per node circuit breaker: consecutive failures opening it, first and maximum probe interval */
+	public static final int DEFAULT_BREAKER_FAILURES = 3;
+	public static final int DEFAULT_BREAKER_BACKOFF_MS = 10000;
+	public static final int DEFAULT_BREAKER_MAX_BACKOFF_MS = 300000;
+
+	/* node and namespace stats reported as per-second rates, full regex match on the stat name */
+	public static final String[] DEFAULT_RATE_COUNTERS = {
+			".*(udf|batch|query|scan|proxy).*_(reqs|complete|success|error|timeout|abort|filtered_out|not_found|initiate)",
+			".*(evicted|expired)_objects",
+			"migrate_.*_(transmitted|retransmitted|received|imbalance)" };
+
+	/* families sampled between cycles when sample_interval_ms is set (queue depths are node stats) */
+	public static final String[] DEFAULT_SAMPLED_FAMILIES = { "node_stats", "throughput", "latency" };
+
+	/* size of the journal file recording the published cycles */
+	public static final int DEFAULT_JOURNAL_MAX_MB = 64;
+
+	/* age beyond which a checkpoint of the counter state is not restored */
+	public static final int DEFAULT_CHECKPOINT_MAX_AGE_S = 300;
+
+	/* policy of the Aerospike client shared by the agents with the same seeds and credentials */
+	public static final int DEFAULT_CLIENT_MAX_THREADS = 10;
+	public static final int DEFAULT_CLIENT_MAX_SOCKET_IDLE_S = 10;
+	public static final int DEFAULT_CLIENT_TEND_INTERVAL_MS = 1000;
+	public static final int DEFAULT_CLIENT_TIMEOUT_MS = 1000;
+
+	/* delay before connecting again to a cluster that could not be reached */
+	public static final int DEFAULT_CONNECT_RETRY_MS = 10000;
+
+	/* thresholds kept from the latencies: histograms, 1ms to 1024ms */
+	public static final int DEFAULT_LATENCY_BUCKETS = 11;
+
+	/* cluster-wide latency percentiles estimated from the merged histograms */
+	public static final String[] LATENCY_PERCENTILES = { "p50", "p95", "p99", "p999" };
+	public static final double[] LATENCY_QUANTILES = { 0.5, 0.95, 0.99, 0.999 };
 
 	//public static final String[] LATENCY_CATEGORY = { "reads", "writes_master", "query", "udf", "proxy" };
 	//public static final String[] LATENCY_BUCKETS = { "LT 1ms", "GT 1ms to LT 8ms", "GT 8ms to LT 64ms", "GT 64ms" };
@@ -53,4 +95,14 @@ public class Constants {
 
 	public static final String LATENCY_ERROR = "error-run-too-short-or-back-too-small";
 
+	/* Info commands used to build a node snapshot */
+	public static final String INFO_STATISTICS = "statistics";
+	public static final String INFO_NODE = "node";
+	public static final String INFO_BUILD = "build";
+	public static final String INFO_NAMESPACES = "namespaces";
+	public static final String INFO_PARTITION_GENERATION = "partition-generation";
+	public static final String INFO_NAMESPACE_PREFIX = "namespace/";
+	public static final String INFO_LATENCY = "latency:";
+	public static final String INFO_LATENCIES = "latencies:";
+
 }
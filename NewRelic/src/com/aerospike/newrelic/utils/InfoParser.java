@@ -0,0 +1,156 @@
+package com.aerospike.newrelic.utils;
+
+/**
+ * Single pass parser for info responses. Values are decoded in place from the
+ * response, so no intermediate Strings are created and non-numeric values are
+ * skipped without throwing.
+ *
+ */
+public final class InfoParser {
+
+	private static final int MAX_DIGITS = 18;
+
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+			1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private InfoParser() {
+	}
+
+	/**
+	 * Method to parse a statistics response (name=value;name=value...) into a
+	 * stat table. Numbers and true/false (as 1/0) are kept, every other value is
+	 * skipped.
+	 *
+	 * @param response
+	 *            Info response, may be null
+	 * @param table
+	 *            Table receiving the values
+	 * @return StatTable the given table
+	 */
+	public static StatTable parseStatistics(CharSequence response, StatTable table) {
+		if (response == null)
+			return table;
+		StatRegistry registry = StatRegistry.getInstance();
+		int length = response.length();
+		int i = 0;
+		while (i < length) {
+			int keyStart = i;
+			while (i < length && response.charAt(i) != '=' && response.charAt(i) != ';')
+				i++;
+			if (i == length || response.charAt(i) == ';') {
+				/* entry without a value */
+				i++;
+				continue;
+			}
+			int keyEnd = i++;
+			int valueStart = i;
+			while (i < length && response.charAt(i) != ';')
+				i++;
+			double value = parseNumber(response, valueStart, i);
+			if (keyEnd > keyStart && !Double.isNaN(value))
+				table.put(registry.getId(response, keyStart, keyEnd), value);
+			i++;
+		}
+		return table;
+	}
+
+	/**
+	 * Method to decode a number or a boolean (true/false as 1/0) stored in a
+	 * region of a char sequence.
+	 *
+	 * @param source
+	 *            Char sequence holding the value
+	 * @param start
+	 *            Index of the first char of the value
+	 * @param end
+	 *            Index after the last char of the value
+	 * @return double value or NaN if the region is not a number
+	 */
+	public static double parseNumber(CharSequence source, int start, int end) {
+		if (start >= end)
+			return Double.NaN;
+		if (regionEqualsIgnoreCase(source, start, end, Constants.TRUE))
+			return 1;
+		if (regionEqualsIgnoreCase(source, start, end, Constants.FALSE))
+			return 0;
+
+		int i = start;
+		boolean negative = false;
+		char c = source.charAt(i);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int significant = 0;
+		int exponent = 0;
+		boolean digits = false;
+		boolean fraction = false;
+		for (; i < end; i++) {
+			c = source.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits = true;
+				if (significant < MAX_DIGITS) {
+					if (mantissa != 0 || c != '0')
+						significant++;
+					mantissa = mantissa * 10 + (c - '0');
+					if (fraction)
+						exponent--;
+				} else if (!fraction) {
+					exponent++;
+				}
+			} else if (c == '.' && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+		}
+		if (!digits)
+			return Double.NaN;
+
+		if (i < end && (source.charAt(i) == 'e' || source.charAt(i) == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (source.charAt(i) == '-' || source.charAt(i) == '+')) {
+				negativeExponent = source.charAt(i) == '-';
+				i++;
+			}
+			int explicit = 0;
+			int exponentStart = i;
+			for (; i < end; i++) {
+				c = source.charAt(i);
+				if (c < '0' || c > '9')
+					break;
+				if (explicit < 10000)
+					explicit = explicit * 10 + (c - '0');
+			}
+			if (i == exponentStart)
+				return Double.NaN;
+			exponent += negativeExponent ? -explicit : explicit;
+		}
+		if (i != end)
+			return Double.NaN;
+
+		double value;
+		if (exponent == 0)
+			value = mantissa;
+		else if (exponent > 0 && exponent < POW10.length)
+			value = mantissa * POW10[exponent];
+		else if (exponent < 0 && -exponent < POW10.length)
+			value = mantissa / POW10[-exponent];
+		else
+			value = mantissa * Math.pow(10, exponent);
+		return negative ? -value : value;
+	}
+
+	private static boolean regionEqualsIgnoreCase(CharSequence source, int start, int end, String value) {
+		if (end - start != value.length())
+			return false;
+		for (int i = start; i < end; i++) {
+			if (Character.toLowerCase(source.charAt(i)) != value.charAt(i - start))
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,109 @@
+package com.aerospike.newrelic.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bucket layout of a latency histogram: the ascending thresholds, their unit
+ * and the bucket names used in metric names (0ms_to_1ms, 1ms_to_8ms, ...,
+ * GT_64ms). A layout with n thresholds has n + 1 buckets. Layouts are
+ * immutable and shared, so histograms only hold their values.
+ *
+ */
+public final class LatencyBuckets {
+
+	/** Layout of the legacy latency: command (>1ms, >8ms, >64ms) */
+	public static final LatencyBuckets LEGACY = new LatencyBuckets("ms", new long[] { 1, 8, 64 });
+
+	private static final ConcurrentMap<String, LatencyBuckets> CACHE = new ConcurrentHashMap<String, LatencyBuckets>();
+
+	private final String unit;
+	private final long[] thresholds;
+	private final String[] names;
+
+	private LatencyBuckets(String unit, long[] thresholds) {
+		this.unit = unit;
+		this.thresholds = thresholds;
+		this.names = new String[thresholds.length + 1];
+		long previous = 0;
+		for (int i = 0; i < thresholds.length; i++) {
+			names[i] = previous + unit + "_to_" + thresholds[i] + unit;
+			previous = thresholds[i];
+		}
+		names[thresholds.length] = "GT_" + previous + unit;
+	}
+
+	/**
+	 * Method to get the layout of power of two thresholds 1, 2, 4, ...,
+	 * 2^(count - 1).
+	 *
+	 * @param unit
+	 *            Threshold unit (ms or us)
+	 * @param count
+	 *            Number of thresholds
+	 * @return LatencyBuckets shared layout
+	 */
+	public static LatencyBuckets powersOfTwo(String unit, int count) {
+		long[] thresholds = new long[count];
+		for (int i = 0; i < count; i++)
+			thresholds[i] = 1L << i;
+		return of(unit, thresholds);
+	}
+
+	/**
+	 * Method to get the layout of arbitrary ascending thresholds.
+	 *
+	 * @param unit
+	 *            Threshold unit (ms or us)
+	 * @param thresholds
+	 *            Ascending thresholds
+	 * @return LatencyBuckets shared layout
+	 */
+	public static LatencyBuckets of(String unit, long[] thresholds) {
+		if (unit.equals(LEGACY.unit) && Arrays.equals(thresholds, LEGACY.thresholds))
+			return LEGACY;
+		String key = unit + Arrays.toString(thresholds);
+		LatencyBuckets buckets = CACHE.get(key);
+		if (buckets == null) {
+			LatencyBuckets created = new LatencyBuckets(unit, thresholds.clone());
+			buckets = CACHE.putIfAbsent(key, created);
+			if (buckets == null)
+				buckets = created;
+		}
+		return buckets;
+	}
+
+	/**
+	 * @return int number of buckets (thresholds + 1)
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * @return String name of a bucket, e.g. 1ms_to_8ms
+	 */
+	public String getName(int bucket) {
+		return names[bucket];
+	}
+
+	/**
+	 * @return long lower bound of a bucket in the layout unit
+	 */
+	public long getLowerBound(int bucket) {
+		return bucket == 0 ? 0 : thresholds[bucket - 1];
+	}
+
+	/**
+	 * @return long upper bound of a bucket in the layout unit, the last bucket
+	 *         is open and returns its lower bound
+	 */
+	public long getUpperBound(int bucket) {
+		return bucket < thresholds.length ? thresholds[bucket] : thresholds[thresholds.length - 1];
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+}
@@ -0,0 +1,84 @@
+package com.aerospike.newrelic.utils;
+
+/**
+ * Latency histogram of one category (read, write, udf, ...) of one node, as
+ * reported by the latency: or latencies: info command. Bucket values are the
+ * share of operations (in %) that fell in each bucket of the layout.
+ *
+ */
+public final class LatencyHistogram {
+
+	private final String category;
+	private final String namespace;
+	private final String key;
+	private final LatencyBuckets buckets;
+	private final double opsPerSec;
+	private final double[] bucketPct;
+
+	/**
+	 * Constructor for LatencyHistogram
+	 *
+	 * @param category
+	 *            Histogram category, e.g. read
+	 * @param namespace
+	 *            Namespace of the histogram or null if not namespaced
+	 * @param buckets
+	 *            Bucket layout
+	 * @param opsPerSec
+	 *            Operations per second covered by the histogram
+	 * @param bucketPct
+	 *            Share of operations per bucket (in %), one per bucket
+	 */
+	public LatencyHistogram(String category, String namespace, LatencyBuckets buckets, double opsPerSec,
+			double[] bucketPct) {
+		this.category = category;
+		this.namespace = namespace;
+		this.key = namespace == null ? category : category + "-{" + namespace + "}";
+		this.buckets = buckets;
+		this.opsPerSec = opsPerSec;
+		this.bucketPct = bucketPct;
+	}
+
+	/**
+	 * @return String category without namespace, e.g. read
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return String namespace or null if the histogram is node wide
+	 */
+	public String getNamespace() {
+		return namespace;
+	}
+
+	/**
+	 * @return String category qualified with the namespace, e.g. read-{test}
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	public LatencyBuckets getBuckets() {
+		return buckets;
+	}
+
+	public double getOpsPerSec() {
+		return opsPerSec;
+	}
+
+	/**
+	 * @return double share of operations (in %) in a bucket
+	 */
+	public double getBucketPct(int bucket) {
+		return bucketPct[bucket];
+	}
+
+	/**
+	 * @return double operations per second in a bucket
+	 */
+	public double getBucketOps(int bucket) {
+		return opsPerSec * bucketPct[bucket] / 100;
+	}
+}
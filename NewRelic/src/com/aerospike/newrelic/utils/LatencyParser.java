@@ -0,0 +1,218 @@
+package com.aerospike.newrelic.utils;
+
+import static com.aerospike.newrelic.utils.Constants.LATENCY_ERROR;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.newrelic.metrics.publish.util.Logger;
+
+/**
+ * Parsers for the latency info commands.
+ *
+ * latencies: (ASD >= 5.1) reports every histogram on one entry with power of
+ * two thresholds, e.g.
+ * {test}-read:msec,4234.9,28.75,7.40,1.63,0.26,...;batch-index:;...
+ *
+ * latency: (legacy) reports a header and a data entry per histogram, e.g.
+ * reads:10:26:04-GMT,ops/sec,>1ms,>8ms,>64ms;10:26:14,2400.0,0.00,0.00,0.00;...
+ *
+ * The values after ops/sec are the share of operations (in %) above each
+ * threshold.
+ *
+ */
+public final class LatencyParser {
+
+	private static final Logger logger = Logger.getLogger(LatencyParser.class);
+
+	private LatencyParser() {
+	}
+
+	/**
+	 * Method to parse the response of the latencies: command.
+	 *
+	 * @param response
+	 *            Info response, may be null
+	 * @param bucketCount
+	 *            Number of thresholds to keep (1, 2, 4, ... 2^(bucketCount -
+	 *            1)), operations above the last one are reported in one bucket
+	 * @return List<LatencyHistogram> histograms with data
+	 */
+	public static List<LatencyHistogram> parseLatencies(String response, int bucketCount) {
+		List<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+		if (response == null)
+			return histograms;
+		int length = response.length();
+		int start = 0;
+		while (start < length) {
+			int end = indexOf(response, ';', start, length);
+			int colon = indexOf(response, ':', start, end);
+			int unitEnd = indexOf(response, ',', colon + 1, end);
+			if (colon < end && unitEnd < end) {
+				String unit = parseUnit(response, colon + 1, unitEnd);
+				int opsEnd = indexOf(response, ',', unitEnd + 1, end);
+				double opsPerSec = InfoParser.parseNumber(response, unitEnd + 1, opsEnd);
+				int columns = countColumns(response, opsEnd, end);
+				if (unit != null && !Double.isNaN(opsPerSec) && columns > 0) {
+					int thresholds = Math.min(columns, Math.max(1, bucketCount));
+					double[] above = parseColumns(response, opsEnd, end, thresholds);
+					if (above != null) {
+						histograms.add(newHistogram(response.substring(start, colon), true,
+								LatencyBuckets.powersOfTwo(unit, thresholds), opsPerSec, above));
+					}
+				}
+			}
+			start = end + 1;
+		}
+		return histograms;
+	}
+
+	/**
+	 * Method to parse the response of the legacy latency: command.
+	 *
+	 * @param response
+	 *            Info response, may be null
+	 * @param namespaced
+	 *            true if histogram names are namespaced ({ns}-read, ASD >=
+	 *            3.9)
+	 * @return List<LatencyHistogram> histograms with data
+	 */
+	public static List<LatencyHistogram> parseLegacy(String response, boolean namespaced) {
+		List<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+		if (response == null || response.isEmpty() || response.contains(LATENCY_ERROR))
+			return histograms;
+		int length = response.length();
+		int start = 0;
+		while (start < length) {
+			int headerEnd = indexOf(response, ';', start, length);
+			if (response.startsWith("error-", start)) {
+				/* error is a single entry, the next entry is a header again */
+				logger.error("Not enough info for latency: -> ", response.substring(start, headerEnd));
+				start = headerEnd + 1;
+				continue;
+			}
+			int dataEnd = indexOf(response, ';', headerEnd + 1, length);
+			if (headerEnd >= length)
+				break;
+
+			int colon = indexOf(response, ':', start, headerEnd);
+			String name = response.substring(start, colon);
+			LatencyBuckets buckets = parseLegacyBuckets(response, colon, headerEnd);
+			int opsStart = indexOf(response, ',', headerEnd + 1, dataEnd);
+			int opsEnd = indexOf(response, ',', opsStart + 1, dataEnd);
+			double opsPerSec = InfoParser.parseNumber(response, opsStart + 1, opsEnd);
+			double[] above = buckets == null ? null : parseColumns(response, opsEnd, dataEnd, buckets.size() - 1);
+			if (!name.contains("writes_reply") && above != null && !Double.isNaN(opsPerSec))
+				histograms.add(newHistogram(name, namespaced, buckets, opsPerSec, above));
+			start = dataEnd + 1;
+		}
+		return histograms;
+	}
+
+	/**
+	 * Method to build a histogram from the shares above each threshold.
+	 */
+	private static LatencyHistogram newHistogram(String name, boolean namespaced, LatencyBuckets buckets,
+			double opsPerSec, double[] above) {
+		String namespace = null;
+		String category = name;
+		/* 3.9+ server send namespace level latency in {test}-read */
+		if (namespaced && name.startsWith("{")) {
+			int close = name.indexOf("}-");
+			if (close > 0) {
+				namespace = name.substring(1, close);
+				category = name.substring(close + 2);
+			}
+		}
+		if (category.contains("reads"))
+			category = "read";
+		else if (category.contains("writes"))
+			category = "write";
+
+		int thresholds = above.length;
+		double[] bucketPct = new double[thresholds + 1];
+		bucketPct[0] = opsPerSec == 0 ? 0 : 100 - above[0];
+		for (int i = 1; i < thresholds; i++)
+			bucketPct[i] = above[i - 1] - above[i];
+		bucketPct[thresholds] = above[thresholds - 1];
+		return new LatencyHistogram(category, namespace, buckets, opsPerSec, bucketPct);
+	}
+
+	/**
+	 * Method to read the thresholds of a legacy header
+	 * (name:time,ops/sec,>1ms,>8ms,>64ms).
+	 *
+	 * @return LatencyBuckets layout or null if the header can't be read
+	 */
+	private static LatencyBuckets parseLegacyBuckets(String header, int start, int end) {
+		int column = indexOf(header, ',', start, end);
+		column = indexOf(header, ',', column + 1, end);
+		int count = countColumns(header, column, end);
+		if (count == 0)
+			return null;
+		long[] thresholds = new long[count];
+		String unit = null;
+		for (int i = 0; i < count; i++) {
+			int valueStart = column + 1;
+			column = indexOf(header, ',', valueStart, end);
+			if (valueStart < column && header.charAt(valueStart) == '>')
+				valueStart++;
+			int digitsEnd = valueStart;
+			while (digitsEnd < column && Character.isDigit(header.charAt(digitsEnd)))
+				digitsEnd++;
+			if (digitsEnd == valueStart)
+				return null;
+			thresholds[i] = (long) InfoParser.parseNumber(header, valueStart, digitsEnd);
+			unit = header.substring(digitsEnd, column);
+		}
+		return LatencyBuckets.of(unit, thresholds);
+	}
+
+	/**
+	 * Method to read the first count comma separated values after position
+	 * start (which holds a comma).
+	 *
+	 * @return double[] values or null if one is not a number
+	 */
+	private static double[] parseColumns(String source, int start, int end, int count) {
+		double[] values = new double[count];
+		int column = start;
+		for (int i = 0; i < count; i++) {
+			int valueStart = column + 1;
+			column = indexOf(source, ',', valueStart, end);
+			values[i] = InfoParser.parseNumber(source, valueStart, column);
+			if (Double.isNaN(values[i]))
+				return null;
+		}
+		return values;
+	}
+
+	/**
+	 * @return int number of comma separated values after position start
+	 *         (which holds a comma)
+	 */
+	private static int countColumns(String source, int start, int end) {
+		int count = 0;
+		for (int i = start; i < end; i++) {
+			if (source.charAt(i) == ',')
+				count++;
+		}
+		return count;
+	}
+
+	private static String parseUnit(String source, int start, int end) {
+		if (source.startsWith("msec", start) && end - start == 4)
+			return "ms";
+		if (source.startsWith("usec", start) && end - start == 4)
+			return "us";
+		return null;
+	}
+
+	private static int indexOf(String source, char c, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (source.charAt(i) == c)
+				return i;
+		}
+		return end;
+	}
+}
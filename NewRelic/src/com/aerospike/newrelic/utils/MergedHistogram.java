@@ -0,0 +1,133 @@
+package com.aerospike.newrelic.utils;
+
+/**
+ * Cluster-wide latency histogram of one category, merged from the node
+ * histograms. Each node contributes the operations per second of its buckets
+ * (ops/sec * pct), so busy nodes weigh more than idle ones.
+ *
+ * Node histograms with another layout (legacy latency: next to latencies:
+ * during an upgrade, or ms next to us) are re-binned into the layout of the
+ * first histogram, spreading each bucket uniformly over its range.
+ *
+ */
+public final class MergedHistogram {
+
+	private final LatencyBuckets buckets;
+	private final double[] ops;
+	private double totalOps;
+
+	/**
+	 * Constructor for MergedHistogram
+	 *
+	 * @param buckets
+	 *            Layout of the merged histogram
+	 */
+	public MergedHistogram(LatencyBuckets buckets) {
+		this.buckets = buckets;
+		this.ops = new double[buckets.size()];
+	}
+
+	public LatencyBuckets getBuckets() {
+		return buckets;
+	}
+
+	/**
+	 * @return double operations per second of all merged histograms
+	 */
+	public double getTotalOps() {
+		return totalOps;
+	}
+
+	/**
+	 * @return double share of the cluster operations (in %) in a bucket
+	 */
+	public double getBucketPct(int bucket) {
+		return totalOps == 0 ? 0 : ops[bucket] * 100 / totalOps;
+	}
+
+	/**
+	 * Method to add the operations of a node histogram.
+	 *
+	 * @param histogram
+	 *            Node histogram
+	 */
+	public void add(LatencyHistogram histogram) {
+		LatencyBuckets source = histogram.getBuckets();
+		for (int i = 0; i < source.size(); i++) {
+			double bucketOps = histogram.getBucketOps(i);
+			if (bucketOps <= 0)
+				continue;
+			totalOps += bucketOps;
+			if (source == buckets) {
+				ops[i] += bucketOps;
+			} else {
+				rebin(source, i, bucketOps);
+			}
+		}
+	}
+
+	/**
+	 * Method to estimate a percentile, interpolating linearly within the
+	 * bucket holding it. A percentile in the open last bucket is reported as
+	 * the bucket lower bound.
+	 *
+	 * @param quantile
+	 *            Quantile between 0 and 1, e.g. 0.99
+	 * @return double latency in ms or NaN if no operations were merged
+	 */
+	public double percentile(double quantile) {
+		if (totalOps <= 0)
+			return Double.NaN;
+		double target = quantile * totalOps;
+		double cumulative = 0;
+		int last = ops.length - 1;
+		for (int i = 0; i < last; i++) {
+			if (ops[i] > 0 && cumulative + ops[i] >= target) {
+				double fraction = (target - cumulative) / ops[i];
+				double lower = toMillis(buckets, buckets.getLowerBound(i));
+				double upper = toMillis(buckets, buckets.getUpperBound(i));
+				return lower + fraction * (upper - lower);
+			}
+			cumulative += ops[i];
+		}
+		return toMillis(buckets, buckets.getLowerBound(last));
+	}
+
+	/**
+	 * Method to spread the operations of a bucket of another layout over the
+	 * overlapping buckets of this layout.
+	 */
+	private void rebin(LatencyBuckets source, int bucket, double bucketOps) {
+		double lower = toMicros(source, source.getLowerBound(bucket));
+		double upper = toMicros(source, source.getUpperBound(bucket));
+		int last = ops.length - 1;
+		if (bucket == source.size() - 1 || upper <= lower) {
+			ops[indexOf(lower)] += bucketOps;
+			return;
+		}
+		for (int i = 0; i <= last; i++) {
+			double targetLower = toMicros(buckets, buckets.getLowerBound(i));
+			double targetUpper = i == last ? Double.POSITIVE_INFINITY : toMicros(buckets, buckets.getUpperBound(i));
+			double overlap = Math.min(upper, targetUpper) - Math.max(lower, targetLower);
+			if (overlap > 0)
+				ops[i] += bucketOps * overlap / (upper - lower);
+		}
+	}
+
+	private int indexOf(double micros) {
+		int last = ops.length - 1;
+		for (int i = 0; i < last; i++) {
+			if (micros < toMicros(buckets, buckets.getUpperBound(i)))
+				return i;
+		}
+		return last;
+	}
+
+	private static double toMicros(LatencyBuckets layout, long value) {
+		return "us".equals(layout.getUnit()) ? value : value * 1000.0;
+	}
+
+	private static double toMillis(LatencyBuckets layout, long value) {
+		return "us".equals(layout.getUnit()) ? value / 1000.0 : value;
+	}
+}
@@ -0,0 +1,186 @@
+package com.aerospike.newrelic.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Cache of metric names. A name is built once per (category, node,
+ * namespace, stat, suffix) and reused on every following cycle, e.g.
+ * aerospike/nodeStats/10.0.0.1/objects or
+ * aerospike/latencyStats/10.0.0.1/read-{test}/0ms_to_1ms/value.
+ *
+ * Names are grouped by node so that they can be dropped when a node or one of
+ * its namespaces disappears. Not thread safe: names are only used by the
+ * polling thread.
+ *
+ */
+public final class MetricNames {
+
+	private static final String NO_NAMESPACE = "";
+
+	private final String baseName;
+
+	/* node -> category -> namespace -> prefix */
+	private final Map<String, Map<String, Map<String, Prefix>>> prefixes = new HashMap<String, Map<String, Map<String, Prefix>>>();
+
+	/**
+	 * Names sharing a base/category/node[/namespace]/ prefix.
+	 */
+	public static final class Prefix {
+		private final String prefix;
+		private String[] byId = new String[0];
+		private final Map<String, Map<String, String>> byName = new HashMap<String, Map<String, String>>();
+
+		private Prefix(String prefix) {
+			this.prefix = prefix;
+		}
+
+		/**
+		 * @return String metric name of a {@link StatRegistry} stat
+		 */
+		public String name(int statId) {
+			if (statId >= byId.length)
+				byId = Arrays.copyOf(byId, Math.max(statId + 1, Math.max(64, byId.length * 2)));
+			String name = byId[statId];
+			if (name == null) {
+				name = prefix + StatRegistry.getInstance().getName(statId);
+				byId[statId] = name;
+			}
+			return name;
+		}
+
+		/**
+		 * @return String metric name prefix/stat
+		 */
+		public String name(String stat) {
+			return name(stat, null);
+		}
+
+		/**
+		 * @return String metric name prefix/stat/suffix, or prefix/stat if
+		 *         suffix is null
+		 */
+		public String name(String stat, String suffix) {
+			Map<String, String> suffixes = byName.get(stat);
+			if (suffixes == null) {
+				suffixes = new HashMap<String, String>(4);
+				byName.put(stat, suffixes);
+			}
+			String name = suffixes.get(suffix);
+			if (name == null) {
+				name = suffix == null ? prefix + stat : prefix + stat + "/" + suffix;
+				suffixes.put(suffix, name);
+			}
+			return name;
+		}
+	}
+
+	/**
+	 * Constructor for MetricNames
+	 *
+	 * @param baseName
+	 *            Base of all names, e.g. aerospike
+	 */
+	public MetricNames(String baseName) {
+		this.baseName = baseName;
+	}
+
+	/**
+	 * Method to get the names under a category and node.
+	 *
+	 * @param category
+	 *            Metric category, e.g. nodeStats
+	 * @param node
+	 *            Node host name
+	 * @return Prefix cached names
+	 */
+	public Prefix prefix(String category, String node) {
+		return prefix(category, node, null);
+	}
+
+	/**
+	 * Method to get the names under a category, node and namespace (or
+	 * latency histogram).
+	 *
+	 * @param category
+	 *            Metric category, e.g. namespaceStats
+	 * @param node
+	 *            Node host name, or null for cluster-wide names
+	 * @param namespace
+	 *            Namespace, or null
+	 * @return Prefix cached names
+	 */
+	public Prefix prefix(String category, String node, String namespace) {
+		String nodeKey = node == null ? NO_NAMESPACE : node;
+		Map<String, Map<String, Prefix>> categories = prefixes.get(nodeKey);
+		if (categories == null) {
+			categories = new HashMap<String, Map<String, Prefix>>();
+			prefixes.put(nodeKey, categories);
+		}
+		Map<String, Prefix> namespaces = categories.get(category);
+		if (namespaces == null) {
+			namespaces = new HashMap<String, Prefix>();
+			categories.put(category, namespaces);
+		}
+		String namespaceKey = namespace == null ? NO_NAMESPACE : namespace;
+		Prefix prefix = namespaces.get(namespaceKey);
+		if (prefix == null) {
+			StringBuilder builder = new StringBuilder(baseName).append('/').append(category).append('/');
+			if (node != null)
+				builder.append(node).append('/');
+			if (namespace != null)
+				builder.append(namespace).append('/');
+			prefix = new Prefix(builder.toString());
+			namespaces.put(namespaceKey, prefix);
+		}
+		return prefix;
+	}
+
+	/**
+	 * Method to drop the names of a node that left the cluster.
+	 *
+	 * @param node
+	 *            Node host name
+	 */
+	public void evictNode(String node) {
+		prefixes.remove(node);
+	}
+
+	/**
+	 * Method to drop the names of a namespace of a node, including the
+	 * latency histograms of the namespace (read-{ns}, ...).
+	 *
+	 * @param node
+	 *            Node host name
+	 * @param namespace
+	 *            Namespace
+	 */
+	public void evictNamespace(String node, String namespace) {
+		Map<String, Map<String, Prefix>> categories = prefixes.get(node);
+		if (categories == null)
+			return;
+		String histogramSuffix = "-{" + namespace + "}";
+		for (Map<String, Prefix> namespaces : categories.values()) {
+			namespaces.remove(namespace);
+			Iterator<String> keys = namespaces.keySet().iterator();
+			while (keys.hasNext()) {
+				if (keys.next().endsWith(histogramSuffix))
+					keys.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return int number of cached prefixes
+	 */
+	public int size() {
+		int size = 0;
+		for (Map<String, Map<String, Prefix>> categories : prefixes.values()) {
+			for (Map<String, Prefix> namespaces : categories.values())
+				size += namespaces.size();
+		}
+		return size;
+	}
+}
@@ -0,0 +1,38 @@
+package com.aerospike.newrelic.utils;
+
+/**
+ * Ids of the statistics the plugin reads or derives itself.
+ *
+ */
+public final class StatIds {
+
+	/* node statistics */
+	public static final int CLUSTER_SIZE = id("cluster_size");
+	public static final int STAT_READ_REQS = id("stat_read_reqs");
+	public static final int STAT_READ_SUCCESS = id("stat_read_success");
+	public static final int STAT_WRITE_REQS = id("stat_write_reqs");
+	public static final int STAT_WRITE_SUCCESS = id("stat_write_success");
+	public static final int USED_BYTES_MEMORY = id("used_bytes_memory");
+	public static final int USED_BYTES_DISK = id("used_bytes_disk");
+
+	/* namespace statistics (ASD >= 3.9) */
+	public static final int CLIENT_READ_SUCCESS = id("client_read_success");
+	public static final int CLIENT_READ_ERROR = id("client_read_error");
+	public static final int CLIENT_WRITE_SUCCESS = id("client_write_success");
+	public static final int CLIENT_WRITE_ERROR = id("client_write_error");
+	public static final int MEMORY_USED_BYTES = id("memory_used_bytes");
+	public static final int DEVICE_USED_BYTES = id("device_used_bytes");
+
+	/* read/write counters derived by the plugin, independent of server version */
+	public static final int READ_REQS = id("read_reqs");
+	public static final int READ_SUCCESS = id("read_success");
+	public static final int WRITE_REQS = id("write_reqs");
+	public static final int WRITE_SUCCESS = id("write_success");
+
+	private StatIds() {
+	}
+
+	private static int id(String name) {
+		return StatRegistry.getInstance().getId(name);
+	}
+}
@@ -0,0 +1,169 @@
+package com.aerospike.newrelic.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registry interning statistic names to small integer ids. Lookups can be made
+ * straight from a region of an info response, so a String is only created the
+ * first time a statistic name is seen. Names are normalised on the way in:
+ * older servers (<3.9) mix [-] and [_], all [-] are stored as [_].
+ *
+ * Lookups are lock free, only registering a new name takes a lock.
+ *
+ */
+public final class StatRegistry {
+
+	private static final StatRegistry INSTANCE = new StatRegistry();
+
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private static final class Entry {
+		final String name;
+		final int hash;
+		final int id;
+
+		Entry(String name, int hash, int id) {
+			this.name = name;
+			this.hash = hash;
+			this.id = id;
+		}
+	}
+
+	private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<Entry>(INITIAL_CAPACITY);
+	private volatile String[] names = new String[INITIAL_CAPACITY / 2];
+	private volatile int size;
+
+	/**
+	 * @return StatRegistry registry shared by all agents
+	 */
+	public static StatRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Method to get the id of a statistic name.
+	 *
+	 * @param name
+	 *            Statistic name
+	 * @return int id of the normalised name
+	 */
+	public int getId(String name) {
+		return getId(name, 0, name.length());
+	}
+
+	/**
+	 * Method to get the id of a statistic name stored in a region of a char
+	 * sequence, registering it if it was not seen before.
+	 *
+	 * @param source
+	 *            Char sequence holding the name
+	 * @param start
+	 *            Index of the first char of the name
+	 * @param end
+	 *            Index after the last char of the name
+	 * @return int id of the normalised name
+	 */
+	public int getId(CharSequence source, int start, int end) {
+		int hash = hash(source, start, end);
+		int id = find(table, source, start, end, hash);
+		if (id >= 0)
+			return id;
+		return register(source, start, end, hash);
+	}
+
+	/**
+	 * Method to get the name of a statistic id.
+	 *
+	 * @param id
+	 *            Statistic id
+	 * @return String normalised statistic name
+	 */
+	public String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	 * @return int number of registered names, all ids are below this value
+	 */
+	public int size() {
+		return size;
+	}
+
+	private synchronized int register(CharSequence source, int start, int end, int hash) {
+		AtomicReferenceArray<Entry> current = table;
+		int id = find(current, source, start, end, hash);
+		if (id >= 0)
+			return id;
+
+		id = size;
+		char[] chars = new char[end - start];
+		for (int i = start; i < end; i++)
+			chars[i - start] = normalise(source.charAt(i));
+		Entry entry = new Entry(new String(chars), hash, id);
+
+		if (id >= names.length) {
+			String[] grown = new String[names.length * 2];
+			System.arraycopy(names, 0, grown, 0, names.length);
+			names = grown;
+		}
+		names[id] = entry.name;
+
+		/* keep the table at most half full */
+		if ((id + 1) * 2 > current.length()) {
+			AtomicReferenceArray<Entry> grown = new AtomicReferenceArray<Entry>(current.length() * 2);
+			for (int i = 0; i < current.length(); i++) {
+				Entry existing = current.get(i);
+				if (existing != null)
+					insert(grown, existing);
+			}
+			insert(grown, entry);
+			table = grown;
+		} else {
+			insert(current, entry);
+		}
+		size = id + 1;
+		return id;
+	}
+
+	private static void insert(AtomicReferenceArray<Entry> table, Entry entry) {
+		int mask = table.length() - 1;
+		int slot = entry.hash & mask;
+		while (table.get(slot) != null)
+			slot = (slot + 1) & mask;
+		table.set(slot, entry);
+	}
+
+	private static int find(AtomicReferenceArray<Entry> table, CharSequence source, int start, int end, int hash) {
+		int mask = table.length() - 1;
+		int slot = hash & mask;
+		Entry entry;
+		while ((entry = table.get(slot)) != null) {
+			if (entry.hash == hash && matches(entry.name, source, start, end))
+				return entry.id;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private static boolean matches(String name, CharSequence source, int start, int end) {
+		if (name.length() != end - start)
+			return false;
+		for (int i = start; i < end; i++) {
+			if (name.charAt(i - start) != normalise(source.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(CharSequence source, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + normalise(source.charAt(i));
+		/* spread the bits, the table is indexed by the low bits */
+		return hash ^ (hash >>> 16);
+	}
+
+	private static char normalise(char c) {
+		return c == '-' ? '_' : c;
+	}
+}
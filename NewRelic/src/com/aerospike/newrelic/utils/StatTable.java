@@ -0,0 +1,146 @@
+package com.aerospike.newrelic.utils;
+
+import java.util.Arrays;
+
+/**
+ * Table of numeric statistic values keyed by {@link StatRegistry} id. Ids and
+ * values are kept in the order they were put, so the table can be walked
+ * without boxing. Tables of parsed statistics index the positions by id for
+ * constant time lookups; small derived tables look ids up by a scan and only
+ * build the index if they outgrow {@link #SPARSE_LIMIT} entries.
+ *
+ */
+public final class StatTable {
+
+	/** Entries beyond which a sparse table indexes its positions by id */
+	static final int SPARSE_LIMIT = 32;
+
+	private int[] ids;
+	private double[] values;
+	/* position + 1 of each id, 0 if absent; null while the table is sparse */
+	private int[] positions;
+	private int size;
+
+	/**
+	 * Constructor for StatTable indexed for the names registered so far, for
+	 * the statistics parsed from an info response.
+	 */
+	public StatTable() {
+		this.ids = new int[64];
+		this.values = new double[64];
+		this.positions = new int[Math.max(64, StatRegistry.getInstance().size())];
+	}
+
+	/**
+	 * Constructor for a sparse StatTable, for the few statistics derived from
+	 * a snapshot. The table grows on put.
+	 *
+	 * @param capacity
+	 *            Expected number of statistics
+	 */
+	public StatTable(int capacity) {
+		this.ids = new int[Math.max(1, capacity)];
+		this.values = new double[ids.length];
+	}
+
+	/**
+	 * Method to set a statistic value.
+	 *
+	 * @param id
+	 *            Statistic id
+	 * @param value
+	 *            Statistic value
+	 */
+	public void put(int id, double value) {
+		int position = position(id);
+		if (position >= 0) {
+			values[position] = value;
+			return;
+		}
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		ids[size] = id;
+		values[size] = value;
+		size++;
+		if (positions != null) {
+			if (id >= positions.length)
+				positions = Arrays.copyOf(positions, Math.max(positions.length * 2, id + 1));
+			positions[id] = size;
+		} else if (size > SPARSE_LIMIT) {
+			index();
+		}
+	}
+
+	private int position(int id) {
+		if (positions != null)
+			return id < positions.length ? positions[id] - 1 : -1;
+		for (int i = 0; i < size; i++) {
+			if (ids[i] == id)
+				return i;
+		}
+		return -1;
+	}
+
+	private void index() {
+		int capacity = 64;
+		for (int i = 0; i < size; i++)
+			capacity = Math.max(capacity, ids[i] + 1);
+		positions = new int[capacity];
+		for (int i = 0; i < size; i++)
+			positions[ids[i]] = i + 1;
+	}
+
+	/**
+	 * @return boolean true if the table holds a value for the id
+	 */
+	public boolean contains(int id) {
+		return position(id) >= 0;
+	}
+
+	/**
+	 * Method to get a statistic value.
+	 *
+	 * @param id
+	 *            Statistic id
+	 * @return double value or 0 if not present
+	 */
+	public double get(int id) {
+		int position = position(id);
+		return position >= 0 ? values[position] : 0;
+	}
+
+	/**
+	 * @return int number of statistics in the table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return int id of the statistic at the given position (0 to size - 1)
+	 */
+	public int idAt(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * @return double value of the statistic at the given position (0 to size
+	 *         - 1)
+	 */
+	public double valueAt(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Method to remove all values, keeping the allocated storage.
+	 */
+	public void clear() {
+		if (positions != null) {
+			for (int i = 0; i < size; i++)
+				positions[ids[i]] = 0;
+		}
+		size = 0;
+	}
+}
@@ -1,26 +1,44 @@
 package com.aerospike.newrelic.connector;
 
+import static com.aerospike.newrelic.utils.StatIds.*;
 import static org.junit.Assert.*;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Host;
 import com.aerospike.client.cluster.Node;
+import com.aerospike.newrelic.fake.FakeCluster;
+import com.aerospike.newrelic.fake.FakeNode.Fault;
+import com.aerospike.newrelic.utils.LatencyHistogram;
+import com.aerospike.newrelic.utils.StatTable;
 
 public class TestBase {
+	private static final int NODES = 2;
+
+	private FakeCluster cluster;
 	private Base base;
 
 	/**
 	 * method to be executed before every unit test case
 	 */
 	@Before
-	public void createAerospikeClient() {
+	public void startCluster() throws IOException {
+		cluster = new FakeCluster(NODES, "test", "bar");
+		cluster.setCounterGrowth(1000000);
+		cluster.start();
 		base = new Base();
-		base.createAerospikeClient("127.0.0.1", 3000, null, null);
 	}
 
 	/**
@@ -29,116 +47,276 @@ public class TestBase {
 	@After
 	public void closeClientConnections() {
 		base.closeClientConnections();
+		cluster.stop();
+	}
+
+	/**
+	 * method to connect the client and wait until it sees all nodes
+	 */
+	private Node[] connect() throws InterruptedException {
+		base.createAerospikeClient(cluster.getSeeds(), null, null);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (base.getAerospikeNodes().length < NODES && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		Node[] nodes = base.getAerospikeNodes();
+		assertEquals(NODES, nodes.length);
+		return nodes;
 	}
 
 	/**
 	 * method to unit test getAerospikeClient() of Base class
 	 */
 	@Test
-	public void testGetAerospikeClient() {
+	public void testGetAerospikeClient() throws InterruptedException {
+		connect();
 		assertNotNull(base.getAerospikeClient());
+		assertTrue(base.getAerospikeClient().isConnected());
 	}
 
 	/**
 	 * method to unit test getAerospikeNode() of Base class
 	 */
 	@Test
-	public void testGetAerospikeNode() {
+	public void testGetAerospikeNode() throws InterruptedException {
+		connect();
 		assertNotNull(base.getAerospikeNode("127.0.0.1"));
-
+		assertNull(base.getAerospikeNode("10.0.0.1"));
 	}
 
 	/**
 	 * method to unit test getAerospikeNodes() of Base class
 	 */
 	@Test
-	public void testGetAerospikeNodes() {
-		assertNotNull(base.getAerospikeNodes("127.0.0.1"));
+	public void testGetAerospikeNodes() throws InterruptedException {
+		Set<String> names = new HashSet<String>();
+		for (Node node : connect())
+			names.add(node.getName());
+		assertEquals(new HashSet<String>(Arrays.asList(cluster.getNode(0).getName(), cluster.getNode(1).getName())),
+				names);
 	}
 
 	/**
 	 * method to unit test getNodeStatistics() of Base class
 	 */
 	@Test
-	public void testGetNodeStatistics() {
-		Node[] nodes = base.getAerospikeNodes("127.0.0.1");
-		for (Node node : nodes)
-			assertNotNull(base.getNodeStatistics(node));
+	public void testGetNodeStatistics() throws InterruptedException {
+		for (Node node : connect()) {
+			StatTable stats = base.getNodeStatistics(node);
+			assertNotNull(stats);
+			assertEquals(NODES, stats.get(CLUSTER_SIZE), 0);
+		}
 	}
 
 	/**
 	 * method to unit test getNamespaces() of Base class
 	 */
 	@Test
-	public void testGetNamespaces() {
-		assertNotEquals("", base.getNamespaces("127.0.0.1"));
+	public void testGetNamespaces() throws InterruptedException {
+		connect();
+		assertEquals(Arrays.asList("test", "bar"), Arrays.asList(base.getNamespaces()));
 	}
 
 	/**
 	 * method to unit test getNamespaceStatistics() of Base class
 	 */
 	@Test
-	public void testGetNamespaceStatistics() {
-		String[] namespaces = base.getNamespaces("127.0.0.1");
-		Node[] nodes = base.getAerospikeNodes("127.0.0.1");
-		for (String namespace : namespaces) {
+	public void testGetNamespaceStatistics() throws InterruptedException {
+		Node[] nodes = connect();
+		for (String namespace : base.getNamespaces()) {
 			for (Node node : nodes) {
-				assertNotNull(base.getNamespaceStatistics(namespace, node));
+				StatTable stats = base.getNamespaceStatistics(namespace, node);
+				assertNotNull(stats);
+				assertTrue(stats.contains(CLIENT_READ_SUCCESS));
+				assertEquals(4194304, stats.get(DEVICE_USED_BYTES), 0);
 			}
 		}
 	}
 
+	/**
+	 * method to unit test takeSnapshot() of Base class: namespaces are only
+	 * read again after the partition generation changed
+	 */
+	@Test
+	public void testTakeSnapshot() throws InterruptedException {
+		Node node = connect()[0];
+		NodeSnapshot snapshot = base.takeSnapshot(node);
+		assertEquals(Arrays.asList("test", "bar"), Arrays.asList(snapshot.getNamespaces()));
+		assertNotNull(snapshot.getNamespaceStatistics("bar"));
+
+		cluster.getNode(0).setNamespaces("test");
+		cluster.getNode(1).setNamespaces("test");
+		snapshot = base.takeSnapshot(node);
+		assertEquals(Arrays.asList("test"), Arrays.asList(snapshot.getNamespaces()));
+		assertNull(snapshot.getNamespaceStatistics("bar"));
+	}
+
 	/**
 	 * method to unit test getNodeLatency() of Base class
 	 */
 	@Test
-	public void testGetNodeLatency() {
-		Node[] nodes = base.getAerospikeNodes("127.0.0.1");
-		for (Node node : nodes) {
-			if (base.getNodeLatency(node).size() > 0) {
-				assertEquals(true, base.getNodeLatency(node).keySet().contains("reads"));
-				assertEquals(true, base.getNodeLatency(node).keySet().contains("writes_master"));
-				assertEquals(true, base.getNodeLatency(node).keySet().contains("proxy"));
-				assertEquals(true, base.getNodeLatency(node).keySet().contains("udf"));
-				assertEquals(true, base.getNodeLatency(node).keySet().contains("query"));
-			}
+	public void testGetNodeLatency() throws InterruptedException {
+		cluster.setBuild("3.8.4");
+		for (Node node : connect()) {
+			Set<String> keys = new HashSet<String>();
+			for (LatencyHistogram histogram : base.getNodeLatency(base.takeSnapshot(node)))
+				keys.add(histogram.getKey());
+			assertTrue(keys.contains("read"));
+			assertTrue(keys.contains("write"));
+			assertTrue(keys.contains("proxy"));
+			assertTrue(keys.contains("udf"));
+			assertTrue(keys.contains("query"));
 		}
 	}
 
+	/**
+	 * method to unit test getNodeLatency() of Base class for servers 5.1+
+	 */
+	@Test
+	public void testGetNodeLatencies() throws InterruptedException {
+		cluster.setBuild("5.2.0");
+		for (Node node : connect()) {
+			List<LatencyHistogram> histograms = base.getNodeLatency(base.takeSnapshot(node));
+			assertEquals(4, histograms.size());
+			LatencyHistogram read = histograms.get(0);
+			assertEquals("read-{test}", read.getKey());
+			assertEquals(12, read.getBuckets().size());
+			assertEquals(60.0, read.getBucketPct(0), 0.0001);
+		}
+	}
+
+	/**
+	 * method to unit test takeSnapshot() of Base class across an upgrade that
+	 * keeps the node object: the build is read again once the partition
+	 * generation changed
+	 */
+	@Test
+	public void testUpgradeInPlace() throws InterruptedException {
+		cluster.setBuild("3.8.4");
+		Node node = connect()[0];
+		assertFalse(base.takeSnapshot(node).getCapabilities().hasLatencies());
+
+		cluster.setBuild("5.2.0");
+		assertFalse(base.takeSnapshot(node).getCapabilities().hasLatencies());
+		cluster.getNode(0).bumpPartitionGeneration();
+		cluster.getNode(1).bumpPartitionGeneration();
+		NodeSnapshot snapshot = base.takeSnapshot(node);
+		assertTrue(snapshot.getCapabilities().hasLatencies());
+		assertEquals("5.2.0", base.getCapabilities(node).getBuild());
+		assertEquals(4, base.getNodeLatency(snapshot).size());
+	}
+
 	/**
 	 * method to unit test getThroughput() of Base class
 	 */
 	@Test
-	public void testGetThroughput() {
-		Map<String, Map<String, String>> output = new HashMap<String, Map<String, String>>();
-		Node[] nodes = base.getAerospikeNodes("127.0.0.1");
-		for (Node node : nodes) {
-			assertNotEquals(output.size(), base.getThroughput(base.getNodeStatistics(node), node).size());
+	public void testGetThroughput() throws InterruptedException {
+		for (Node node : connect()) {
+			base.getThroughput(base.takeSnapshot(node));
+			Thread.sleep(50);
+			StatTable throughput = base.getThroughput(base.takeSnapshot(node));
+			assertTrue(throughput.get(READ_REQS) > 0);
+			assertTrue(throughput.get(WRITE_SUCCESS) > 0);
 		}
 	}
 
 	/**
-	 * method to unit test getMemoryStats() of Base class
+	 * method to unit test getThroughput() of Base class with pre 3.9 node
+	 * level stats
 	 */
 	@Test
-	public void testGetMemoryStats() {
-		Map<String, String> memoryStats = new HashMap<String, String>();
-		Node[] nodes = base.getAerospikeNodes("127.0.0.1");
-		for (Node node : nodes) {
-			assertNotEquals(memoryStats.size(), base.getMemoryStats(base.getNodeStatistics(node)).size());
+	public void testGetThroughputLegacy() throws InterruptedException {
+		cluster.setBuild("3.8.4");
+		for (Node node : connect()) {
+			base.getThroughput(base.takeSnapshot(node));
+			Thread.sleep(50);
+			StatTable throughput = base.getThroughput(base.takeSnapshot(node));
+			assertTrue(throughput.get(READ_REQS) > 0);
+			assertTrue(throughput.get(WRITE_SUCCESS) > 0);
 		}
 	}
 
+	/**
+	 * method to unit test getMemoryStats() of Base class
+	 */
+	@Test
+	public void testGetMemoryStats() throws InterruptedException {
+		for (Node node : connect())
+			assertEquals(2 * 1048576, base.getMemoryStats(base.takeSnapshot(node)).get(USED_BYTES_MEMORY), 0);
+	}
+
 	/**
 	 * method to unit test getDiskStats() of Base class
 	 */
 	@Test
-	public void testGetDiskStats() {
-		Map<String, String> diskStats = new HashMap<String, String>();
-		Node[] nodes = base.getAerospikeNodes("127.0.0.1");
-		for (Node node : nodes) {
-			assertNotEquals(diskStats.size(), base.getDiskStats(base.getNodeStatistics(node)).size());
+	public void testGetDiskStats() throws InterruptedException {
+		cluster.setBuild("3.8.4");
+		for (Node node : connect())
+			assertEquals(2 * 4194304, base.getDiskStats(base.takeSnapshot(node)).get(USED_BYTES_DISK), 0);
+	}
+
+	/**
+	 * method to unit test takeSnapshot() of Base class with a deadline on a
+	 * slow node
+	 */
+	@Test
+	public void testTakeSnapshotDeadline() throws InterruptedException {
+		Node[] nodes = connect();
+		for (int i = 0; i < NODES; i++) {
+			cluster.setDelay(i, 1000);
+		}
+		long start = System.nanoTime();
+		try {
+			base.takeSnapshot(nodes[0], start + 100000000L);
+			fail("Snapshot of a slow node must time out");
+		} catch (AerospikeException e) {
+			assertTrue(System.nanoTime() - start < 900000000L);
 		}
 	}
 
+	/**
+	 * method to unit test the circuit breaker of Base class with a failing
+	 * node
+	 */
+	@Test
+	public void testCircuitBreaker() throws InterruptedException {
+		Node[] nodes = connect();
+		for (int i = 0; i < NODES; i++) {
+			cluster.setFault(i, Fault.CLOSE);
+		}
+		for (int i = 0; i < 5; i++) {
+			try {
+				base.takeSnapshot(nodes[0]);
+				fail("Snapshot of a failing node must fail");
+			} catch (AerospikeException e) {
+				/* expected */
+			}
+		}
+		assertEquals(CircuitBreaker.State.OPEN, base.getCircuitBreaker(nodes[0]).getState());
+	}
+
+	/**
+	 * method to unit test that agents with the same seeds and credentials share
+	 * one client, closed with the last of them
+	 */
+	@Test
+	public void testSharedClient() throws InterruptedException {
+		connect();
+		AerospikeClient client = base.getAerospikeClient();
+		ArrayList<Host> seeds = new ArrayList<Host>(cluster.getSeeds());
+		Collections.reverse(seeds);
+		Base other = new Base();
+		other.createAerospikeClient(seeds, null, null);
+		assertSame(client, other.getAerospikeClient());
+		assertEquals(2, ClientRegistry.getInstance().getReferences(client));
+
+		/* the fake nodes do not authenticate, credentials are checked on the key */
+		assertEquals(ClientRegistry.key(cluster.getSeeds(), null, null), ClientRegistry.key(seeds, null, null));
+		assertFalse(ClientRegistry.key(seeds, null, null).equals(ClientRegistry.key(seeds, "admin", "admin")));
+
+		other.closeClientConnections();
+		assertTrue(client.isConnected());
+		base.closeClientConnections();
+		assertFalse(client.isConnected());
+		assertEquals(0, ClientRegistry.getInstance().getReferences(client));
+	}
 }
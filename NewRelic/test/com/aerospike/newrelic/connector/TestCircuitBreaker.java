@@ -0,0 +1,52 @@
+package com.aerospike.newrelic.connector;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.aerospike.newrelic.connector.CircuitBreaker.Permit;
+import com.aerospike.newrelic.connector.CircuitBreaker.State;
+
+public class TestCircuitBreaker {
+	private static final long SECOND = 1000000000L;
+
+	/**
+	 * method to unit test opening and backoff of CircuitBreaker class
+	 */
+	@Test
+	public void testOpenAndBackoff() {
+		CircuitBreaker breaker = new CircuitBreaker(2, 10 * SECOND, 25 * SECOND);
+		breaker.recordFailure(0);
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(Permit.ALLOW, breaker.acquire(0));
+
+		breaker.recordFailure(0);
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(Permit.REJECT, breaker.acquire(9 * SECOND));
+
+		assertEquals(Permit.PROBE, breaker.acquire(10 * SECOND));
+		assertEquals(Permit.REJECT, breaker.acquire(10 * SECOND));
+		breaker.recordFailure(10 * SECOND);
+		assertEquals(20 * SECOND, breaker.getBackoffNanos());
+		assertEquals(Permit.REJECT, breaker.acquire(29 * SECOND));
+
+		assertEquals(Permit.PROBE, breaker.acquire(30 * SECOND));
+		breaker.recordFailure(30 * SECOND);
+		assertEquals(25 * SECOND, breaker.getBackoffNanos());
+	}
+
+	/**
+	 * method to unit test closing of CircuitBreaker class
+	 */
+	@Test
+	public void testClose() {
+		CircuitBreaker breaker = new CircuitBreaker(1, SECOND, SECOND);
+		breaker.recordFailure(0);
+		assertEquals(Permit.PROBE, breaker.acquire(SECOND));
+		breaker.recordSuccess();
+
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(0, breaker.getConsecutiveFailures());
+		assertEquals(Permit.ALLOW, breaker.acquire(SECOND));
+	}
+}
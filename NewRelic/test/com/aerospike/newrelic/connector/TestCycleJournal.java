@@ -0,0 +1,179 @@
+package com.aerospike.newrelic.connector;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCycleJournal {
+
+	/* a names record of 10 metrics takes 439 bytes, a cycle of 10 metrics 155 */
+	private static final int NAMES_AND_THREE_CYCLES = 32 + 439 + 3 * 155;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * method to build a cycle of metrics all set to one value
+	 */
+	private static MetricBuffer cycle(int metrics, double value) {
+		return cycle("127.0.0.1", metrics, value);
+	}
+
+	private static MetricBuffer cycle(String host, int metrics, double value) {
+		MetricBuffer cycle = new MetricBuffer();
+		for (int i = 0; i < metrics; i++)
+			cycle.add("aerospike/nodeStats/" + host + "/stat" + i, "", value);
+		return cycle;
+	}
+
+	private CycleJournal newJournal(long maxBytes) throws IOException {
+		return new CycleJournal(new File(folder.getRoot(), "journal"), maxBytes);
+	}
+
+	/**
+	 * method to read the cycles of a journal into one buffer, with their times
+	 */
+	private static MetricBuffer readAll(CycleJournal journal, final List<Long> times) {
+		final MetricBuffer read = new MetricBuffer();
+		journal.read(Integer.MAX_VALUE, new CycleJournal.CycleReader() {
+			@Override
+			public void cycle(long sequence, long timeMillis, MetricBuffer metrics) {
+				times.add(timeMillis);
+				for (int i = 0; i < metrics.size(); i++)
+					read.add(metrics.getName(i), metrics.getUnits(i), metrics.getCount(i), metrics.getValue(i),
+							metrics.getMin(i), metrics.getMax(i), metrics.getSumOfSquares(i));
+			}
+		});
+		return read;
+	}
+
+	/**
+	 * method to unit test append() and read() of CycleJournal class
+	 */
+	@Test
+	public void testAppendAndRead() throws IOException {
+		CycleJournal journal = newJournal(1 << 16);
+		MetricBuffer aggregated = cycle(2, 1);
+		aggregated.add("aerospike/summary/reads/total", "ops", 3, 30, 5, 15, 350);
+		assertEquals(0, journal.append(aggregated, 1000));
+		assertEquals(1, journal.append(cycle(2, 2), 2000));
+		assertEquals(2, journal.size());
+		assertEquals(1000, journal.getOldestTimeMillis());
+
+		List<Long> times = new ArrayList<Long>();
+		MetricBuffer read = readAll(journal, times);
+		assertEquals(Arrays.asList(1000L, 2000L), times);
+		assertEquals(5, read.size());
+		assertEquals("aerospike/nodeStats/127.0.0.1/stat1", read.getName(1));
+		assertEquals(0, read.getCount(1));
+		assertEquals("ops", read.getUnits(2));
+		assertEquals(3, read.getCount(2));
+		assertEquals(30, read.getValue(2), 0);
+		assertEquals(15, read.getMax(2), 0);
+		assertEquals(350, read.getSumOfSquares(2), 0);
+		assertEquals("aerospike/nodeStats/127.0.0.1/stat1", read.getName(4));
+		assertEquals(2, read.getValue(4), 0);
+		/* reading does not remove the cycles */
+		assertEquals(1, journal.read(1, new CycleJournal.CycleReader() {
+			@Override
+			public void cycle(long sequence, long timeMillis, MetricBuffer metrics) {
+				assertEquals(0, sequence);
+			}
+		}));
+		assertEquals(2, journal.size());
+	}
+
+	/**
+	 * method to unit test the oldest-first eviction of CycleJournal class when
+	 * the file is full: names are written once, and again when their record
+	 * is evicted
+	 */
+	@Test
+	public void testEviction() throws IOException {
+		CycleJournal journal = newJournal(NAMES_AND_THREE_CYCLES);
+		for (int i = 0; i < 10; i++)
+			assertEquals(i, journal.append(cycle(10, i), i));
+		assertEquals(3, journal.size());
+		assertEquals(7, journal.getOldestTimeMillis());
+
+		List<Long> times = new ArrayList<Long>();
+		MetricBuffer read = readAll(journal, times);
+		assertEquals(Arrays.asList(7L, 8L, 9L), times);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("aerospike/nodeStats/127.0.0.1/stat0", read.getName(i * 10));
+			assertEquals(7 + i, read.getValue(i * 10), 0);
+		}
+
+		assertEquals(-1, journal.append(cycle(100, 0), 10));
+		assertEquals(3, journal.size());
+	}
+
+	/**
+	 * method to unit test CycleJournal class with names that come and go: the
+	 * ids of names no cycle uses anymore are reused
+	 */
+	@Test
+	public void testChangingNames() throws IOException {
+		CycleJournal journal = newJournal(2 * NAMES_AND_THREE_CYCLES);
+		for (int i = 0; i < 20; i++)
+			journal.append(cycle("10.0.0." + i % 4, 10, i), i);
+
+		List<Long> times = new ArrayList<Long>();
+		MetricBuffer read = readAll(journal, times);
+		assertTrue(times.size() > 0);
+		for (int i = 0; i < times.size(); i++) {
+			long time = times.get(i);
+			assertEquals("aerospike/nodeStats/10.0.0." + time % 4 + "/stat9", read.getName(i * 10 + 9));
+			assertEquals(time, read.getValue(i * 10 + 9), 0);
+		}
+
+		journal = newJournal(2 * NAMES_AND_THREE_CYCLES);
+		times.clear();
+		read = readAll(journal, times);
+		assertEquals(19L, (long) times.get(times.size() - 1));
+		assertEquals("aerospike/nodeStats/10.0.0.3/stat0", read.getName(read.size() - 10));
+	}
+
+	/**
+	 * method to unit test that the cycles of CycleJournal class survive a
+	 * restart, and that a file of another size is cleared
+	 */
+	@Test
+	public void testReopen() throws IOException {
+		CycleJournal journal = newJournal(NAMES_AND_THREE_CYCLES);
+		for (int i = 0; i < 5; i++)
+			journal.append(cycle(10, i), 100 + i);
+
+		journal = newJournal(NAMES_AND_THREE_CYCLES);
+		assertEquals(3, journal.size());
+		List<Long> times = new ArrayList<Long>();
+		MetricBuffer read = readAll(journal, times);
+		assertEquals(Arrays.asList(102L, 103L, 104L), times);
+		assertEquals("aerospike/nodeStats/127.0.0.1/stat0", read.getName(20));
+		assertEquals(4, read.getValue(20), 0);
+		MetricBuffer extended = cycle(10, 5);
+		extended.add("aerospike/nodeStats/127.0.0.1/extra", "", 5);
+		assertEquals(5, journal.append(extended, 105));
+		/* the new name and the names of the evicted record only leave room for this cycle */
+		assertEquals(1, journal.size());
+		assertEquals(105, journal.getOldestTimeMillis());
+
+		journal = newJournal(NAMES_AND_THREE_CYCLES);
+		times.clear();
+		read = readAll(journal, times);
+		assertEquals(105L, (long) times.get(times.size() - 1));
+		assertEquals("aerospike/nodeStats/127.0.0.1/extra", read.getName(read.size() - 1));
+
+		journal = newJournal(1 << 16);
+		assertEquals(0, journal.size());
+		assertEquals(0, journal.append(cycle(10, 0), 200));
+	}
+}
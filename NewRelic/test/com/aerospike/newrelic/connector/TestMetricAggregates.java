@@ -0,0 +1,51 @@
+package com.aerospike.newrelic.connector;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestMetricAggregates {
+
+	/**
+	 * method to unit test add() of MetricAggregates class
+	 */
+	@Test
+	public void testAdd() {
+		MetricAggregates aggregates = new MetricAggregates();
+		aggregates.add("aerospike/throughput/a/reads/total", "", 10);
+		aggregates.add("aerospike/throughput/a/reads/total", "", 40);
+		aggregates.add("aerospike/throughput/a/reads/total", "", 25);
+
+		assertEquals(1, aggregates.size());
+		assertEquals(3, aggregates.getCount(0));
+		assertEquals(75, aggregates.getTotal(0), 0);
+		assertEquals(10, aggregates.getMin(0), 0);
+		assertEquals(40, aggregates.getMax(0), 0);
+		assertEquals(100 + 1600 + 625, aggregates.getSumOfSquares(0), 0);
+	}
+
+	/**
+	 * method to unit test clear() and removeContaining() of MetricAggregates
+	 * class
+	 */
+	@Test
+	public void testClear() {
+		MetricAggregates aggregates = new MetricAggregates();
+		aggregates.add("aerospike/nodeStats/a/queue", "", 1);
+		aggregates.add("aerospike/nodeStats/b/queue", "", 2);
+		aggregates.clear();
+		assertEquals(2, aggregates.size());
+		assertEquals(0, aggregates.getCount(0));
+
+		/* metrics without samples in an interval are dropped */
+		aggregates.add("aerospike/nodeStats/b/queue", "", 5);
+		aggregates.clear();
+		assertEquals(1, aggregates.size());
+		assertEquals("aerospike/nodeStats/b/queue", aggregates.getName(0));
+
+		aggregates.add("aerospike/nodeStats/b/queue", "", 3);
+		assertEquals(3, aggregates.getMin(0), 0);
+		aggregates.removeContaining("/b/");
+		assertEquals(0, aggregates.size());
+	}
+}
@@ -0,0 +1,60 @@
+package com.aerospike.newrelic.connector;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.aerospike.newrelic.connector.PluginStats.NodeInfoStats;
+
+public class TestPluginStats {
+
+	/**
+	 * method to unit test round trip recording of PluginStats class
+	 */
+	@Test
+	public void testRecordInfo() {
+		NodeInfoStats stats = new NodeInfoStats("10.0.0.1");
+		stats.record(100000L, 400);
+		stats.record(3000000L, 100);
+		stats.record(5000000000L, 10);
+
+		assertEquals(3, stats.getRoundTrips());
+		assertEquals(510, stats.getBytesReceived());
+		assertEquals(1, stats.getRttCount(0));
+		assertEquals(1, stats.getRttCount(4));
+		assertEquals(1, stats.getRttCount(PluginStats.RTT_BUCKETS.size() - 1));
+		assertEquals("2000us_to_4000us", PluginStats.RTT_BUCKETS.getName(4));
+
+		stats.reset();
+		assertEquals(0, stats.getRoundTrips());
+	}
+
+	/**
+	 * method to unit test error and phase counting of PluginStats class
+	 */
+	@Test
+	public void testCycle() {
+		PluginStats pluginStats = new PluginStats();
+		pluginStats.startCycle();
+		pluginStats.recordError(new IllegalStateException());
+		pluginStats.recordError(new IllegalStateException());
+		pluginStats.addPhaseTime("collect", System.nanoTime());
+		pluginStats.metricEmitted();
+		pluginStats.endCycle();
+
+		assertEquals(Long.valueOf(2), pluginStats.getErrors().get("IllegalStateException"));
+		assertTrue(pluginStats.getPhaseNanos().containsKey("collect"));
+		assertEquals(1, pluginStats.getMetricsEmitted());
+
+		/* errors between cycles (samples) are counted with the next cycle */
+		pluginStats.published();
+		pluginStats.recordError(new IllegalStateException());
+		pluginStats.startCycle();
+		assertEquals(Long.valueOf(1), pluginStats.getErrors().get("IllegalStateException"));
+		assertFalse(pluginStats.getPhaseNanos().containsKey("collect"));
+		assertEquals(0, pluginStats.getMetricsEmitted());
+
+		pluginStats.published();
+		assertTrue(pluginStats.getErrors().isEmpty());
+	}
+}
@@ -0,0 +1,330 @@
+package com.aerospike.newrelic.connector;
+
+import static com.aerospike.newrelic.utils.StatIds.READ_REQS;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.aerospike.newrelic.fake.FakeCluster;
+import com.aerospike.newrelic.fake.FakeCollector;
+import com.newrelic.metrics.publish.configuration.ConfigurationException;
+
+public class TestPollCycle {
+
+	/*
+	 * Info requests and commands a cycle may cost: one pipelined request per
+	 * node, plus the namespace list and the statistics of new namespaces when
+	 * the partition generation changed.
+	 */
+	private static final int REQUESTS_PER_NODE = 3;
+	private static final int COMMANDS_PER_NODE = 4;
+	private static final int COMMANDS_PER_NAMESPACE = 2;
+
+	private FakeCluster cluster;
+	private List<AerospikeAgent> agents = new ArrayList<AerospikeAgent>();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void stopCluster() {
+		closeAgents();
+		if (cluster != null)
+			cluster.stop();
+	}
+
+	/**
+	 * method to close the agents of a test, saving their checkpoint while its
+	 * folder still exists
+	 */
+	private void closeAgents() {
+		for (AerospikeAgent agent : agents)
+			agent.close();
+		agents.clear();
+	}
+
+	private AerospikeAgent newAgent(ArrayList<String> seeds, String clusterName, AgentSettings settings)
+			throws ConfigurationException {
+		AerospikeAgent agent = new AerospikeAgent(seeds, null, null, clusterName, settings);
+		agents.add(agent);
+		return agent;
+	}
+
+	/**
+	 * method to start a cluster and an agent polling it, polling until the
+	 * agent sees every node
+	 */
+	private AerospikeAgent startAgent(int nodes, int namespaces) throws Exception {
+		return startAgent(nodes, namespaces, new AgentSettings());
+	}
+
+	private AerospikeAgent startAgent(int nodes, int namespaces, AgentSettings settings) throws Exception {
+		String[] names = new String[namespaces];
+		for (int i = 0; i < namespaces; i++)
+			names[i] = "ns" + i;
+		cluster = new FakeCluster(nodes, names);
+		cluster.start();
+		AerospikeAgent agent = newAgent(cluster.getSeedList(), "test", settings);
+		new FakeCollector(agent);
+		assertTrue(agent.awaitConnected(10000));
+		long deadline = System.currentTimeMillis() + 10000;
+		do {
+			agent.pollCycle();
+		} while (agent.getTopology().getNodes().size() < nodes && System.currentTimeMillis() < deadline);
+		assertEquals(nodes, agent.getTopology().getNodes().size());
+		return agent;
+	}
+
+	/**
+	 * method to check the info round trips of one cycle against
+	 * O(nodes + nodes x namespaces)
+	 */
+	private void assertRoundTrips(AerospikeAgent agent, int nodes, int namespaces) {
+		cluster.resetCounters();
+		agent.pollCycle();
+		PluginStats stats = agent.getCollectionState().getPluginStats();
+		assertEquals(0, stats.getStaleNodes());
+		assertTrue(stats.getMetricsEmitted() > 0);
+		assertTrue("requests: " + cluster.getRequests(), cluster.getRequests() <= REQUESTS_PER_NODE * nodes);
+		assertTrue("commands: " + cluster.getCommands(),
+				cluster.getCommands() <= COMMANDS_PER_NODE * nodes + COMMANDS_PER_NAMESPACE * nodes * namespaces);
+	}
+
+	/**
+	 * method to unit test the info round trips of pollCycle() of
+	 * AerospikeAgent class, in steady state and after a rebalance
+	 */
+	@Test
+	public void testRoundTrips() throws Exception {
+		int[][] points = { { 1, 1 }, { 4, 1 }, { 4, 8 } };
+		for (int[] point : points) {
+			int nodes = point[0];
+			int namespaces = point[1];
+			AerospikeAgent agent = startAgent(nodes, namespaces);
+			assertRoundTrips(agent, nodes, namespaces);
+			assertEquals(nodes, cluster.getRequests());
+
+			for (int i = 0; i < nodes; i++)
+				cluster.getNode(i).bumpPartitionGeneration();
+			assertRoundTrips(agent, nodes, namespaces);
+			closeAgents();
+			cluster.stop();
+		}
+	}
+
+	/**
+	 * method to unit test pollCycle() of AerospikeAgent class with metric
+	 * families on their own interval: only latency is read again, the other
+	 * families report their last values
+	 */
+	@Test
+	public void testPollIntervals() throws Exception {
+		Map<String, Object> intervals = new HashMap<String, Object>();
+		intervals.put("node_stats", 3600);
+		intervals.put("throughput", 3600);
+		intervals.put("namespace", 3600);
+		intervals.put("summary", 3600);
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("poll_intervals", intervals);
+		AerospikeAgent agent = startAgent(2, 4, new AgentSettings(properties));
+		assertRoundTrips(agent, 2, 4);
+		long commands = cluster.getCommands();
+		long metrics = agent.getCollectionState().getPluginStats().getMetricsEmitted();
+
+		/* a new agent collects everything on its first cycle */
+		agent = newAgent(cluster.getSeedList(), "test", new AgentSettings(properties));
+		new FakeCollector(agent);
+		assertTrue(agent.awaitConnected(10000));
+		agent.pollCycle();
+		assertEquals(2, agent.getTopology().getNodes().size());
+		long collected = agent.getCollectionState().getPluginStats().getMetricsEmitted();
+		assertTrue(collected > 0);
+
+		/* statistics, partition generation and latency per node */
+		assertEquals(3 * 2, commands);
+		assertEquals(collected, metrics);
+	}
+
+	/**
+	 * method to unit test sample() of AerospikeAgent class: samples taken
+	 * between cycles are reported by the cycle as aggregates
+	 */
+	@Test
+	public void testSampling() throws Exception {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		/* the sampler thread does not run during the test, samples are taken by hand */
+		properties.put("sample_interval_ms", 3600000);
+		/* one node, metric names of the fake nodes only differ by port */
+		AerospikeAgent agent = startAgent(1, 2, new AgentSettings(properties));
+		FakeCollector collector = new FakeCollector(agent);
+		collector.watch("/round_trips");
+
+		agent.sample();
+		agent.sample();
+		agent.pollCycle();
+		assertTrue(collector.getAggregates() > 0);
+		/* two samples and the cycle itself */
+		assertEquals(3 * collector.getAggregates(), collector.getSamples());
+		/* the round trips of the samples are published with the cycle */
+		double roundTrips = collector.getWatched();
+		assertTrue(roundTrips >= 3);
+
+		collector.reset();
+		agent.pollCycle();
+		assertEquals(collector.getAggregates(), collector.getSamples());
+		assertTrue(collector.getWatched() < roundTrips);
+	}
+
+	/**
+	 * method to unit test the collect/publish pipeline of AerospikeAgent
+	 * class: pollCycle() publishes each collected cycle once
+	 */
+	@Test
+	public void testPipeline() throws Exception {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("collect_interval_ms", 3600000);
+		AerospikeAgent agent = startAgent(1, 2, new AgentSettings(properties));
+		FakeCollector collector = new FakeCollector(agent);
+
+		/* wait for the first cycle of the pipeline thread, the next one is an hour away */
+		long deadline = System.currentTimeMillis() + 10000;
+		do {
+			collector.reset();
+			agent.pollCycle();
+		} while (collector.getMetrics() == 0 && System.currentTimeMillis() < deadline);
+		long metrics = collector.getMetrics();
+		assertTrue(metrics > 0);
+
+		/* nothing collected since */
+		cluster.resetCounters();
+		collector.reset();
+		agent.pollCycle();
+		assertEquals(0, collector.getMetrics());
+		assertEquals(0, cluster.getRequests());
+
+		agent.collectCycle();
+		assertEquals(0, collector.getMetrics());
+		agent.pollCycle();
+		/* rates are only known from the second cycle on */
+		assertTrue(collector.getMetrics() >= metrics);
+	}
+
+	/**
+	 * method to unit test the journal of AerospikeAgent class: published
+	 * cycles are journaled with their time and kept for the next agent
+	 */
+	@Test
+	public void testJournal() throws Exception {
+		File file = new File(folder.getRoot(), "journal");
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("journal_file", file.getPath());
+		AgentSettings settings = new AgentSettings(properties);
+		AerospikeAgent agent = startAgent(1, 2, settings);
+		FakeCollector collector = new FakeCollector(agent);
+		int journaled = agent.getJournal().size();
+		assertTrue(journaled > 0);
+
+		long before = System.currentTimeMillis();
+		collector.reset();
+		agent.pollCycle();
+		assertEquals(journaled + 1, agent.getJournal().size());
+
+		/* the newest cycle holds what was published */
+		final long[] newest = new long[2];
+		CycleJournal reopened = new CycleJournal(file, settings.getJournalMaxMb() * 1048576L);
+		assertEquals(journaled + 1, reopened.read(Integer.MAX_VALUE, new CycleJournal.CycleReader() {
+			@Override
+			public void cycle(long sequence, long timeMillis, MetricBuffer metrics) {
+				newest[0] = timeMillis;
+				newest[1] = metrics.size();
+			}
+		}));
+		assertTrue(newest[0] >= before);
+		assertEquals(collector.getMetrics(), newest[1]);
+	}
+
+	/**
+	 * method to check whether the first cycle of an agent reported the read
+	 * throughput of every node
+	 */
+	private static boolean hasThroughput(AerospikeAgent agent) {
+		for (CollectionState.NodeState nodeState : agent.getCollectionState().getNodeStates()) {
+			if (nodeState.getThroughput() == null || !nodeState.getThroughput().contains(READ_REQS))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * method to unit test the counter checkpoint of AerospikeAgent class: an
+	 * agent restarted from a checkpoint reports rates on its first cycle
+	 */
+	@Test
+	public void testCheckpoint() throws Exception {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("checkpoint_file", new File(folder.getRoot(), "checkpoint").getPath());
+		startAgent(2, 2, new AgentSettings(properties));
+		cluster.setCounterGrowth(1000);
+		assertTrue(new File(folder.getRoot(), "checkpoint").isFile());
+
+		AerospikeAgent cold = newAgent(cluster.getSeedList(), "test", new AgentSettings());
+		new FakeCollector(cold);
+		assertTrue(cold.awaitConnected(10000));
+		cold.pollCycle();
+		assertFalse(hasThroughput(cold));
+
+		Thread.sleep(20);
+		AerospikeAgent warm = newAgent(cluster.getSeedList(), "test", new AgentSettings(properties));
+		FakeCollector collector = new FakeCollector(warm);
+		assertTrue(warm.awaitConnected(10000));
+		warm.pollCycle();
+		assertTrue(hasThroughput(warm));
+
+		/* closing saves the checkpoint once, later cycles are skipped */
+		File checkpoint = new File(folder.getRoot(), "checkpoint");
+		assertTrue(checkpoint.delete());
+		warm.close();
+		assertTrue(checkpoint.isFile());
+		assertTrue(checkpoint.delete());
+		warm.close();
+		assertFalse(checkpoint.exists());
+		collector.reset();
+		warm.pollCycle();
+		assertEquals(0, collector.getMetrics());
+		assertFalse(checkpoint.exists());
+	}
+
+	/**
+	 * method to unit test the startup of AerospikeAgent class against a
+	 * cluster that cannot be reached: the agent starts at once and skips its
+	 * cycles until connected
+	 */
+	@Test
+	public void testUnreachableCluster() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		ArrayList<String> seeds = new ArrayList<String>();
+		seeds.add("127.0.0.1:" + port);
+
+		long start = System.currentTimeMillis();
+		AerospikeAgent agent = newAgent(seeds, "unreachable", new AgentSettings());
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		FakeCollector collector = new FakeCollector(agent);
+		agent.pollCycle();
+		assertFalse(agent.isConnected());
+		assertFalse(agent.awaitConnected(200));
+		assertEquals(0, collector.getMetrics());
+		assertFalse(agent.getCollectionState().getPluginStats().getErrors().isEmpty());
+	}
+}
@@ -0,0 +1,50 @@
+package com.aerospike.newrelic.connector;
+
+import static org.junit.Assert.*;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestPollScheduler {
+	private static final long SECOND = 1000000000L;
+
+	/**
+	 * method to unit test due() of PollScheduler class with families on their
+	 * own interval
+	 */
+	@Test
+	public void testDue() {
+		Map<MetricFamily, Integer> intervals = new EnumMap<MetricFamily, Integer>(MetricFamily.class);
+		intervals.put(MetricFamily.NAMESPACE, 180);
+		intervals.put(MetricFamily.LATENCY, 30);
+		PollScheduler scheduler = new PollScheduler(intervals);
+
+		/* everything is collected on the first cycle */
+		assertEquals(EnumSet.allOf(MetricFamily.class), scheduler.due(SECOND));
+
+		EnumSet<MetricFamily> everyCycle = EnumSet.of(MetricFamily.NODE_STATS, MetricFamily.THROUGHPUT,
+				MetricFamily.SUMMARY);
+		EnumSet<MetricFamily> withLatency = EnumSet.copyOf(everyCycle);
+		withLatency.add(MetricFamily.LATENCY);
+		/* 60s cycles, latency shorter than a cycle runs every cycle */
+		assertEquals(withLatency, scheduler.due(61 * SECOND));
+		assertEquals(withLatency, scheduler.due(121 * SECOND));
+		/* namespace is due after 3 cycles, even when the runner is early */
+		assertEquals(EnumSet.allOf(MetricFamily.class), scheduler.due(180 * SECOND));
+		assertEquals(withLatency, scheduler.due(240 * SECOND));
+	}
+
+	/**
+	 * method to unit test PollScheduler class without intervals
+	 */
+	@Test
+	public void testEveryCycle() {
+		PollScheduler scheduler = new PollScheduler(new EnumMap<MetricFamily, Integer>(MetricFamily.class));
+		for (int i = 1; i <= 3; i++)
+			assertEquals(EnumSet.allOf(MetricFamily.class), scheduler.due(i * 60 * SECOND));
+		assertEquals(0, scheduler.getIntervalNanos(MetricFamily.NAMESPACE));
+	}
+}
@@ -0,0 +1,85 @@
+package com.aerospike.newrelic.connector;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.aerospike.newrelic.connector.CollectionState.NodeState;
+import com.aerospike.newrelic.utils.StatRegistry;
+
+public class TestRateCheckpoint {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final int READS = StatRegistry.getInstance().getId("client_read_success");
+
+	/**
+	 * method to build the state of a cluster whose nodes have read 100 times
+	 * their index
+	 */
+	private static CollectionState state(String... nodeIds) {
+		CollectionState state = new CollectionState("test");
+		for (int i = 0; i < nodeIds.length; i++) {
+			NodeState nodeState = state.getNodeState(nodeIds[i]);
+			nodeState.getCounters().restore(READS, 100 * (i + 1), System.nanoTime());
+			nodeState.getNamespaceCounters("ns0").restore(READS, 10 * (i + 1), System.nanoTime());
+		}
+		return state;
+	}
+
+	/**
+	 * method to unit test save(), load() and restore() of RateCheckpoint
+	 * class: nodes joining after the load are restored too, and kept in the
+	 * file until they join
+	 */
+	@Test
+	public void testRestoreOnJoin() throws Exception {
+		File file = new File(folder.getRoot(), "checkpoint");
+		new RateCheckpoint(file, 60000).save(state("A", "B"));
+		assertFalse(new File(folder.getRoot(), "checkpoint.tmp").exists());
+
+		RateCheckpoint checkpoint = new RateCheckpoint(file, 60000);
+		assertEquals(2, checkpoint.load());
+		CollectionState joined = new CollectionState("test");
+		NodeState a = joined.getNodeState("A");
+		assertEquals(2, checkpoint.restore(a));
+		assertEquals(100, a.getCounters().getValue(READS), 0);
+		assertEquals(10, a.getNamespaceCounters("ns0").getValue(READS), 0);
+		assertEquals(0, checkpoint.restore(a));
+
+		/* B has not joined yet, its counters are saved again */
+		checkpoint.save(joined);
+		RateCheckpoint restarted = new RateCheckpoint(file, 60000);
+		assertEquals(2, restarted.load());
+		NodeState b = new NodeState("B");
+		assertEquals(2, restarted.restore(b));
+		assertEquals(200, b.getCounters().getValue(READS), 0);
+		assertEquals(20, b.getNamespaceCounters("ns0").getValue(READS), 0);
+	}
+
+	/**
+	 * method to unit test that RateCheckpoint class drops the counters of
+	 * nodes that stayed away longer than the maximum age
+	 */
+	@Test
+	public void testStaleNode() throws Exception {
+		File file = new File(folder.getRoot(), "checkpoint");
+		new RateCheckpoint(file, 60000).save(state("A"));
+		RateCheckpoint checkpoint = new RateCheckpoint(file, 20);
+		assertEquals(1, checkpoint.load());
+		Thread.sleep(50);
+		assertEquals(0, checkpoint.restore(new NodeState("A")));
+
+		new RateCheckpoint(file, 60000).save(state("A"));
+		checkpoint = new RateCheckpoint(file, 20);
+		assertEquals(1, checkpoint.load());
+		Thread.sleep(50);
+		checkpoint.save(new CollectionState("test"));
+		assertEquals(0, new RateCheckpoint(file, 60000).load());
+	}
+}
@@ -0,0 +1,63 @@
+package com.aerospike.newrelic.connector;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.aerospike.newrelic.connector.RateEngine.CounterState;
+import com.aerospike.newrelic.utils.StatRegistry;
+import com.aerospike.newrelic.utils.StatTable;
+
+public class TestRateEngine {
+	private static final long SECOND = 1000000000L;
+
+	private final RateEngine rateEngine = new RateEngine(Arrays.asList("client_udf_.*", ".*_evicted_objects"));
+	private final int udfComplete = StatRegistry.getInstance().getId("client_udf_complete");
+	private final int evicted = StatRegistry.getInstance().getId("stat_evicted_objects");
+	private final int objects = StatRegistry.getInstance().getId("objects");
+
+	/**
+	 * method to unit test computeRates() of RateEngine class
+	 */
+	@Test
+	public void testComputeRates() {
+		CounterState state = new CounterState();
+		StatTable rates = new StatTable();
+
+		rateEngine.computeRates(state, stats(100, 10, 5), 0, rates);
+		assertEquals(0, rates.size());
+
+		rateEngine.computeRates(state, stats(400, 70, 9), 10 * SECOND, rates);
+		assertEquals(2, rates.size());
+		assertEquals(30.0, rates.get(udfComplete), 0.0001);
+		assertEquals(6.0, rates.get(evicted), 0.0001);
+		assertFalse(rates.contains(objects));
+	}
+
+	/**
+	 * method to unit test counter reset handling of RateEngine class
+	 */
+	@Test
+	public void testCounterReset() {
+		CounterState state = new CounterState();
+		rateEngine.computeRates(state, stats(5000, 10, 0), 0, new StatTable());
+
+		StatTable rates = new StatTable();
+		rateEngine.computeRates(state, stats(20, 10, 0), 10 * SECOND, rates);
+		assertFalse(rates.contains(udfComplete));
+
+		rates = new StatTable();
+		rateEngine.computeRates(state, stats(120, 10, 0), 20 * SECOND, rates);
+		assertEquals(10.0, rates.get(udfComplete), 0.0001);
+	}
+
+	private StatTable stats(double udf, double evictedObjects, double objectCount) {
+		StatTable stats = new StatTable();
+		stats.put(udfComplete, udf);
+		stats.put(evicted, evictedObjects);
+		stats.put(objects, objectCount);
+		return stats;
+	}
+}
@@ -0,0 +1,192 @@
+package com.aerospike.newrelic.fake;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.aerospike.client.Host;
+import com.aerospike.newrelic.fake.FakeNode.Fault;
+
+/**
+ * In-process stand-in for an Aerospike cluster, for tests and benchmarks that
+ * must run without a server. Every node is a {@link FakeNode} speaking the info
+ * protocol on its own port of 127.0.0.1; the nodes list each other in services
+ * so a client seeded with one node discovers the whole cluster.
+ *
+ * Usage:
+ *
+ * <pre>
+ * FakeCluster cluster = new FakeCluster(3, "test", "bar");
+ * cluster.setBuild("3.8.4");
+ * cluster.start();
+ * base.createAerospikeClient(cluster.getSeeds(), null, null);
+ * ...
+ * cluster.stop();
+ * </pre>
+ *
+ */
+public class FakeCluster {
+
+	static final String HOST = "127.0.0.1";
+
+	private final List<FakeNode> nodes;
+	private final long startNanos = System.nanoTime();
+
+	/**
+	 * Constructor for FakeCluster
+	 *
+	 * @param nodeCount
+	 *            Number of nodes
+	 * @param namespaces
+	 *            Namespaces of every node
+	 */
+	public FakeCluster(int nodeCount, String... namespaces) {
+		List<FakeNode> list = new ArrayList<FakeNode>(nodeCount);
+		for (int i = 0; i < nodeCount; i++)
+			list.add(new FakeNode(this, i, namespaces));
+		this.nodes = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Method to start all nodes.
+	 *
+	 * @throws IOException
+	 *             if a port can't be bound
+	 */
+	public void start() throws IOException {
+		for (FakeNode node : nodes)
+			node.start();
+	}
+
+	/**
+	 * Method to stop all nodes.
+	 */
+	public void stop() {
+		for (FakeNode node : nodes)
+			node.stop();
+	}
+
+	public List<FakeNode> getNodes() {
+		return nodes;
+	}
+
+	public FakeNode getNode(int index) {
+		return nodes.get(index);
+	}
+
+	/**
+	 * @return int number of nodes currently listening
+	 */
+	public int getRunningNodes() {
+		int running = 0;
+		for (FakeNode node : nodes) {
+			if (node.isRunning())
+				running++;
+		}
+		return running;
+	}
+
+	/**
+	 * @return double seconds since the cluster was created, the base of all
+	 *         counters
+	 */
+	public double getUptimeSeconds() {
+		return (System.nanoTime() - startNanos) / 1e9;
+	}
+
+	/**
+	 * @return ArrayList<Host> seed list with the first running node
+	 */
+	public ArrayList<Host> getSeeds() {
+		ArrayList<Host> seeds = new ArrayList<Host>();
+		for (FakeNode node : nodes) {
+			if (node.isRunning()) {
+				seeds.add(new Host(HOST, node.getPort()));
+				break;
+			}
+		}
+		return seeds;
+	}
+
+	/**
+	 * @return ArrayList<String> seed list in the plugin.json format
+	 *         (host:port)
+	 */
+	public ArrayList<String> getSeedList() {
+		ArrayList<String> seeds = new ArrayList<String>();
+		for (Host host : getSeeds())
+			seeds.add(host.name + ":" + host.port);
+		return seeds;
+	}
+
+	/**
+	 * @return long agent requests received by all nodes
+	 */
+	public long getRequests() {
+		long requests = 0;
+		for (FakeNode node : nodes)
+			requests += node.getRequests();
+		return requests;
+	}
+
+	/**
+	 * @return long info commands in the agent requests of all nodes
+	 */
+	public long getCommands() {
+		long commands = 0;
+		for (FakeNode node : nodes)
+			commands += node.getCommands();
+		return commands;
+	}
+
+	/**
+	 * @return long bytes sent to the agent by all nodes
+	 */
+	public long getBytesSent() {
+		long bytes = 0;
+		for (FakeNode node : nodes)
+			bytes += node.getBytesSent();
+		return bytes;
+	}
+
+	public void resetCounters() {
+		for (FakeNode node : nodes)
+			node.resetCounters();
+	}
+
+	/**
+	 * @param build
+	 *            Server build of all nodes (e.g. 3.8.4, 3.12.1, 5.2.0)
+	 */
+	public void setBuild(String build) {
+		for (FakeNode node : nodes)
+			node.setBuild(build);
+	}
+
+	/**
+	 * @param counterGrowth
+	 *            Reads per second of every node and namespace
+	 */
+	public void setCounterGrowth(double counterGrowth) {
+		for (FakeNode node : nodes)
+			node.setCounterGrowth(counterGrowth);
+	}
+
+	/**
+	 * @param extraStats
+	 *            Number of filler statistics per statistics response
+	 */
+	public void setExtraStats(int extraStats) {
+		for (FakeNode node : nodes)
+			node.setExtraStats(extraStats);
+	}
+
+	public void setDelay(int node, long delayMs) {
+		nodes.get(node).setDelay(delayMs);
+	}
+
+	public void setFault(int node, Fault fault) {
+		nodes.get(node).setFault(fault);
+	}
+}
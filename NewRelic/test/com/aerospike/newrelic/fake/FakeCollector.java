@@ -0,0 +1,99 @@
+package com.aerospike.newrelic.fake;
+
+import java.lang.reflect.Field;
+
+import com.newrelic.metrics.publish.Agent;
+import com.newrelic.metrics.publish.internal.DataCollector;
+
+/**
+ * Stand-in for the SDK runner, so that pollCycle() can run outside of it.
+ * Metrics reported through Agent.reportMetric are counted and dropped, only
+ * the values of a watched metric are summed up; the
+ * request aggregation of the SDK (linear search per metric) is left out so
+ * that only the cost of the agent is measured.
+ *
+ */
+public final class FakeCollector extends DataCollector {
+
+	private long metrics;
+	private long aggregates;
+	private long samples;
+	private String watched;
+	private double watchedTotal;
+
+	/**
+	 * Constructor for FakeCollector, wires the agent like the runner does.
+	 *
+	 * @param agent
+	 *            Agent to collect the metrics of
+	 */
+	public FakeCollector(Agent agent) {
+		try {
+			/* the runner sets the collector through package private code */
+			Field field = Agent.class.getDeclaredField("collector");
+			field.setAccessible(true);
+			field.set(agent, this);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Agent has no collector field", e);
+		}
+	}
+
+	@Override
+	public void addData(String metricName, String units, Number value) {
+		metrics++;
+		if (watched != null && metricName.endsWith(watched))
+			watchedTotal += value.doubleValue();
+	}
+
+	@Override
+	public void addData(String metricName, String units, int count, Number value, Number minValue, Number maxValue,
+			Number sumOfSquares) {
+		metrics++;
+		aggregates++;
+		samples += count;
+	}
+
+	/**
+	 * @return long metrics reported since the last reset, including the plugin
+	 *         statistics
+	 */
+	public long getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return long metrics reported as aggregates since the last reset
+	 */
+	public long getAggregates() {
+		return aggregates;
+	}
+
+	/**
+	 * @return long samples summed up in the aggregates since the last reset
+	 */
+	public long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Method to sum up the values of the metrics whose name ends with a suffix.
+	 */
+	public void watch(String suffix) {
+		watched = suffix;
+	}
+
+	/**
+	 * @return double sum of the values of the watched metrics since the last
+	 *         reset
+	 */
+	public double getWatched() {
+		return watchedTotal;
+	}
+
+	public void reset() {
+		metrics = 0;
+		aggregates = 0;
+		samples = 0;
+		watchedTotal = 0;
+	}
+}
@@ -0,0 +1,596 @@
+package com.aerospike.newrelic.fake;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One simulated Aerospike node of a {@link FakeCluster}. The node listens on
+ * an ephemeral port of 127.0.0.1 and answers info requests (8 byte header,
+ * version 2, type 1, 48 bit length, newline separated commands) like a server
+ * of the configured build would:
+ *
+ * - node, features, partition-generation, services and replicas-master for the
+ * client tend,
+ *
+ * - build, statistics, namespaces, namespace/<ns>, latency: and latencies: for
+ * the agent. Builds older than 3.9 report read/write, memory and disk at node
+ * level, newer builds at namespace level.
+ *
+ * Counters grow linearly with the time since the cluster started. Response
+ * delay and faults only apply to requests of the agent, the client tend is
+ * always answered so that a slow or failing node stays in the cluster.
+ *
+ */
+public class FakeNode {
+
+	/**
+	 * Fault injected into the agent requests of a node.
+	 */
+	public enum Fault {
+		/** answer normally */
+		NONE,
+		/** close the connection without answering */
+		CLOSE,
+		/** never answer, the client times out */
+		HANG
+	}
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int PARTITIONS = 4096;
+	private static final long[] LEGACY_THRESHOLDS = { 1, 8, 64 };
+	private static final double[] LEGACY_ABOVE = { 10.0, 2.0, 0.5 };
+	private static final double[] LATENCIES_PCT = { 60.0, 20.0, 10.0, 5.0, 2.0, 1.5, 1.0, 0.5 };
+	private static final int LATENCIES_THRESHOLDS = 17;
+
+	private final FakeCluster cluster;
+	private final int index;
+	private final String name;
+	private final List<Socket> connections = new CopyOnWriteArrayList<Socket>();
+	private final AtomicLong partitionGeneration = new AtomicLong(1);
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong tendRequests = new AtomicLong();
+	private final AtomicLong commands = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+
+	private volatile ServerSocket server;
+	private volatile int port;
+	private volatile String build = "3.12.1";
+	private volatile String[] namespaces;
+	private volatile double counterGrowth = 1000;
+	private volatile int extraStats;
+	private volatile long delayMs;
+	private volatile Fault fault = Fault.NONE;
+
+	FakeNode(FakeCluster cluster, int index, String[] namespaces) {
+		this.cluster = cluster;
+		this.index = index;
+		this.name = String.format(Locale.ROOT, "BB9%012X", index + 1);
+		this.namespaces = namespaces.clone();
+	}
+
+	/**
+	 * Method to start listening. A restarted node binds its previous port
+	 * again, so the client sees the same host.
+	 *
+	 * @throws IOException
+	 *             if the port can't be bound
+	 */
+	public synchronized void start() throws IOException {
+		if (server != null)
+			return;
+		ServerSocket socket = new ServerSocket();
+		socket.setReuseAddress(true);
+		socket.bind(new InetSocketAddress(InetAddress.getByName(FakeCluster.HOST), port));
+		port = socket.getLocalPort();
+		server = socket;
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "fake-node-" + index);
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Method to stop listening and close all connections. The client drops the
+	 * node from the cluster at its next tend.
+	 */
+	public synchronized void stop() {
+		ServerSocket socket = server;
+		server = null;
+		if (socket != null)
+			closeQuietly(socket);
+		for (Socket connection : connections)
+			closeQuietly(connection);
+		connections.clear();
+	}
+
+	public boolean isRunning() {
+		return server != null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public String getBuild() {
+		return build;
+	}
+
+	/**
+	 * @param build
+	 *            Server build reported by the node (e.g. 3.8.4, 3.12.1, 5.2.0)
+	 */
+	public void setBuild(String build) {
+		this.build = build;
+	}
+
+	public String[] getNamespaces() {
+		return namespaces.clone();
+	}
+
+	/**
+	 * Method to change the namespaces of the node. The partition generation is
+	 * bumped, as a real node does when its partition map changes.
+	 */
+	public void setNamespaces(String... namespaces) {
+		this.namespaces = namespaces.clone();
+		bumpPartitionGeneration();
+	}
+
+	/**
+	 * @param counterGrowth
+	 *            Reads per second, the other counters are derived from it
+	 */
+	public void setCounterGrowth(double counterGrowth) {
+		this.counterGrowth = counterGrowth;
+	}
+
+	/**
+	 * @param extraStats
+	 *            Number of filler statistics added to every statistics
+	 *            response, to reach the payload size of a real server
+	 */
+	public void setExtraStats(int extraStats) {
+		this.extraStats = extraStats;
+	}
+
+	/**
+	 * @param delayMs
+	 *            Delay before every agent request is answered
+	 */
+	public void setDelay(long delayMs) {
+		this.delayMs = delayMs;
+	}
+
+	public void setFault(Fault fault) {
+		this.fault = fault;
+	}
+
+	public long getPartitionGeneration() {
+		return partitionGeneration.get();
+	}
+
+	public void bumpPartitionGeneration() {
+		partitionGeneration.incrementAndGet();
+	}
+
+	/**
+	 * @return long number of agent (non tend) requests received
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return long number of info commands in the agent requests
+	 */
+	public long getCommands() {
+		return commands.get();
+	}
+
+	/**
+	 * @return long number of client tend requests received
+	 */
+	public long getTendRequests() {
+		return tendRequests.get();
+	}
+
+	/**
+	 * @return long bytes sent in answer to agent requests
+	 */
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	/**
+	 * Method to reset the request counters.
+	 */
+	public void resetCounters() {
+		requests.set(0);
+		tendRequests.set(0);
+		commands.set(0);
+		bytesSent.set(0);
+	}
+
+	private void accept() {
+		ServerSocket socket = server;
+		while (socket != null && !socket.isClosed()) {
+			try {
+				final Socket connection = socket.accept();
+				connection.setTcpNoDelay(true);
+				connections.add(connection);
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serve(connection);
+					}
+				}, "fake-node-" + index + "-connection");
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				/* closed by stop() */
+			}
+		}
+	}
+
+	private void serve(Socket connection) {
+		try {
+			DataInputStream in = new DataInputStream(connection.getInputStream());
+			OutputStream out = connection.getOutputStream();
+			byte[] header = new byte[8];
+			while (true) {
+				in.readFully(header);
+				long length = 0;
+				for (int i = 2; i < 8; i++)
+					length = (length << 8) | (header[i] & 0xFF);
+				byte[] body = new byte[(int) length];
+				in.readFully(body);
+				String[] names = split(new String(body, UTF8));
+				boolean tend = isTend(names);
+				if (tend) {
+					tendRequests.incrementAndGet();
+				} else {
+					requests.incrementAndGet();
+					commands.addAndGet(names.length);
+					if (delayMs > 0)
+						Thread.sleep(delayMs);
+					Fault current = fault;
+					if (current == Fault.CLOSE)
+						break;
+					if (current == Fault.HANG) {
+						drain(in);
+						break;
+					}
+				}
+				byte[] response = respond(names);
+				if (!tend)
+					bytesSent.addAndGet(response.length);
+				out.write(response);
+				out.flush();
+			}
+		} catch (EOFException e) {
+			/* client closed the connection */
+		} catch (IOException e) {
+			/* connection reset or node stopped */
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			connections.remove(connection);
+			closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * Method to wait for the client to give up on a hanging request.
+	 */
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[256];
+		while (in.read(buffer) >= 0) {
+			/* discard */
+		}
+	}
+
+	private static String[] split(String body) {
+		String[] lines = body.split("\n");
+		int count = 0;
+		for (String line : lines) {
+			if (!line.isEmpty())
+				lines[count++] = line;
+		}
+		return Arrays.copyOf(lines, count);
+	}
+
+	/**
+	 * Method to tell the client tend apart from the agent: the tend requests
+	 * always contain services (refresh), features (validation) or
+	 * replicas-master (partition map).
+	 */
+	private static boolean isTend(String[] names) {
+		for (String name : names) {
+			if (name.equals("services") || name.equals("features") || name.startsWith("replicas-"))
+				return true;
+		}
+		return false;
+	}
+
+	private byte[] respond(String[] names) {
+		StringBuilder sb = new StringBuilder(256);
+		for (String name : names) {
+			sb.append(name).append('\t');
+			answer(name, sb);
+			sb.append('\n');
+		}
+		byte[] body = sb.toString().getBytes(UTF8);
+		byte[] response = new byte[8 + body.length];
+		long length = body.length;
+		response[0] = 2;
+		response[1] = 1;
+		for (int i = 7; i >= 2; i--) {
+			response[i] = (byte) length;
+			length >>>= 8;
+		}
+		System.arraycopy(body, 0, response, 8, body.length);
+		return response;
+	}
+
+	private void answer(String command, StringBuilder sb) {
+		if (command.equals("node")) {
+			sb.append(name);
+		} else if (command.equals("features")) {
+			/* no replicas-all, the client reads replicas-master */
+		} else if (command.equals("partition-generation")) {
+			sb.append(partitionGeneration.get());
+		} else if (command.equals("services")) {
+			appendServices(sb);
+		} else if (command.equals("replicas-master")) {
+			appendReplicasMaster(sb);
+		} else if (command.equals("build")) {
+			sb.append(build);
+		} else if (command.equals("namespaces")) {
+			appendList(sb, namespaces);
+		} else if (command.equals("statistics")) {
+			appendNodeStatistics(sb);
+		} else if (command.startsWith("namespace/")) {
+			String namespace = command.substring("namespace/".length());
+			if (Arrays.asList(namespaces).contains(namespace))
+				appendNamespaceStatistics(sb);
+			else
+				sb.append("type=unknown");
+		} else if (command.equals("latency:")) {
+			appendLatency(sb);
+		} else if (command.equals("latencies:")) {
+			appendLatencies(sb);
+		}
+	}
+
+	private void appendServices(StringBuilder sb) {
+		boolean first = true;
+		for (FakeNode node : cluster.getNodes()) {
+			if (node == this || !node.isRunning())
+				continue;
+			if (!first)
+				sb.append(';');
+			sb.append(FakeCluster.HOST).append(':').append(node.getPort());
+			first = false;
+		}
+	}
+
+	/**
+	 * Method to give every namespace a base64 bitmap of the 4096 partitions,
+	 * the node owns the partitions p with p % nodes == index.
+	 */
+	private void appendReplicasMaster(StringBuilder sb) {
+		int nodes = cluster.getNodes().size();
+		byte[] bitmap = new byte[PARTITIONS / 8];
+		for (int p = index % nodes; p < PARTITIONS; p += nodes)
+			bitmap[p >> 3] |= 0x80 >> (p & 7);
+		String encoded = base64(bitmap);
+		String[] current = namespaces;
+		for (int i = 0; i < current.length; i++) {
+			if (i > 0)
+				sb.append(';');
+			sb.append(current[i]).append(':').append(encoded);
+		}
+	}
+
+	private boolean isLegacy() {
+		String[] ver = build.split("[.]");
+		int major = Integer.parseInt(ver[0]);
+		int minor = ver.length > 1 ? Integer.parseInt(ver[1]) : 0;
+		return major < 3 || (major == 3 && minor < 9);
+	}
+
+	private boolean hasLatencies() {
+		String[] ver = build.split("[.]");
+		int major = Integer.parseInt(ver[0]);
+		int minor = ver.length > 1 ? Integer.parseInt(ver[1]) : 0;
+		return major > 5 || (major == 5 && minor >= 1);
+	}
+
+	/**
+	 * @return long reads since the cluster started, all other counters are
+	 *         derived from it
+	 */
+	private long reads() {
+		return (long) (counterGrowth * cluster.getUptimeSeconds());
+	}
+
+	private void appendNodeStatistics(StringBuilder sb) {
+		long reads = reads();
+		long writes = reads / 2;
+		int nsCount = namespaces.length;
+		stat(sb, "cluster_size", cluster.getRunningNodes());
+		stat(sb, "uptime", (long) cluster.getUptimeSeconds());
+		stat(sb, "objects", 1000L * nsCount);
+		stat(sb, "client_connections", 10);
+		stat(sb, "cluster_integrity", "true");
+		if (isLegacy()) {
+			stat(sb, "stat_read_reqs", reads * nsCount);
+			stat(sb, "stat_read_success", (reads - reads / 100) * nsCount);
+			stat(sb, "stat_write_reqs", writes * nsCount);
+			stat(sb, "stat_write_success", (writes - writes / 100) * nsCount);
+			stat(sb, "used-bytes-memory", 1048576L * nsCount);
+			stat(sb, "used-bytes-disk", 4194304L * nsCount);
+			stat(sb, "udf_read_reqs", reads / 10 * nsCount);
+			stat(sb, "batch_initiate", reads / 20 * nsCount);
+		} else {
+			stat(sb, "batch_index_initiate", reads / 20 * nsCount);
+			stat(sb, "proxy_in_progress", 0);
+		}
+		for (int i = 0; i < extraStats; i++)
+			stat(sb, "fake_stat_" + i, reads + i);
+		sb.setLength(sb.length() - 1);
+	}
+
+	private void appendNamespaceStatistics(StringBuilder sb) {
+		long reads = reads();
+		long writes = reads / 2;
+		stat(sb, "objects", 1000);
+		stat(sb, "type", "device");
+		if (isLegacy()) {
+			stat(sb, "used-bytes-memory", 1048576);
+			stat(sb, "used-bytes-disk", 4194304);
+		} else {
+			stat(sb, "client_read_success", reads - reads / 100);
+			stat(sb, "client_read_error", reads / 100);
+			stat(sb, "client_write_success", writes - writes / 100);
+			stat(sb, "client_write_error", writes / 100);
+			stat(sb, "client_udf_complete", reads / 10);
+			stat(sb, "memory_used_bytes", 1048576);
+			stat(sb, "device_used_bytes", 4194304);
+		}
+		stat(sb, "evicted_objects", reads / 1000);
+		stat(sb, "expired_objects", reads / 500);
+		stat(sb, "migrate_tx_partitions_remaining", 0);
+		for (int i = 0; i < extraStats; i++)
+			stat(sb, "fake_stat_" + i, reads + i);
+		sb.setLength(sb.length() - 1);
+	}
+
+	private static void stat(StringBuilder sb, String name, Object value) {
+		sb.append(name).append('=').append(value).append(';');
+	}
+
+	/**
+	 * Method to answer latency: (>1ms, >8ms, >64ms). Builds older than 3.9
+	 * report node wide reads, writes_master, proxy, udf and query, newer ones
+	 * read, write, udf and query per namespace.
+	 */
+	private void appendLatency(StringBuilder sb) {
+		double ops = counterGrowth;
+		if (isLegacy()) {
+			legacyHistogram(sb, "reads", ops);
+			legacyHistogram(sb, "writes_master", ops / 2);
+			legacyHistogram(sb, "proxy", 0);
+			legacyHistogram(sb, "udf", ops / 10);
+			legacyHistogram(sb, "query", 0);
+		} else {
+			for (String namespace : namespaces) {
+				legacyHistogram(sb, "{" + namespace + "}-read", ops);
+				legacyHistogram(sb, "{" + namespace + "}-write", ops / 2);
+				legacyHistogram(sb, "{" + namespace + "}-udf", ops / 10);
+				legacyHistogram(sb, "{" + namespace + "}-query", 0);
+			}
+		}
+		if (sb.charAt(sb.length() - 1) == ';')
+			sb.setLength(sb.length() - 1);
+	}
+
+	private static void legacyHistogram(StringBuilder sb, String name, double ops) {
+		sb.append(name).append(":10:26:04-GMT,ops/sec");
+		for (long threshold : LEGACY_THRESHOLDS)
+			sb.append(",>").append(threshold).append("ms");
+		sb.append(";10:26:14,").append(format(ops));
+		for (double above : LEGACY_ABOVE)
+			sb.append(',').append(format(ops == 0 ? 0 : above));
+		sb.append(';');
+	}
+
+	/**
+	 * Method to answer latencies: ({ns}-read:msec,ops,pct...), 17 power of two
+	 * thresholds per histogram like 5.1+ servers.
+	 */
+	private void appendLatencies(StringBuilder sb) {
+		if (!hasLatencies())
+			return;
+		double ops = counterGrowth;
+		for (String namespace : namespaces) {
+			histogram(sb, "{" + namespace + "}-read", ops);
+			histogram(sb, "{" + namespace + "}-write", ops / 2);
+		}
+		sb.append("batch-index:");
+	}
+
+	private static void histogram(StringBuilder sb, String name, double ops) {
+		sb.append(name).append(":msec,").append(format(ops));
+		double above = 100;
+		for (int i = 0; i < LATENCIES_THRESHOLDS; i++) {
+			if (i < LATENCIES_PCT.length)
+				above -= LATENCIES_PCT[i];
+			sb.append(',').append(format(ops == 0 ? 0 : Math.max(above, 0)));
+		}
+		sb.append(';');
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+
+	private static void appendList(StringBuilder sb, String[] values) {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				sb.append(';');
+			sb.append(values[i]);
+		}
+	}
+
+	private static String base64(byte[] data) {
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+		for (int i = 0; i < data.length; i += 3) {
+			int b = (data[i] & 0xFF) << 16;
+			if (i + 1 < data.length)
+				b |= (data[i + 1] & 0xFF) << 8;
+			if (i + 2 < data.length)
+				b |= data[i + 2] & 0xFF;
+			sb.append(alphabet.charAt((b >> 18) & 0x3F));
+			sb.append(alphabet.charAt((b >> 12) & 0x3F));
+			sb.append(i + 1 < data.length ? alphabet.charAt((b >> 6) & 0x3F) : '=');
+			sb.append(i + 2 < data.length ? alphabet.charAt(b & 0x3F) : '=');
+		}
+		return sb.toString();
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			/* ignore */
+		}
+	}
+}
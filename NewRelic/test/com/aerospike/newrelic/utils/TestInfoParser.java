@@ -0,0 +1,63 @@
+package com.aerospike.newrelic.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestInfoParser {
+	private final StatRegistry registry = StatRegistry.getInstance();
+
+	/**
+	 * method to unit test parseStatistics() of InfoParser class
+	 */
+	@Test
+	public void testParseStatistics() {
+		StatTable table = InfoParser.parseStatistics(
+				"cluster_size=3;cluster_key=9A3C2F1E;batch-index-queue=0;migrate_allowed=true;"
+						+ "stop_writes=false;objects=;broken;heap_efficiency_pct=61.5",
+				new StatTable());
+
+		assertEquals(5, table.size());
+		assertEquals(3.0, table.get(registry.getId("cluster_size")), 0);
+		assertEquals(0.0, table.get(registry.getId("batch_index_queue")), 0);
+		assertEquals(1.0, table.get(registry.getId("migrate_allowed")), 0);
+		assertEquals(0.0, table.get(registry.getId("stop_writes")), 0);
+		assertEquals(61.5, table.get(registry.getId("heap_efficiency_pct")), 0);
+		assertFalse(table.contains(registry.getId("cluster_key")));
+		assertFalse(table.contains(registry.getId("objects")));
+	}
+
+	/**
+	 * method to unit test parseNumber() of InfoParser class
+	 */
+	@Test
+	public void testParseNumber() {
+		assertEquals(9007199254740993.0, parse("9007199254740993"), 0);
+		assertEquals(123456789012.0, parse("123456789012"), 0);
+		assertEquals(-0.25, parse("-0.25"), 0);
+		assertEquals(0.5, parse(".5"), 0);
+		assertEquals(1.5e3, parse("1.5e3"), 0);
+		assertEquals(1.0, parse("TRUE"), 0);
+
+		assertTrue(Double.isNaN(parse("")));
+		assertTrue(Double.isNaN(parse("-")));
+		assertTrue(Double.isNaN(parse("3.9.1")));
+		assertTrue(Double.isNaN(parse("10.0.0.1:3000")));
+		assertTrue(Double.isNaN(parse("BB9020011AC4202")));
+	}
+
+	/**
+	 * method to unit test getId() of StatRegistry class
+	 */
+	@Test
+	public void testStatRegistry() {
+		int id = registry.getId("stat_read_reqs");
+		assertEquals(id, registry.getId("stat-read-reqs"));
+		assertEquals(id, registry.getId("xstat_read_reqsx", 1, 15));
+		assertEquals("stat_read_reqs", registry.getName(id));
+	}
+
+	private static double parse(String value) {
+		return InfoParser.parseNumber(value, 0, value.length());
+	}
+}
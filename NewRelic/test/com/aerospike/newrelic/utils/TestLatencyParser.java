@@ -0,0 +1,72 @@
+package com.aerospike.newrelic.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestLatencyParser {
+
+	/**
+	 * method to unit test parseLatencies() of LatencyParser class
+	 */
+	@Test
+	public void testParseLatencies() {
+		List<LatencyHistogram> histograms = LatencyParser.parseLatencies(
+				"batch-index:;{test}-read:msec,1000.0,40.00,20.00,10.00,5.00,1.00,0.00,0.00;"
+						+ "{test}-write:usec,0.0,0.00,0.00,0.00",
+				4);
+
+		assertEquals(2, histograms.size());
+		LatencyHistogram read = histograms.get(0);
+		assertEquals("read", read.getCategory());
+		assertEquals("test", read.getNamespace());
+		assertEquals("read-{test}", read.getKey());
+		assertEquals(5, read.getBuckets().size());
+		assertEquals("0ms_to_1ms", read.getBuckets().getName(0));
+		assertEquals("4ms_to_8ms", read.getBuckets().getName(3));
+		assertEquals("GT_8ms", read.getBuckets().getName(4));
+		assertEquals(60.0, read.getBucketPct(0), 0.0001);
+		assertEquals(10.0, read.getBucketPct(2), 0.0001);
+		assertEquals(5.0, read.getBucketPct(4), 0.0001);
+		assertEquals(50.0, read.getBucketOps(4), 0.0001);
+
+		LatencyHistogram write = histograms.get(1);
+		assertEquals("us", write.getBuckets().getUnit());
+		assertEquals(4, write.getBuckets().size());
+		assertEquals(0.0, write.getBucketPct(0), 0);
+	}
+
+	/**
+	 * method to unit test parseLegacy() of LatencyParser class
+	 */
+	@Test
+	public void testParseLegacy() {
+		List<LatencyHistogram> histograms = LatencyParser.parseLegacy(
+				"{test}-read:10:26:04-GMT,ops/sec,>1ms,>8ms,>64ms;10:26:14,2400.0,10.00,2.00,0.50;"
+						+ "error-no-data-yet-or-back-too-small;"
+						+ "{test}-writes_reply:10:26:04-GMT,ops/sec,>1ms,>8ms,>64ms;10:26:14,10.0,0.00,0.00,0.00;"
+						+ "proxy:10:26:04-GMT,ops/sec,>1ms,>8ms,>64ms;10:26:14,0.0,0.00,0.00,0.00",
+				true);
+
+		assertEquals(2, histograms.size());
+		LatencyHistogram read = histograms.get(0);
+		assertEquals("read-{test}", read.getKey());
+		assertSame(LatencyBuckets.LEGACY, read.getBuckets());
+		assertEquals(90.0, read.getBucketPct(0), 0.0001);
+		assertEquals(8.0, read.getBucketPct(1), 0.0001);
+		assertEquals(1.5, read.getBucketPct(2), 0.0001);
+		assertEquals(0.5, read.getBucketPct(3), 0.0001);
+		assertEquals(12.0, read.getBucketOps(3), 0.0001);
+
+		LatencyHistogram proxy = histograms.get(1);
+		assertEquals("proxy", proxy.getKey());
+		assertNull(proxy.getNamespace());
+		assertEquals(0.0, proxy.getBucketPct(0), 0);
+
+		assertTrue(LatencyParser.parseLegacy("error-run-too-short-or-back-too-small", false).isEmpty());
+		assertEquals("read", LatencyParser.parseLegacy(
+				"reads:10:26:04-GMT,ops/sec,>1ms,>8ms,>64ms;10:26:14,1.0,0.00,0.00,0.00", false).get(0).getKey());
+	}
+}
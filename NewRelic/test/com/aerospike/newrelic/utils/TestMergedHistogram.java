@@ -0,0 +1,45 @@
+package com.aerospike.newrelic.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestMergedHistogram {
+
+	/**
+	 * method to unit test weighting and percentile() of MergedHistogram class
+	 */
+	@Test
+	public void testPercentile() {
+		LatencyBuckets buckets = LatencyBuckets.powersOfTwo("ms", 3);
+		MergedHistogram merged = new MergedHistogram(buckets);
+		/* busy node: everything below 1ms, idle node: everything in 2ms_to_4ms */
+		merged.add(new LatencyHistogram("read", null, buckets, 900, new double[] { 100, 0, 0, 0 }));
+		merged.add(new LatencyHistogram("read", null, buckets, 100, new double[] { 0, 0, 100, 0 }));
+
+		assertEquals(1000.0, merged.getTotalOps(), 0.0001);
+		assertEquals(90.0, merged.getBucketPct(0), 0.0001);
+		assertEquals(10.0, merged.getBucketPct(2), 0.0001);
+		assertEquals(0.5, merged.percentile(0.45), 0.0001);
+		assertEquals(3.0, merged.percentile(0.95), 0.0001);
+		assertEquals(3.98, merged.percentile(0.999), 0.0001);
+	}
+
+	/**
+	 * method to unit test merging of different layouts and the open bucket
+	 */
+	@Test
+	public void testRebin() {
+		LatencyBuckets buckets = LatencyBuckets.powersOfTwo("ms", 4);
+		MergedHistogram merged = new MergedHistogram(buckets);
+		merged.add(new LatencyHistogram("read", null, LatencyBuckets.LEGACY, 100, new double[] { 0, 70, 0, 30 }));
+
+		/* 1ms_to_8ms spreads over 1-2, 2-4, 4-8 by width, GT_64ms goes to GT_8ms */
+		assertEquals(10.0, merged.getBucketPct(1), 0.0001);
+		assertEquals(20.0, merged.getBucketPct(2), 0.0001);
+		assertEquals(40.0, merged.getBucketPct(3), 0.0001);
+		assertEquals(30.0, merged.getBucketPct(4), 0.0001);
+		assertEquals(8.0, merged.percentile(0.99), 0.0001);
+		assertTrue(Double.isNaN(new MergedHistogram(buckets).percentile(0.5)));
+	}
+}
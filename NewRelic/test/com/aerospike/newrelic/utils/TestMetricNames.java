@@ -0,0 +1,45 @@
+package com.aerospike.newrelic.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestMetricNames {
+
+	/**
+	 * method to unit test name building and reuse of MetricNames class
+	 */
+	@Test
+	public void testNames() {
+		MetricNames names = new MetricNames("aerospike");
+		int objects = StatRegistry.getInstance().getId("objects");
+
+		String name = names.prefix("nodeStats", "10.0.0.1").name(objects);
+		assertEquals("aerospike/nodeStats/10.0.0.1/objects", name);
+		assertSame(name, names.prefix("nodeStats", "10.0.0.1").name(objects));
+		assertEquals("aerospike/namespaceStats/10.0.0.1/test/objects",
+				names.prefix("namespaceStats", "10.0.0.1", "test").name(objects));
+		assertEquals("aerospike/latencyStats/10.0.0.1/read-{test}/0ms_to_1ms/value",
+				names.prefix("latencyStats", "10.0.0.1", "read-{test}").name("0ms_to_1ms", "value"));
+		assertEquals("aerospike/summary/cluster_size", names.prefix("summary", null).name("cluster_size"));
+	}
+
+	/**
+	 * method to unit test eviction of MetricNames class
+	 */
+	@Test
+	public void testEvict() {
+		MetricNames names = new MetricNames("aerospike");
+		names.prefix("nodeStats", "10.0.0.1");
+		names.prefix("namespaceStats", "10.0.0.1", "test");
+		names.prefix("namespaceStats", "10.0.0.1", "bar");
+		names.prefix("latencyStats", "10.0.0.1", "read-{test}");
+		names.prefix("nodeStats", "10.0.0.2");
+		assertEquals(5, names.size());
+
+		names.evictNamespace("10.0.0.1", "test");
+		assertEquals(3, names.size());
+		names.evictNode("10.0.0.2");
+		assertEquals(2, names.size());
+	}
+}
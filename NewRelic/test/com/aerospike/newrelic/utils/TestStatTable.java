@@ -0,0 +1,54 @@
+package com.aerospike.newrelic.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestStatTable {
+	private final StatRegistry registry = StatRegistry.getInstance();
+
+	/**
+	 * method to unit test a sparse StatTable growing past its capacity and
+	 * past the sparse limit
+	 */
+	@Test
+	public void testSparseTable() {
+		StatTable table = new StatTable(1);
+		int[] ids = new int[StatTable.SPARSE_LIMIT * 2];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = registry.getId("test_sparse_stat_" + (ids.length - i));
+			table.put(ids[i], i);
+			assertEquals(i + 1, table.size());
+		}
+		table.put(ids[3], 42);
+		assertEquals(ids.length, table.size());
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(ids[i], table.idAt(i));
+			assertEquals(i == 3 ? 42 : i, table.get(ids[i]), 0);
+		}
+		assertFalse(table.contains(registry.getId("test_sparse_stat_absent")));
+
+		table.clear();
+		assertEquals(0, table.size());
+		assertFalse(table.contains(ids[0]));
+		assertEquals(0, table.get(ids[0]), 0);
+	}
+
+	/**
+	 * method to unit test a StatTable indexed for the registry with ids
+	 * registered after it was created
+	 */
+	@Test
+	public void testIndexedTable() {
+		StatTable table = new StatTable();
+		int id = registry.getId("test_indexed_stat_" + registry.size());
+		for (int i = 0; i < 200; i++)
+			registry.getId("test_indexed_later_" + i);
+		int later = registry.getId("test_indexed_later_199");
+		table.put(later, 2);
+		table.put(id, 1);
+		assertEquals(2, table.get(later), 0);
+		assertEquals(1, table.valueAt(1), 0);
+		assertEquals(later, table.idAt(0));
+	}
+}